@@ -0,0 +1,35 @@
+#!/bin/sh
+
+case $# in
+0) echo "Usage: " `basename $0` " <datafile (in data/files_gbk folder)> "; exit 1;;
+esac
+
+# Compares answering the query files from the B-Tree (one search per query, and --batch=1) with answering
+# them from the SQLite database that --database=1 exports. Build the three jars first.
+datafile=$1
+lengths="1 2 3 4 5 6 7 8 9 10 20 31"
+java -jar build/libs/GeneBankCreateBTree.jar --cache=1 --degree=0 --gbkfile=data/files_gbk/$datafile --length=1-10,20,31 --cachesize=500 --database=1 --debug=0
+
+millis() {
+	date +%s%3N
+}
+
+echo
+echo "| length | BTree (ms) | BTree --batch=1 (ms) | SQLite (ms) |"
+echo "|-------:|-----------:|---------------------:|------------:|"
+for i in $lengths
+do
+	btree=`ls data/files_gbk/$datafile.btree.data.$i.* | grep -v '\.bloom$' | head -1`
+	query=data/queries/query$i
+	start=`millis`
+	java -jar build/libs/GeneBankSearchBTree.jar --cache=1 --cachesize=500 --btreefile=$btree --length=$i --queryfile=$query > $query-$datafile.btree.out
+	plain=$((`millis` - start))
+	start=`millis`
+	java -jar build/libs/GeneBankSearchBTree.jar --cache=1 --cachesize=500 --btreefile=$btree --length=$i --queryfile=$query --batch=1 > $query-$datafile.batch.out
+	batch=$((`millis` - start))
+	start=`millis`
+	java -jar build/libs/GeneBankSearchDatabase.jar data/files_gbk/$datafile.$i.db $query > $query-$datafile.db.out
+	database=$((`millis` - start))
+	echo "| $i | $plain | $batch | $database |"
+	diff -q $query-$datafile.btree.out $query-$datafile.db.out > /dev/null || echo "----> length $i: the database answers differ from the B-Tree's!"
+done
@@ -5,11 +5,12 @@ case $# in
 esac
 
 datafile=$1
-for i in 1 2 3 4 5 6 7 8 9 10 20 31
+lengths="1 2 3 4 5 6 7 8 9 10 20 31"
+# One run reads the file once and builds a B-Tree for every length
+#	time java -jar build/libs/GeneBankCreateBTree.jar --cache=1 --degree=0 --gbkfile=data/files_gbk/$datafile --length=1-10,20,31 --cachesize=100 --debug=2
+  time java -jar build/libs/GeneBankCreateBTree.jar --cache=1 --degree=0 --gbkfile=data/files_gbk/$datafile --length=1-10,20,31 --cachesize=500 --debug=2
+#  time java -jar build/libs/GeneBankCreateBTree.jar --cache=0 --degree=0 --gbkfile=data/files_gbk/$datafile --length=1-10,20,31 --debug=2
+for i in $lengths
 do
-#	time java -jar build/libs/GeneBankCreateBTree.jar --cache=1 --degree=0 --gbkfile=data/files_gbk/$datafile --length=$i --cachesize=100 --debug=2
-  time java -jar build/libs/GeneBankCreateBTree.jar --cache=1 --degree=0 --gbkfile=data/files_gbk/$datafile --length=$i --cachesize=500 --debug=2
-#  time java -jar build/libs/GeneBankCreateBTree.jar --cache=0 --degree=0 --gbkfile=data/files_gbk/$datafile --length=$i --debug=2
-	mv DUMP $datafile.dump.$i
+	mv DUMP.$i $datafile.dump.$i
 done
-
@@ -1,7 +1,13 @@
 package cs321.btree;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Queue;
 
 import cs321.btree.BTreeNode;
@@ -15,13 +21,21 @@ public class BTree<E>
 
     private int degree;
     private boolean useCache;
-    private String gbkFileName;
+    private String btreeFileName;
     private int subsequenceLength;
     private int cacheSize;
     private int debugLevel;
-    private int numNodes;
+    private long numNodes;
+    private int pageSize;
+    private int canonicalMode;
+    private boolean bPlusTree;
+    private boolean maxFrequencies;
+    private long numKeys;
     private final int MAX_KEYS;
     private DiskReadWrite disk;
+    private BloomFilter bloomFilter;
+    private BTreeNode[] scratch;
+    private ThreadLocal<BTreeNode> searchNode;
 
     /**
      * BTree Constructor for inserting values into the BTree.
@@ -29,18 +43,35 @@ public class BTree<E>
      * of DiskReadWrite to interface with disk/cache.
      * @param args Parsed arguments generated from GeneBankCreateBTreeArguments
      */
-    public BTree(GeneBankCreateBTreeArguments args) {        
+    public BTree(GeneBankCreateBTreeArguments args) {
+        this(args, args.getBTreeBaseName() + ".btree.data." + args.getSubsequenceLength() + "." + args.getDegree());
+    }
+
+    /**
+     * Same as BTree(GeneBankCreateBTreeArguments), but stores the tree in
+     * btreeFileName instead of the name derived from the arguments.
+     * @param args Parsed arguments generated from GeneBankCreateBTreeArguments
+     * @param btreeFileName name of the B-Tree data file to create
+     */
+    public BTree(GeneBankCreateBTreeArguments args, String btreeFileName) {
 
         this.useCache = args.isUsingCache();
         this.degree = args.getDegree();
-        this.gbkFileName = args.getGbkFileName();
         this.subsequenceLength = args.getSubsequenceLength();
         this.cacheSize = args.getCacheSize();
         this.debugLevel = args.getDebugLevel();
+        this.pageSize = args.getPageSize();
+        this.canonicalMode = args.getCanonicalMode();
+        this.bPlusTree = args.isBPlusTree();
+        this.maxFrequencies = args.hasMaxFrequencies();
         this.MAX_KEYS = 2*degree - 1;
-        String btreeFileName = gbkFileName + ".btree.data."+subsequenceLength+"."+degree;
+        this.scratch = new BTreeNode[] { new BTreeNode(degree), new BTreeNode(degree) };
+        this.searchNode = ThreadLocal.withInitial(() -> new BTreeNode(degree));
+        this.btreeFileName = btreeFileName;
 
-        disk = new DiskReadWrite(btreeFileName, getMetaData(), useCache, cacheSize);
+        disk = new DiskReadWrite(btreeFileName, getMetaData(), true, useCache, cacheSize, args.isUsingMemoryMap(),
+                args.isWriteBack());
+        new File(BloomFilter.fileFor(btreeFileName)).delete();     // a filter of an earlier tree of this name
         BTreeNode x = disk.allocateNode();
         x.setLeaf(true);
         disk.write(x);
@@ -53,21 +84,66 @@ public class BTree<E>
      * Creates BTree object for searching values within an existing
      * BTree. The instance of DiskReadWrite is given the Metadata of 
      * the existing tree to parse through, where GeneBankSearchBTree 
-     * calls Search() on the root of the pre-created tree.
-     * @param args Parsed arguments generated by GeneBankCreateBTreeArguments
-     * @param metadata
+     * calls Search() on the root of the pre-created tree. The degree
+     * and subsequence length come from the metadata, not from args.
+     * If a Bloom filter was written next to the tree file, it is memory
+     * mapped and used to skip the searches of keys it rules out.
+     * @param args Parsed arguments generated by GeneBankSearchBTreeArguments
+     * @param metadata Header of the tree, as returned by MetaData.read()
      */
     public BTree(GeneBankSearchBTreeArguments args, MetaData metadata) {
-        String bTreeFileName = args.getBTreeFileName();
+        this.btreeFileName = args.getBTreeFileName();
         this.cacheSize = args.getCacheSize();
         this.useCache = args.isUsingCache();
-        this.degree = args.getDegree();
-        this.subsequenceLength = args.getSubsequenceLength();
+        this.degree = metadata.getDegree();
+        this.subsequenceLength = metadata.getSubsequenceLength();
         this.debugLevel = args.getDebugLevel();
+        this.numNodes = metadata.getNumNodes();
+        this.numKeys = metadata.getNumKeys();
+        this.pageSize = metadata.getPageSize();
+        this.canonicalMode = metadata.getCanonicalMode();
+        this.bPlusTree = metadata.isBPlusTree();
+        this.maxFrequencies = metadata.hasMaxFrequencies();
         this.MAX_KEYS = (2*degree) - 1;
-        disk = new DiskReadWrite(bTreeFileName, metadata, useCache, cacheSize);
+        this.scratch = new BTreeNode[] { new BTreeNode(degree), new BTreeNode(degree) };
+        this.searchNode = ThreadLocal.withInitial(() -> new BTreeNode(degree));
+        disk = new DiskReadWrite(btreeFileName, metadata, false, useCache, cacheSize, args.isUsingMemoryMap(), false);
         this.root = disk.read(metadata.getRootAddress());
+        if (BloomFilter.exists(btreeFileName)) {
+            loadBloomFilter(BloomFilter.fileFor(btreeFileName));
+        }
+    }
+
+    /**
+     * Maps the Bloom filter in fileName, unless it was not built for this tree: a filter
+     * with another number of keys or subsequence length is left out, with an error.
+     */
+    private void loadBloomFilter(String fileName) {
+        try {
+            BloomFilter filter = BloomFilter.map(fileName);
+            if (filter.getNumKeys() != numKeys || filter.getSubsequenceLength() != subsequenceLength) {
+                Debug.logError(fileName + " does not belong to " + btreeFileName + ", searching without it.");
+                return;
+            }
+            bloomFilter = filter;
+        } catch (IOException e) {
+            Debug.logError("Could not read " + fileName + ", searching without it: " + e.getMessage());
+        }
+    }
 
+    /**
+     * Writes a Bloom filter over every key of the finished tree to "<tree file>.bloom", sized for
+     * the number of distinct keys. Searching the tree later uses it to skip missing keys. Must be
+     * called after the last insert, as the filter is not updated when keys are added.
+     * @param falsePositiveRate chance that the filter lets a missing key through to the tree
+     * @throws IOException if the filter file cannot be written
+     */
+    public void writeBloomFilter(double falsePositiveRate) throws IOException {
+        BloomFilter filter = new BloomFilter(numKeys, falsePositiveRate, subsequenceLength);
+        scan(0, Long.MAX_VALUE, (key, frequency) -> filter.add(key));
+        filter.write(BloomFilter.fileFor(btreeFileName));
+        Debug.log("wrote a Bloom filter of " + filter.getSizeInBytes() + " bytes with " + filter.getHashes()
+                + " hashes for " + numKeys + " keys");
     }
     
     /**
@@ -85,68 +161,126 @@ public class BTree<E>
     }
 
     public void insert (long val) {
-        Debug.log("\ninserting " + val);
+        insert(val, 1);
+    }
+
+    /**
+     * Upserts a key: adds frequency to its count if the key is already in
+     * the tree, or inserts it with that frequency otherwise. This lets a
+     * caller that has already counted duplicates pay for one descent per
+     * distinct key instead of one per occurrence.
+     * @param val key to insert
+     * @param frequency number of occurrences to add, at least 1
+     */
+    public void insert (long val, int frequency) {
+        if (Debug.isLogging()) {
+            Debug.log("\ninserting " + val);
+        }
         if(root.getNumKeys() == MAX_KEYS) {
             Debug.log("root full, splitting root");
             BTreeNode split = splitRoot();
-            insertNonFull(split, val);
+            insertNonFull(split, val, frequency);
         } else {
-            Debug.log("root isnt full");
-            insertNonFull(root, val);
+            insertNonFull(root, val, frequency);
         }
     }
 
     /**
      * Inserts a value into a specified node, which is known
-     * to not be full. If the node we try to insert into is
-     * not a leaf, we find the child of where it would belong,
-     * and recurse to that node. If the node we try to insert
-     * into is a leaf, we check where the value would belong, 
-     * and insert it there.
+     * to not be full. A single BTreeNode.findKey() lookup per
+     * node either finds the value, in which case its frequency
+     * is incremented, or gives the slot it belongs in. If the
+     * node is not a leaf, that slot is the child where the
+     * value would belong, and we move down to that node. If the
+     * node is a leaf, the value is inserted at that slot.
+     * <p>
+     * In a B+ tree the keys of internal nodes are only separators,
+     * so finding the value there does not end the descent: keys
+     * equal to a separator belong to the child on its right.
+     * <p>
+     * In a tree with max frequencies, the entry of every child
+     * passed on the way down is an upper bound for the frequency
+     * the value may reach without touching the ancestors. Only
+     * if the value ends up above the last of these entries does
+     * raiseMaxFrequencies() walk the path again to raise them.
+     * <p>
+     * Children are read into the two scratch nodes in turn
+     * (whichever one x is not), so with the cache off the
+     * descent decodes in place instead of allocating a node
+     * per level.
      * @param x Node to attempt to insert into. 
      * @param val Value to be inserted. 
+     * @param frequency Number of occurrences of val to add.
      */
-    private void insertNonFull(BTreeNode x, long val) {
-        Debug.log("______ insertNonFull(x = BTreeNode@" + x.getAddress() + ", val = " + val + ")");
-        
-        int i = x.getNumKeys()-1;
-        TreeObject toInsert = new TreeObject(val);
-
-        TreeObject[] keys = x.getKeys();
-        for (int j = 0; j < x.getNumKeys(); j++) {
-        //for (int j = 0; j < keys.length; j++) {
-            if (keys[j].getKey() == val) {
-                x.incFrequency(j);
+    private void insertNonFull(BTreeNode x, long val, int frequency) {
+        int pathMax = Integer.MAX_VALUE;
+        while (true) {
+            if (Debug.isLogging()) {
+                Debug.log("______ insertNonFull(x = BTreeNode@" + x.getAddress() + ", val = " + val + ")");
+            }
+            int found = x.findKey(val);
+            if (found >= 0 && (x.isLeaf() || !bPlusTree)) {
+                x.addFrequency(found, frequency);
                 disk.write(x);
+                raiseMaxFrequencies(val, x.getFrequency(found), pathMax);
                 return;
             }
-        }
 
-        if(x.isLeaf()) {
-            while(i >= 0 && val < x.getObjectsKey(i)) {
-                Debug.log("val: " + val + " | x.getObjectsKey(i): " + x.getObjectsKey(i));
-                x.setKey(i+1, x.getKey(i));
-                i--;
-            }
-            x.setKey(i+1, toInsert);
-            x.incSize();
-            disk.write(x);
-        } else {
-            while(i >= 0 && val < x.getObjectsKey(i)) {
-                i--;
+            int i = found >= 0 ? found + 1 : -(found + 1);
+            if(x.isLeaf()) {
+                x.insertKeyAt(i, val, frequency);
+                disk.write(x);
+                numKeys++;
+                raiseMaxFrequencies(val, frequency, pathMax);
+                return;
             }
-            i++;
-            BTreeNode xIthChild = disk.read(x.getChild(i));
+            BTreeNode spare = (x == scratch[0]) ? scratch[1] : scratch[0];
+            BTreeNode xIthChild = disk.read(x.getChild(i), spare);
             if(xIthChild.getNumKeys() == MAX_KEYS) {
-                splitChild(x, i);
-                if(val > x.getObjectsKey(i)) {
+                BTreeNode z = splitChild(x, i, xIthChild);
+                if(val == x.getObjectsKey(i) && !bPlusTree) {
+                    // the key moved up from the child we were about to enter
+                    x.addFrequency(i, frequency);
+                    disk.write(x);
+                    raiseMaxFrequencies(val, x.getFrequency(i), pathMax);
+                    return;
+                } else if(val >= x.getObjectsKey(i)) {
+                    xIthChild = z;
                     i++;
                 }
             }
-            xIthChild = disk.read(x.getChild(i));
-            insertNonFull(xIthChild, val);
+            pathMax = x.getMaxFrequency(i);
+            x = xIthChild;
         }
+    }
 
+    /**
+     * Raises the max frequency entries on the path from the root to val to at least frequency,
+     * after val reached that frequency. Entries only ever grow along a path towards the root, so
+     * nothing is done if frequency does not exceed pathMax, the entry of the last child the
+     * insert passed through. The walk stops at the node holding val.
+     * @param val key whose frequency grew
+     * @param frequency new frequency of val
+     * @param pathMax max frequency entry of the child holding val, Integer.MAX_VALUE at the root
+     */
+    private void raiseMaxFrequencies(long val, int frequency, int pathMax) {
+        if (!maxFrequencies || frequency <= pathMax) {
+            return;
+        }
+        BTreeNode node = root;
+        while (!node.isLeaf()) {
+            int found = node.findKey(val);
+            if (found >= 0 && !bPlusTree) {
+                return;
+            }
+            int i = found >= 0 ? found + 1 : -(found + 1);
+            if (node.getMaxFrequency(i) < frequency) {
+                node.setMaxFrequency(i, frequency);
+                disk.write(node);
+            }
+            BTreeNode spare = (node == scratch[0]) ? scratch[1] : scratch[0];
+            node = disk.read(node.getChild(i), spare);
+        }
     }
 
     /**
@@ -156,47 +290,67 @@ public class BTree<E>
      * children to make room for z as a child, and shift the 
      * respective keys in x. We then save the state of these
      * nodes to disk.
+     * <p>
+     * When a B+ tree splits a leaf, the middle key stays in y
+     * and only a copy of z's first key moves up to x, as a
+     * separator without a frequency. z is linked into the
+     * chain of leaves right after y.
+     * <p>
+     * The max frequency entries move with the children, and
+     * the entries of y and z in x are worked out again from
+     * their new contents.
      * @param x Node whos @param i th child will be split
      * @param i Index of child to split.
+     * @param y The i th child of x, already read by the caller.
+     * @return z, the new right sibling of y
      */    
 
-    private void splitChild(BTreeNode x, int i) {
+    private BTreeNode splitChild(BTreeNode x, int i, BTreeNode y) {
         Debug.log("Splitting child at address " + x.getAddress() + ". i = " + i);
-        BTreeNode y = disk.read(x.getChild(i));
-        Debug.log("Object y created from address " + x.getChild(i) + " ----------------------------------------------------------------");
-        Debug.log(y.toString());
+        boolean copyUp = bPlusTree && y.isLeaf();
         BTreeNode z = disk.allocateNode();
         z.setLeaf(y.isLeaf());
         z.setNumKeys(degree-1);
         for(int j = 0; j <= degree-2; j++) {
-            z.setKey(j, y.getKey(j + degree));
+            z.copyKey(j, y, j + degree);
         }
         if(!y.isLeaf()) {
             for(int j = 0; j <= degree-1; j++) {
-                Debug.log("Node@" + z.getAddress() + ": setting child " + j + " to " + y.getChild(j+degree));
                 z.setChild(j, y.getChild(j + degree));
+                z.setMaxFrequency(j, y.getMaxFrequency(j + degree));
             }
             z.setNumChildren(degree);
             y.setNumChildren(degree);
         }
-        y.setNumKeys(degree-1);
+        y.setNumKeys(copyUp ? degree : degree-1);
+        if (copyUp) {
+            z.setNextLeaf(y.getNextLeaf());
+            y.setNextLeaf(z.getAddress());
+        }
         for(int j = x.getNumKeys(); j >= i+1; j--) {
-            Debug.log("Node@" + x.getAddress() + ": setting child " + (j+1) + " to " + x.getChild(j));
             x.setChild(j+1, x.getChild(j));
+            x.setMaxFrequency(j+1, x.getMaxFrequency(j));
         }
         x.setChild(i + 1, z.getAddress());
         for(int j = x.getNumKeys()-1; j >= i; j--) {
-            x.setKey(j+1, x.getKey(j));
+            x.copyKey(j+1, x, j);
+        }
+        if (copyUp) {
+            x.setKey(i, z.getObjectsKey(0), 0);
+        } else {
+            x.copyKey(i, y, degree-1);
         }
-        x.setKey(i, y.getKey(degree-1));
         x.incSize();
         x.incNumChildren();
+        x.setMaxFrequency(i, y.subtreeMaxFrequency());
+        x.setMaxFrequency(i + 1, z.subtreeMaxFrequency());
 
         disk.write(y);
         disk.write(z);
         disk.write(x);
 
         numNodes++;
+        return z;
     }
 
     /**
@@ -212,14 +366,333 @@ public class BTree<E>
         dummy.setLeaf(false);
         //size already init to 0
         dummy.setChild(0, root); 
+        BTreeNode oldRoot = root;
         this.root = dummy;
-        splitChild(dummy, 0);
+        splitChild(dummy, 0, oldRoot);
         numNodes++;  
         return dummy;
     }
 
+    /**
+     * Builds the tree bottom-up from keys that are already sorted and distinct, instead of
+     * descending from the root once per key. Leaves are filled left to right with
+     * fillPercent of MAX_KEYS keys each, and the key between two neighbouring leaves is
+     * promoted as the separator for the level above. That level is then split into nodes
+     * the same way, until a level fits in a single node, which becomes the root. Every node
+     * is written exactly once, in increasing address order, leaves first and root last.
+     * <p>
+     * Node sizes are evened out across a level and clamped between degree-1 and MAX_KEYS keys,
+     * so the result satisfies the same invariants as a tree built by insert() and can be
+     * reopened by BTree(GeneBankSearchBTreeArguments, MetaData).
+     * <p>
+     * A B+ tree puts every key into the leaves instead, see bulkLoadLeaves(), and builds the
+     * levels above from copies of the first key of every leaf but the first.
+     * <p>
+     * The highest frequency below each node is carried up to the level above along with its
+     * address, so the max frequency entries are filled in as the nodes are written.
+     * @param keys sorted, distinct keys; may be reordered or overwritten by this method
+     * @param frequencies frequency of each key in keys
+     * @param count number of valid entries in keys and frequencies
+     * @param fillPercent percentage (50-100) of each node's key slots to fill
+     */
+    public void bulkLoad(long[] keys, int[] frequencies, int count, int fillPercent) {
+        if (!root.isLeaf() || root.getNumKeys() != 0) {
+            throw new IllegalStateException("bulkLoad() requires an empty tree");
+        }
+        if (count == 0) {
+            return;
+        }
+        int target = Math.max(degree - 1, Math.min(MAX_KEYS, (MAX_KEYS * fillPercent) / 100));
+        numKeys = count;
+        long[] children = null;
+        int[] childMaxima = null;
+        boolean reuseRoot = true;
+        numNodes = 0;
+        if (bPlusTree) {
+            int numLeaves = leavesFor(count, target);
+            children = new long[numLeaves];
+            childMaxima = new int[numLeaves];
+            bulkLoadLeaves(keys, frequencies, count, children, childMaxima);
+            if (numLeaves == 1) {
+                Debug.log("bulk loaded " + numNodes + " nodes");
+                return;
+            }
+            count = numLeaves - 1;
+            reuseRoot = false;
+        }
+
+        loadLevels(keys, frequencies, count, target, children, childMaxima, reuseRoot);
+        Debug.log("bulk loaded " + numNodes + " nodes");
+    }
+
+    /**
+     * Writes the levels of a bulk-loaded tree from the lowest one still to be written up to the
+     * root, as described for bulkLoad().
+     * @param keys sorted keys of the level; the keys of each level above are compacted into its front
+     * @param frequencies frequency of each key in keys
+     * @param count number of keys on the level
+     * @param target number of keys to aim for in each node
+     * @param children addresses of the nodes below, in key order, or null if the level is the leaf level
+     * @param childMaxima highest frequency below each of children
+     * @param reuseRoot true if the first node written should be this tree's empty root object
+     */
+    private void loadLevels(long[] keys, int[] frequencies, int count, int target, long[] children,
+                            int[] childMaxima, boolean reuseRoot) {
+        while (true) {
+            int numLevelNodes = nodesForLevel(count, target);
+            int levelKeys = count - (numLevelNodes - 1);
+            int base = levelKeys / numLevelNodes;
+            int extra = levelKeys % numLevelNodes;
+            long[] addresses = new long[numLevelNodes];
+            int[] maxima = new int[numLevelNodes];
+            int next = 0;
+            int child = 0;
+
+            for (int n = 0; n < numLevelNodes; n++) {
+                BTreeNode node = reuseRoot ? root : disk.allocateNode();
+                reuseRoot = false;
+                node.setLeaf(children == null);
+                int size = base + (n < extra ? 1 : 0);
+                for (int j = 0; j < size; j++) {
+                    node.setKey(j, keys[next], frequencies[next]);
+                    next++;
+                }
+                node.setNumKeys(size);
+                if (children != null) {
+                    for (int j = 0; j <= size; j++) {
+                        node.setMaxFrequency(j, childMaxima[child]);
+                        node.setChild(j, children[child++]);
+                    }
+                    node.setNumChildren(size + 1);
+                }
+                disk.write(node);
+                numNodes++;
+                addresses[n] = node.getAddress();
+                maxima[n] = node.subtreeMaxFrequency();
+                root = node;
+
+                if (n < numLevelNodes - 1) {
+                    // promote the key between this node and the next one; the level above is
+                    // compacted into the front of the same arrays
+                    keys[n] = keys[next];
+                    frequencies[n] = frequencies[next];
+                    next++;
+                }
+            }
+            if (numLevelNodes == 1) {
+                break;
+            }
+            count = numLevelNodes - 1;
+            children = addresses;
+            childMaxima = maxima;
+        }
+    }
+
+    /**
+     * Writes the leaf level of a bulk-loaded B+ tree: all count keys, evened out over as few
+     * leaves as target allows, each linked to the next. A leaf is written once the leaf after it
+     * has been allocated and linked, so the leaves still go to disk in address order. The first
+     * key of every leaf but the first is compacted into the front of keys, with frequency 0, as
+     * the separators for the level above.
+     * @param addresses receives the addresses of the leaves, in key order; its length is the
+     *                  number of leaves, as returned by leavesFor()
+     * @param maxima receives the highest frequency in each leaf
+     */
+    private void bulkLoadLeaves(long[] keys, int[] frequencies, int count, long[] addresses, int[] maxima) {
+        int numLeaves = addresses.length;
+        int base = count / numLeaves;
+        int extra = count % numLeaves;
+        BTreeNode previous = null;
+        int next = 0;
+        for (int n = 0; n < numLeaves; n++) {
+            BTreeNode leaf = n == 0 ? root : disk.allocateNode();
+            leaf.setLeaf(true);
+            if (n > 0) {
+                keys[n - 1] = keys[next];   // never overwrites a key not yet placed: next >= n
+                frequencies[n - 1] = 0;
+                previous.setNextLeaf(leaf.getAddress());
+                disk.write(previous);
+            }
+            int size = base + (n < extra ? 1 : 0);
+            for (int j = 0; j < size; j++) {
+                leaf.setKey(j, keys[next], frequencies[next]);
+                next++;
+            }
+            leaf.setNumKeys(size);
+            leaf.setNextLeaf(0);
+            numNodes++;
+            addresses[n] = leaf.getAddress();
+            maxima[n] = leaf.subtreeMaxFrequency();
+            previous = leaf;
+            root = leaf;
+        }
+        disk.write(previous);
+    }
+
+    /**
+     * Number of B+ tree leaves needed to hold count keys when aiming for target keys per leaf,
+     * clamped so that every leaf ends up with between degree-1 and MAX_KEYS keys.
+     */
+    private int leavesFor(int count, int target) {
+        if (count <= MAX_KEYS) {
+            return 1;
+        }
+        long fewest = (count + MAX_KEYS - 1) / MAX_KEYS;
+        long most = count / (degree - 1);
+        return (int) Math.max(fewest, Math.min(most, (count + target - 1) / target));
+    }
+
+    /**
+     * Number of nodes needed to hold count keys on one level when aiming for target keys per
+     * node. The separators between nodes move up a level, so n nodes hold count - (n - 1) keys.
+     * The result is clamped so that every node ends up with between degree-1 and MAX_KEYS keys.
+     */
+    private int nodesForLevel(int count, int target) {
+        if (count <= MAX_KEYS) {
+            return 1;
+        }
+        long slots = (long) count + 1;
+        long nodes = (slots + target) / (target + 1);
+        long fewest = (slots + 2L * degree - 1) / (2L * degree);
+        long most = slots / degree;
+        return (int) Math.max(fewest, Math.min(most, nodes));
+    }
+
+    /**
+     * Joins trees that were built separately over consecutive key ranges into this tree, which
+     * must still be empty. The parts are reopened for reading one at a time and their keys are
+     * streamed in order into a bottom-up load like bulkLoad()'s: the number of keys is known from
+     * the headers of the parts, so the leaf sizes are planned up front, every leaf is written as
+     * soon as it is full, and the key after it is kept as the separator for the level above. Only
+     * those separators are held in memory, one per leaf, and the levels above are then built from
+     * them exactly as by bulkLoad(). The result has every leaf at the same depth and between
+     * degree-1 and MAX_KEYS keys in every node but the root, as if the keys had been bulk-loaded
+     * in one piece. B+ trees are not supported.
+     * @param partFiles data files of the parts, in ascending key order; empty parts are skipped
+     * @param fillPercent percentage (50-100) of each node's key slots to fill
+     * @throws IOException if a part cannot be read
+     */
+    public void stitch(List<String> partFiles, int fillPercent) throws IOException {
+        if (!root.isLeaf() || root.getNumKeys() != 0) {
+            throw new IllegalStateException("stitch() requires an empty tree");
+        }
+        if (bPlusTree) {
+            throw new IllegalStateException("stitch() cannot join B+ trees, whose leaves would have to be relinked");
+        }
+        List<String> files = new ArrayList<>();
+        List<MetaData> parts = new ArrayList<>();
+        long total = 0;
+        for (String partFile : partFiles) {
+            MetaData part = MetaData.read(partFile);
+            if (part.getNumKeys() > 0) {
+                files.add(partFile);
+                parts.add(part);
+                total += part.getNumKeys();
+            }
+        }
+        if (total == 0) {
+            return;
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot stitch " + total + " keys");
+        }
+        int count = (int) total;
+        int target = Math.max(degree - 1, Math.min(MAX_KEYS, (MAX_KEYS * fillPercent) / 100));
+        StitchedLeaves leaves = new StitchedLeaves(count, nodesForLevel(count, target));
+        for (int i = 0; i < files.size(); i++) {
+            GeneBankSearchBTreeArguments partArgs = new GeneBankSearchBTreeArguments(false, degree, files.get(i),
+                    subsequenceLength, "", 0, 0);
+            BTree<?> part = new BTree<>(partArgs, parts.get(i));
+            try {
+                part.scan(0, Long.MAX_VALUE, leaves);
+            } finally {
+                part.disk.close();
+            }
+        }
+        leaves.finish();
+        if (leaves.next != leaves.addresses.length) {
+            throw new IOException("The parts hold fewer keys than their headers say");
+        }
+        numKeys = count;
+        if (leaves.addresses.length > 1) {
+            loadLevels(leaves.separators, leaves.separatorFrequencies, leaves.addresses.length - 1, target,
+                    leaves.addresses, leaves.maxima, false);
+        }
+        Debug.log("stitched " + files.size() + " parts into " + numNodes + " nodes");
+    }
+
+    /**
+     * Leaf level of stitch(), filled one key at a time. The leaves are sized like one level of
+     * bulkLoad(): count keys less one separator between each pair of leaves, evened out over
+     * the leaves, so the first leaves get one key more than the rest.
+     */
+    private class StitchedLeaves implements KeyVisitor {
+        private final int base;
+        private final int extra;
+        private final long[] addresses;
+        private final int[] maxima;
+        private final long[] separators;
+        private final int[] separatorFrequencies;
+        private BTreeNode leaf;
+        private int filled;
+        private int next;
+        private long last = -1;
+
+        StitchedLeaves(int count, int numLeaves) {
+            int leafKeys = count - (numLeaves - 1);
+            this.base = leafKeys / numLeaves;
+            this.extra = leafKeys % numLeaves;
+            this.addresses = new long[numLeaves];
+            this.maxima = new int[numLeaves];
+            this.separators = new long[numLeaves];
+            this.separatorFrequencies = new int[numLeaves];
+            numNodes = 0;
+        }
+
+        @Override
+        public void visit(long key, int frequency) {
+            if (key <= last) {
+                throw new IllegalArgumentException("The parts of stitch() overlap at key " + key);
+            }
+            last = key;
+            if (leaf == null) {
+                leaf = next == 0 ? root : disk.allocateNode();
+                leaf.setLeaf(true);
+                filled = 0;
+            }
+            if (filled == base + (next < extra ? 1 : 0)) {
+                separators[next] = key;
+                separatorFrequencies[next] = frequency;
+                finish();
+                return;
+            }
+            leaf.setKey(filled++, key, frequency);
+        }
+
+        /**
+         * Writes the leaf being filled, if any.
+         */
+        void finish() {
+            if (leaf == null) {
+                return;
+            }
+            leaf.setNumKeys(filled);
+            disk.write(leaf);
+            numNodes++;
+            addresses[next] = leaf.getAddress();
+            maxima[next] = leaf.subtreeMaxFrequency();
+            root = leaf;
+            leaf = null;
+            next++;
+        }
+    }
+
     public void print() {
-        inOrderTreeWalk(root);
+        if (bPlusTree) {
+            scan(0, Long.MAX_VALUE, (key, frequency) -> Debug.dump(new TreeObject(key, frequency).toString(subsequenceLength)));
+        } else {
+            inOrderTreeWalk(root);
+        }
         Debug.exit();
     }
     
@@ -232,63 +705,359 @@ public class BTree<E>
      * will in-order traverse the subtree rooted at `node`.
      */
     private void inOrderTreeWalk(BTreeNode node) {
-        TreeObject[] keys = node.getKeys();
         if(node.isLeaf()) {
             for(int i = 0; i < node.getNumKeys(); i++) {
-                if(keys[i] == null) {
-                    
-                }
-                Debug.dump(keys[i].toString(subsequenceLength));
+                Debug.dump(node.getKey(i).toString(subsequenceLength));
             }
         } else {
             for(int i = 0; i < node.getNumKeys(); i++) {
                 BTreeNode newNode = disk.read(node.getChild(i));
                 inOrderTreeWalk(newNode);
-                Debug.dump(keys[i].toString(subsequenceLength));
+                Debug.dump(node.getKey(i).toString(subsequenceLength));
             }
             BTreeNode next = disk.read(node.getChild(node.getNumKeys()));
             inOrderTreeWalk(next);
         }
     }
 
+    /**
+     * Looks up key from the root. A key ruled out by the tree's Bloom filter is not searched for.
+     * @param key key to look for
+     * @return a view of the key and its frequency, or null if the key is not in the tree
+     */
     public TreeObject search(long key) {
+        if (bloomFilter != null && !bloomFilter.mightContain(key)) {
+            return null;
+        }
         return searchRecursive(root,key);
     }
 
+    /**
+     * Walks down from node until key is found or a leaf is reached. Nodes below
+     * node are read into a scratch node, so only the returned TreeObject is allocated.
+     * Each thread has its own scratch node, so a tree opened for searching can be
+     * searched from several threads at once. In a B+ tree the walk always ends in a
+     * leaf, as the keys of internal nodes are only separators.
+     * @param node node to start at, normally the root
+     * @param key key to look for
+     * @return a view of the key and its frequency, or null if the key is not in the tree
+     */
     public TreeObject searchRecursive(BTreeNode node, long key) {
-        int i = 0;
-        while (i < node.getNumKeys() && key > node.getObjectsKey(i)) {
-            i++;
-        }
-        if (i < node.getNumKeys() && key == node.getObjectsKey(i)) {
-            return node.getKey(i);
-        } else if (node.isLeaf()) {
-            return null;
-        } else {
-            BTreeNode next = disk.read(node.getChild(i));
-            return searchRecursive(next,key);
+        BTreeNode scratchNode = searchNode.get();
+        while (true) {
+            int found = node.findKey(key);
+            if (found >= 0 && (node.isLeaf() || !bPlusTree)) {
+                return node.getKey(found);
+            } else if (node.isLeaf()) {
+                return null;
+            }
+            node = disk.read(node.getChild(found >= 0 ? found + 1 : -(found + 1)), scratchNode);
         }
     }
     
-    public MetaData getMetaData() {
-        if (root == null) {
-            return new MetaData(degree, numNodes, debugLevel, new BTreeNode(degree).getObjectSize(), 0);
-        } else {
-            return new MetaData(degree, numNodes, debugLevel, root.getObjectSize(), root.getAddress());
+    /**
+     * Looks up many keys in one walk of the tree. The keys must be sorted ascending without
+     * duplicates; the walk splits them between the children of each node it reads, so every
+     * node on the path to any of the keys is read once, no matter how many keys lead through it.
+     * Each call uses its own scratch nodes, so several threads may walk the tree at once.
+     * If the tree has a Bloom filter, the keys it rules out are dropped before the walk, so
+     * the paths that only they would have needed are never read.
+     * @param keys sorted, distinct keys to look for
+     * @param from index of the first key to look for
+     * @param to index just past the last key to look for
+     * @param frequencies receives the frequency of keys[i] at index i, or 0 if it is not in the tree
+     */
+    public void searchAll(long[] keys, int from, int to, int[] frequencies) {
+        Arrays.fill(frequencies, from, to, 0);
+        if (bloomFilter == null) {
+            if (from < to) {
+                searchAll(root, keys, from, to, frequencies, new ArrayList<>(), 0);
+            }
+            return;
+        }
+        long[] candidates = new long[to - from];
+        int[] positions = new int[to - from];
+        int count = 0;
+        for (int q = from; q < to; q++) {
+            if (bloomFilter.mightContain(keys[q])) {
+                candidates[count] = keys[q];
+                positions[count++] = q;
+            }
+        }
+        if (count > 0) {
+            int[] found = new int[count];
+            searchAll(root, candidates, 0, count, found, new ArrayList<>(), 0);
+            for (int c = 0; c < count; c++) {
+                frequencies[positions[c]] = found[c];
+            }
+        }
+    }
+
+    /**
+     * Merges keys[from..to) with the keys of node: keys equal to a node key are answered here,
+     * and each run of keys falling between two node keys is passed down to the child between them.
+     * Keys equal to a separator of a B+ tree are passed down with the run to its right instead.
+     * @param levels scratch node per depth, reused so the walk does not allocate per node
+     * @param depth depth of node below the start of the walk
+     */
+    private void searchAll(BTreeNode node, long[] keys, int from, int to, int[] frequencies,
+                           List<BTreeNode> levels, int depth) {
+        if (levels.size() == depth) {
+            levels.add(new BTreeNode(degree));
+        }
+        BTreeNode scratchNode = levels.get(depth);
+        int q = from;
+        for (int i = 0; i < node.getNumKeys() && q < to; i++) {
+            long key = node.getObjectsKey(i);
+            int start = q;
+            while (q < to && keys[q] < key) {
+                q++;
+            }
+            if (q > start && !node.isLeaf()) {
+                searchAll(disk.read(node.getChild(i), scratchNode), keys, start, q, frequencies, levels, depth + 1);
+            }
+            if (q < to && keys[q] == key && (node.isLeaf() || !bPlusTree)) {
+                frequencies[q] = node.getFrequency(i);
+                q++;
+            }
+        }
+        if (q < to && !node.isLeaf()) {
+            searchAll(disk.read(node.getChild(node.getNumKeys()), scratchNode), keys, q, to, frequencies, levels,
+                    depth + 1);
+        }
+    }
+
+    /**
+     * Receives the keys found by scan(), in ascending order.
+     */
+    public interface KeyVisitor
+    {
+        void visit(long key, int frequency);
+    }
+
+    /**
+     * Visits every key between from and to, both included, in ascending order. A B+ tree is
+     * descended once, to the leaf where from belongs, and then read leaf by leaf along the
+     * sibling links until a key above to turns up. Any other tree is walked in order, skipping
+     * the subtrees that lie entirely below from and stopping at the first key above to.
+     * @param from smallest key to visit
+     * @param to largest key to visit
+     * @param visitor receives each key and its frequency
+     */
+    public void scan(long from, long to, KeyVisitor visitor) {
+        if (!bPlusTree) {
+            scan(root, from, to, visitor);
+            return;
+        }
+        BTreeNode scratchNode = new BTreeNode(degree);
+        BTreeNode node = root;
+        while (!node.isLeaf()) {
+            int found = node.findKey(from);
+            node = disk.read(node.getChild(found >= 0 ? found + 1 : -(found + 1)), scratchNode);
+        }
+        int found = node.findKey(from);
+        int i = found >= 0 ? found : -(found + 1);
+        while (true) {
+            for (; i < node.getNumKeys(); i++) {
+                long key = node.getObjectsKey(i);
+                if (key > to) {
+                    return;
+                }
+                visitor.visit(key, node.getFrequency(i));
+            }
+            if (node.getNextLeaf() == 0) {
+                return;
+            }
+            node = disk.read(node.getNextLeaf(), scratchNode);
+            i = 0;
+        }
+    }
+
+    /**
+     * In-order walk of the subtree at node for scan(). The caller stops at the first of its own
+     * keys above to, so returning at a key above to also ends the walk of every ancestor.
+     */
+    private void scan(BTreeNode node, long from, long to, KeyVisitor visitor) {
+        int found = node.findKey(from);
+        int i = found >= 0 ? found : -(found + 1);
+        if (!node.isLeaf() && found < 0) {
+            scan(disk.read(node.getChild(i)), from, to, visitor);
+        }
+        for (; i < node.getNumKeys(); i++) {
+            long key = node.getObjectsKey(i);
+            if (key > to) {
+                return;
+            }
+            visitor.visit(key, node.getFrequency(i));
+            if (!node.isLeaf()) {
+                scan(disk.read(node.getChild(i + 1)), from, to, visitor);
+            }
         }
     }
 
+    /**
+     * The n keys with the highest frequencies, most frequent first and keys of equal frequency in
+     * ascending order.
+     * <p>
+     * In a tree with max frequencies this is a best-first search: a priority queue holds the keys
+     * and the unread children met so far, each child ranked by its max frequency entry, which no
+     * key below it can exceed. Whenever the best entry of the queue is a key, no key still unread
+     * can beat it, so it is the next answer; whenever it is a child, that child is read and its
+     * keys and children are queued. Only the nodes on the way to the answers, and those whose
+     * maximum ties or beats them, are ever read. Children come before keys of the same frequency,
+     * so ties are answered in key order. Without max frequencies, every key is visited by scan()
+     * and the best n are kept in a heap.
+     * @param n number of keys to return
+     * @return up to n keys with their frequencies
+     */
+    public List<TreeObject> topN(int n) {
+        List<TreeObject> top = new ArrayList<>();
+        if (n <= 0) {
+            return top;
+        }
+        if (!maxFrequencies) {
+            PriorityQueue<TreeObject> best = new PriorityQueue<>(n + 1, (a, b) -> a.getFrequency() != b.getFrequency()
+                    ? Integer.compare(a.getFrequency(), b.getFrequency()) : Long.compare(b.getKey(), a.getKey()));
+            scan(0, Long.MAX_VALUE, (key, frequency) -> {
+                best.add(new TreeObject(key, frequency));
+                if (best.size() > n) {
+                    best.poll();
+                }
+            });
+            while (!best.isEmpty()) {
+                top.add(best.poll());
+            }
+            Collections.reverse(top);
+            return top;
+        }
+        PriorityQueue<TopCandidate> queue = new PriorityQueue<>();
+        queueCandidates(queue, root);
+        while (top.size() < n && !queue.isEmpty()) {
+            TopCandidate candidate = queue.poll();
+            if (candidate.child < 0) {
+                top.add(new TreeObject(candidate.key, candidate.frequency));
+            } else {
+                queueCandidates(queue, disk.read(candidate.child));
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Queues the keys of node (unless they are B+ tree separators) and its children for topN().
+     */
+    private void queueCandidates(PriorityQueue<TopCandidate> queue, BTreeNode node) {
+        if (node.isLeaf() || !bPlusTree) {
+            for (int i = 0; i < node.getNumKeys(); i++) {
+                queue.add(new TopCandidate(node.getFrequency(i), node.getObjectsKey(i), -1));
+            }
+        }
+        if (!node.isLeaf()) {
+            for (int i = 0; i <= node.getNumKeys(); i++) {
+                queue.add(new TopCandidate(node.getMaxFrequency(i), 0, node.getChild(i)));
+            }
+        }
+    }
+
+    /**
+     * A key, or an unread child and the highest frequency below it, waiting in the queue of topN().
+     * The highest frequency comes first; at equal frequency children come before keys, and keys in
+     * ascending order.
+     */
+    private static class TopCandidate implements Comparable<TopCandidate>
+    {
+        final int frequency;
+        final long key;
+        final long child;
+
+        TopCandidate(int frequency, long key, long child) {
+            this.frequency = frequency;
+            this.key = key;
+            this.child = child;
+        }
+
+        @Override
+        public int compareTo(TopCandidate other) {
+            if (frequency != other.frequency) {
+                return Integer.compare(other.frequency, frequency);
+            }
+            if ((child < 0) != (other.child < 0)) {
+                return child < 0 ? 1 : -1;
+            }
+            return Long.compare(key, other.key);
+        }
+    }
+
+    public MetaData getMetaData() {
+        long rootAddress = root == null ? 0 : root.getAddress();
+        MetaData metadata = new MetaData(degree, subsequenceLength, numNodes, numKeys,
+                MetaData.slotSize(degree, pageSize, maxFrequencies), rootAddress, pageSize);
+        metadata.setCanonicalMode(canonicalMode);
+        metadata.setBPlusTree(bPlusTree);
+        metadata.setMaxFrequencies(maxFrequencies);
+        return metadata;
+    }
+
     public void printCache() {
         disk.printCache();
     }
 
     public void printDisk() {
-        for (int i = 0; i < numNodes; i++) {
-            Debug.log(disk.read(i * getMetaData().getNodeSize()).toString());
+        for (long i = 0; i < numNodes; i++) {
+            Debug.log(disk.read(getMetaData().getFirstNodeAddress() + i * getMetaData().getNodeSize()).toString());
         }
     }
 
+    /**
+     * @return name of the B-Tree data file
+     */
+    public String getFileName() {
+        return btreeFileName;
+    }
+
     public BTreeNode getRoot() {
         return root;
     }
+
+    /**
+     * Reads a node, for walking the tree down from getRoot().
+     * @param address address of the node, as stored in its parent
+     * @return the node at address
+     */
+    public BTreeNode getNode(long address) {
+        return disk.read(address);
+    }
+
+    public int getSubsequenceLength() {
+        return subsequenceLength;
+    }
+
+    public long getNumKeys() {
+        return numKeys;
+    }
+
+    public boolean isBPlusTree() {
+        return bPlusTree;
+    }
+
+    /**
+     * @return true if searches are filtered through a Bloom filter loaded from "<tree file>.bloom"
+     */
+    public boolean hasBloomFilter() {
+        return bloomFilter != null;
+    }
+
+    /**
+     * Checks a key against the Bloom filter without searching the tree, so callers with many keys can
+     * drop the ones that are certainly missing before preparing them for searchAll().
+     * @param key key to look for
+     * @return false if the key is certainly not in the tree, true if it may be or the tree has no filter
+     */
+    public boolean mightContain(long key) {
+        return bloomFilter == null || bloomFilter.mightContain(key);
+    }
+
+    public int getCanonicalMode() {
+        return canonicalMode;
+    }
 }
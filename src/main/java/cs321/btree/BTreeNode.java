@@ -1,6 +1,6 @@
 package cs321.btree;
 
-import cs321.common.Debug;
+import java.util.Arrays;
 
 public class BTreeNode {
        
@@ -8,31 +8,25 @@ public class BTreeNode {
     private int numKeys;
     private int numChildren;
     private boolean isLeaf;
-    private TreeObject[] keys;
+    private long[] keys;
+    private int[] frequencies;
     private long[] children;
+    private int[] maxFrequencies;
+    private boolean dirty;
 
     /**
      * Constructor for a node created within DiskReadWrite, 
      * whos address is known to be valid and a multiple of 
-     * nodeSize. `keys` and `children` must be initialized 
-     * to have anything other than null, otherwise 
-     * NullPointerExceptions are inevitable. 
+     * nodeSize. Keys and their frequencies are held in two
+     * parallel primitive arrays, so a node is just three
+     * arrays and can be decoded in place by DiskReadWrite
+     * without creating an object per key.
      * @param degree Needed for creating correct sized array
      * @param address Where node will be stored in Disk
      */
     public BTreeNode (int degree, long address) {
-        numKeys = 0;
-        keys = new TreeObject[2*degree - 1];
-        for(int i = 0; i < 2*degree-1; i++) {
-            this.keys[i] = new TreeObject();
-        }
-        numChildren = 0;
-        children = new long[2*degree];
-        for(int i = 0; i < 2*degree; i++) {
-            this.children[i] = 0;
-        }
+        this(degree);
         this.address = address;
-        Debug.log(String.valueOf(address));
     }
     /**
      * Creates a node that is not instantated with an address. 
@@ -42,14 +36,13 @@ public class BTreeNode {
      * @returns Node with minimal data
      */
     public BTreeNode(int degree) {
-        keys = new TreeObject[2*degree - 1];
-        for(int i = 0; i < 2*degree-1; i++) {
-            this.keys[i] = new TreeObject();
-        }
+        numKeys = 0;
+        keys = new long[2*degree - 1];
+        Arrays.fill(keys, -1);
+        frequencies = new int[2*degree - 1];
+        numChildren = 0;
         children = new long[2*degree];
-        for(int i = 0; i < 2*degree; i++) {
-            this.children[i] = 0;
-        }
+        maxFrequencies = new int[2*degree];
     }
     /**
      * Calculates the amount of memory taken up by a single node object.
@@ -57,10 +50,32 @@ public class BTreeNode {
      * @return Byte amount of memory used for one node as an integer
      */
     public int getObjectSize() {
-        return ((keys.length) * new TreeObject(1).getObjectSize())  //size of keys (creates a dummy treeObject to access objectSize)
-            + ((children.length * Long.BYTES) + Long.BYTES)      //size of children, address
-            + (Integer.BYTES * 3) ;                  //degree, numKeys, numChildren
-                                              //isLeaf
+        return diskSize(children.length / 2);
+    }
+
+    /**
+     * Number of bytes DiskReadWrite encodes for a node of the given degree: address,
+     * numKeys, numChildren, 2t-1 frequency/key pairs, 2t children and isLeaf.
+     * @param degree degree of the tree
+     * @return Byte amount of one encoded node
+     */
+    public static int diskSize(int degree) {
+        return diskSize(degree, false);
+    }
+
+    /**
+     * Number of bytes DiskReadWrite encodes for a node of the given degree, in a tree that
+     * may also keep the highest frequency below every child, see getMaxFrequency().
+     * @param degree degree of the tree
+     * @param maxFrequencies whether the 2t per-child maximum frequencies are stored too
+     * @return Byte amount of one encoded node
+     */
+    public static int diskSize(int degree, boolean maxFrequencies) {
+        return Long.BYTES + (Integer.BYTES * 2)                       //address, numKeys, numChildren
+            + ((2*degree - 1) * (Integer.BYTES + Long.BYTES))         //frequencies and keys
+            + (2*degree * Long.BYTES)                                 //children
+            + Integer.BYTES                                           //isLeaf
+            + (maxFrequencies ? 2*degree * Integer.BYTES : 0);        //highest frequency below each child
     }
     
 
@@ -73,18 +88,27 @@ public class BTreeNode {
     }
 
     public long getObjectsKey(int i) {
-        return keys[i].getKey();
+        return keys[i];
     }
     public void setObjectsKey(int i, long val) {
-        keys[i].setKey(val);    
+        keys[i] = val;
+    }
+    public int getFrequency(int i) {
+        return frequencies[i];
     }
-    public TreeObject[] getKeys() {
-        return this.keys;
+    public void setFrequency(int i, int frequency) {
+        frequencies[i] = frequency;
+    }
+    public long[] getKeyArray() {
+        return keys;
+    }
+    public int[] getFrequencyArray() {
+        return frequencies;
     }
     public String printObjectsKeys() {
         String ret = "";
-        for(TreeObject l : keys) {
-            ret+=l.getKey() + " ";
+        for(long l : keys) {
+            ret+=l + " ";
         }
         return ret;
     }
@@ -111,17 +135,116 @@ public class BTreeNode {
         children[i] = address;
     }
     
+    /**
+     * The highest frequency of any key in the subtree of child i. Only kept up to date in trees
+     * built with max frequencies, where it lets a search skip subtrees that cannot hold a more
+     * frequent key than it has already found.
+     */
+    public int getMaxFrequency(int i) {
+        return maxFrequencies[i];
+    }
+    public void setMaxFrequency(int i, int frequency) {
+        maxFrequencies[i] = frequency;
+    }
+    public int[] getMaxFrequencyArray() {
+        return maxFrequencies;
+    }
+    /**
+     * The highest frequency in the subtree rooted at this node: the largest of its own keys'
+     * frequencies and, for an internal node, of the maximum frequencies of its children.
+     * @return highest frequency below and including this node, 0 for an empty leaf
+     */
+    public int subtreeMaxFrequency() {
+        int max = 0;
+        for (int i = 0; i < numKeys; i++) {
+            max = Math.max(max, frequencies[i]);
+        }
+        if (!isLeaf) {
+            for (int i = 0; i <= numKeys; i++) {
+                max = Math.max(max, maxFrequencies[i]);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * The right sibling of a leaf in a B+ tree. Leaves have no children, so the link is kept in
+     * the first child slot and needs no room of its own on disk.
+     * @return address of the next leaf, or 0 for the last leaf (0 is the header, never a node)
+     */
+    public long getNextLeaf() {
+        return children[0];
+    }
+    public void setNextLeaf(long address) {
+        children[0] = address;
+    }
+
     public int getNumKeys() {
         return numKeys;
     }
     public void setNumKeys(int newSize) {
         numKeys = newSize;
     }
-    public void setKey(int i, TreeObject to) {
-        keys[i] = to;
+    public void setKey(int i, long key, int frequency) {
+        keys[i] = key;
+        frequencies[i] = frequency;
     }
+    /**
+     * Inserts a key at index i, shifting the keys at i and above one slot to the right.
+     * The node must not be full.
+     */
+    public void insertKeyAt(int i, long key, int frequency) {
+        System.arraycopy(keys, i, keys, i + 1, numKeys - i);
+        System.arraycopy(frequencies, i, frequencies, i + 1, numKeys - i);
+        keys[i] = key;
+        frequencies[i] = frequency;
+        numKeys++;
+    }
+    /**
+     * Looks up key among this node's keys with a binary search. The loop halves the
+     * candidate range with a conditional select instead of an early-exit comparison, so it
+     * always runs log2(numKeys) steps and compiles without a hard-to-predict branch.
+     * <p>
+     * The result follows the convention of Arrays.binarySearch(): a hit returns the index
+     * of the key, and a miss returns -(slot + 1), where slot is the number of keys smaller
+     * than key. slot is both where the key would be inserted in a leaf and the index of
+     * the child to descend into in an internal node.
+     * @param key key to look for
+     * @return index of key, or -(slot + 1) if it is not in this node
+     */
+    public int findKey(long key) {
+        int base = 0;
+        int n = numKeys;
+        if (n == 0) {
+            return -1;
+        }
+        while (n > 1) {
+            int half = n >>> 1;
+            base = (keys[base + half - 1] < key) ? base + half : base;
+            n -= half;
+        }
+        int slot = base + (keys[base] < key ? 1 : 0);
+        if (slot < numKeys && keys[slot] == key) {
+            return slot;
+        }
+        return -(slot + 1);
+    }
+    /**
+     * Copies the key (and its frequency) at index from of src into index to of this node.
+     * src may be this node, which is how keys are shifted within a node.
+     */
+    public void copyKey(int to, BTreeNode src, int from) {
+        keys[to] = src.keys[from];
+        frequencies[to] = src.frequencies[from];
+    }
+    /**
+     * Creates a TreeObject view of the i-th key. This allocates, so it is meant for
+     * results handed out of the tree rather than for use while walking it.
+     * @param i index of the key
+     * @return a new TreeObject holding the key and its frequency
+     */
     public TreeObject getKey(int i) {
-        return keys[i];
+        return new TreeObject(keys[i], frequencies[i]);
     }
 
     public void decSize() {
@@ -131,7 +254,21 @@ public class BTreeNode {
         numKeys++;
     }
     public void incFrequency(int i) {
-        keys[i].incrementFrequency();
+        frequencies[i]++;
+    }
+    public void addFrequency(int i, int amount) {
+        frequencies[i] += amount;
+    }
+
+    /**
+     * Whether this node has been changed in the cache since it was last written to disk.
+     * Only used when DiskReadWrite is in write-back mode.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+    public void setDirty(boolean dirty) {
+        this.dirty = dirty;
     }
 
     public boolean isLeaf() {
@@ -159,8 +296,8 @@ public class BTreeNode {
         sb.delete(sb.length()-2,sb.length());
         sb.append("]\n");
         sb.append("Keys: (" + numKeys + ") [");
-        for (TreeObject t : keys) {
-            sb.append(t.getKey());
+        for (long k : keys) {
+            sb.append(k);
             sb.append(", ");
         }
         sb.delete(sb.length()-2,sb.length());
@@ -0,0 +1,252 @@
+package cs321.btree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Blocked Bloom filter over the keys of a B-Tree, stored next to the tree file as "<tree file>.bloom".
+ * If mightContain() returns false, the key is certainly not in the tree, so the search can skip the
+ * tree. The filter is not updated when the tree changes, so it is built once the tree is finished.
+ * <p>
+ * The bits are split into 512-bit blocks, the size of a cache line. Each key picks one block and sets
+ * all of its bits inside it, so a lookup reads a single cache line instead of one line per hash. This
+ * gives a somewhat higher false positive rate than a plain Bloom filter with as many bits, which
+ * BloomFilter(numKeys, falsePositiveRate, subsequenceLength) makes up for with a few extra bits.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ *  0  int   magic ("GBBF")
+ *  4  int   format version
+ *  8  int   number of bits set per key
+ * 12  int   subsequence length of the tree
+ * 16  long  number of distinct keys of the tree
+ * 24  long  number of blocks
+ * 32        reserved up to HEADER_SIZE
+ * 64        blocks, 8 longs each
+ * </pre>
+ * A filter read with map() stays in the file: its blocks are memory mapped, so opening a filter costs
+ * no more than reading its header, and only the pages that lookups touch are ever loaded.
+ */
+public class BloomFilter
+{
+    public static final int MAGIC = 0x47424246;
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final String SUFFIX = ".bloom";
+
+    private static final int BLOCK_LONGS = 8;
+    private static final int BLOCK_BITS = BLOCK_LONGS * Long.SIZE;
+    private static final int MAX_HASHES = 16;
+    /** Bit positions taken from one 64-bit hash, 9 bits each; a new hash is mixed for the next ones. */
+    private static final int BITS_PER_HASH = 7;
+    /** Extra bits for the blocking; measured to keep the real rate below the requested one from 0.1 to 0.0001. */
+    private static final double BLOCKED_OVERHEAD = 1.2;
+
+    private final LongBuffer blocks;
+    private final int numBlocks;
+    private final int hashes;
+    private final int subsequenceLength;
+    private final long numKeys;
+
+    /**
+     * Creates an empty filter sized for numKeys keys. The number of bits per key follows from
+     * falsePositiveRate as for a plain Bloom filter, -ln(p) / ln(2)^2, plus BLOCKED_OVERHEAD
+     * for the blocking; the number of hashes is the one that is optimal for that many bits.
+     * @param numKeys number of distinct keys that will be added
+     * @param falsePositiveRate wanted chance that mightContain() returns true for a missing key
+     * @param subsequenceLength length of the subsequences of the tree, kept to check the filter against it
+     */
+    public BloomFilter(long numKeys, double falsePositiveRate, int subsequenceLength) {
+        double bitsPerKey = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long bits = (long) Math.ceil(Math.max(1, numKeys) * bitsPerKey * BLOCKED_OVERHEAD);
+        long wanted = (bits + BLOCK_BITS - 1) / BLOCK_BITS;
+        if (wanted > Integer.MAX_VALUE / BLOCK_LONGS) {
+            throw new IllegalArgumentException("A Bloom filter for " + numKeys + " keys at a false positive rate of "
+                    + falsePositiveRate + " would be too large");
+        }
+        this.numBlocks = (int) wanted;
+        this.hashes = Math.max(1, Math.min(MAX_HASHES, (int) Math.round(bitsPerKey * Math.log(2))));
+        this.subsequenceLength = subsequenceLength;
+        this.numKeys = numKeys;
+        this.blocks = LongBuffer.wrap(new long[numBlocks * BLOCK_LONGS]);
+    }
+
+    private BloomFilter(LongBuffer blocks, int numBlocks, int hashes, int subsequenceLength, long numKeys) {
+        this.blocks = blocks;
+        this.numBlocks = numBlocks;
+        this.hashes = hashes;
+        this.subsequenceLength = subsequenceLength;
+        this.numKeys = numKeys;
+    }
+
+    /**
+     * @param treeDataFile name of a B-Tree data file
+     * @return name of the filter stored next to it
+     */
+    public static String fileFor(String treeDataFile) {
+        return treeDataFile + SUFFIX;
+    }
+
+    /**
+     * Adds key to the filter.
+     * @param key key stored in the tree
+     */
+    public void add(long key) {
+        long hash = mix(key);
+        int base = block(hash) * BLOCK_LONGS;
+        long bits = hash;
+        for (int i = 0; i < hashes; i++) {
+            if (i % BITS_PER_HASH == 0) {
+                bits = mix(hash + i);
+            }
+            int bit = (int) bits & (BLOCK_BITS - 1);
+            bits >>>= 9;
+            int index = base + (bit >>> 6);
+            blocks.put(index, blocks.get(index) | (1L << bit));
+        }
+    }
+
+    /**
+     * @param key key to look for
+     * @return false if key was certainly never added, true if it may have been
+     */
+    public boolean mightContain(long key) {
+        long hash = mix(key);
+        int base = block(hash) * BLOCK_LONGS;
+        long bits = hash;
+        for (int i = 0; i < hashes; i++) {
+            if (i % BITS_PER_HASH == 0) {
+                bits = mix(hash + i);
+            }
+            int bit = (int) bits & (BLOCK_BITS - 1);
+            bits >>>= 9;
+            if ((blocks.get(base + (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the filter to fileName, replacing any file of that name.
+     * @param fileName name of the filter file, normally fileFor() of the tree
+     * @throws IOException if the file cannot be written
+     */
+    public void write(String fileName) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(FORMAT_VERSION);
+            header.putInt(hashes);
+            header.putInt(subsequenceLength);
+            header.putLong(numKeys);
+            header.putLong(numBlocks);
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            ByteBuffer chunk = ByteBuffer.allocate(BLOCK_LONGS * Long.BYTES * 2048);
+            LongBuffer longs = chunk.asLongBuffer();
+            for (int from = 0; from < blocks.capacity(); from += longs.capacity()) {
+                int count = Math.min(longs.capacity(), blocks.capacity() - from);
+                longs.clear();
+                for (int i = 0; i < count; i++) {
+                    longs.put(blocks.get(from + i));
+                }
+                chunk.clear();
+                chunk.limit(count * Long.BYTES);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a filter written by write(). The blocks are memory mapped read-only, and may be used
+     * from several threads at once.
+     * @param fileName name of the filter file
+     * @return the filter
+     * @throws IOException if the file cannot be read or is not a filter
+     */
+    public static BloomFilter map(String fileName) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException(fileName + " is not a Bloom filter file.");
+            }
+            int version = header.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException(fileName + " has unsupported Bloom filter version " + version + ".");
+            }
+            int hashes = header.getInt();
+            int subsequenceLength = header.getInt();
+            long numKeys = header.getLong();
+            long numBlocks = header.getLong();
+            long length = numBlocks * BLOCK_LONGS * Long.BYTES;
+            if (numBlocks <= 0 || numBlocks > Integer.MAX_VALUE / BLOCK_LONGS || channel.size() < HEADER_SIZE + length) {
+                throw new IOException(fileName + " is truncated.");
+            }
+            LongBuffer blocks = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, length).asLongBuffer();
+            return new BloomFilter(blocks, (int) numBlocks, hashes, subsequenceLength, numKeys);
+        }
+    }
+
+    /**
+     * @param treeDataFile name of a B-Tree data file
+     * @return true if a filter file exists next to it
+     */
+    public static boolean exists(String treeDataFile) {
+        return new File(fileFor(treeDataFile)).isFile();
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    public int getSubsequenceLength() {
+        return subsequenceLength;
+    }
+
+    public long getNumKeys() {
+        return numKeys;
+    }
+
+    /**
+     * @return size of the blocks in bytes, without the header
+     */
+    public long getSizeInBytes() {
+        return (long) numBlocks * BLOCK_LONGS * Long.BYTES;
+    }
+
+    /**
+     * Picks the block of a key from the high half of its hash, scaled to numBlocks without a division.
+     */
+    private int block(long hash) {
+        return (int) (((hash >>> 32) * numBlocks) >>> 32);
+    }
+
+    /**
+     * The 64-bit finalizer of MurmurHash3, which spreads every bit of x over the whole result. Keys
+     * are packed 2-bit sequences, far from random, so they have to be mixed before they are used.
+     */
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+}
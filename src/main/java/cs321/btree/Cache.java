@@ -2,18 +2,36 @@ package cs321.btree;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 public class Cache<K,V> extends LinkedHashMap<K,V> {
 
     private int maxSize;
+    private BiConsumer<K,V> onEvict;
 
     public Cache(int maxSize) {
+        this(maxSize, null);
+    }
+
+    /**
+     * Creates a least-recently-used cache that reports every entry it drops.
+     * @param maxSize number of entries kept before the eldest is evicted
+     * @param onEvict called with the key and value of each evicted entry, or null
+     */
+    public Cache(int maxSize, BiConsumer<K,V> onEvict) {
         super(maxSize, 0.75f, true);
         this.maxSize = maxSize;
+        this.onEvict = onEvict;
     }
 
     @Override
     protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-        return (size() > maxSize);
+        if (size() > maxSize) {
+            if (onEvict != null) {
+                onEvict.accept(eldest.getKey(), eldest.getValue());
+            }
+            return true;
+        }
+        return false;
     }
 }
@@ -3,48 +3,90 @@ package cs321.btree;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.TreeMap;
 
 import cs321.common.Debug;
 
 public class DiskReadWrite {
+
+    private static final int FLUSH_BATCH = 64;
     
     private int nodeSize;
     private int degree;
+    private long firstAddress;
     private long nextAddress = 0;
     private boolean useCache;
     private FileChannel file;
     private ByteBuffer buffer;
+    private ThreadLocal<ByteBuffer> readBuffer;
+    private boolean readOnly;
+    private MappedNodeStore mappedStore;
     private MetaData metaData;
-    private Debug debug;
     private Cache cache;
     private String treeDataFile;
+    private boolean writeBack;
+    private boolean maxFrequencies;
+    private TreeMap<Long,BTreeNode> evicted = new TreeMap<>();
     
-    public DiskReadWrite(String treeDataFile, MetaData metadata, boolean useCache, int cacheSize) {
+    /**
+     * Opens (or creates) the B-Tree data file. An existing tree (create is false) is opened
+     * read-only: nodes are read with positional reads into per-thread buffers and the cache is
+     * locked around every access, so several threads may read through the same instance.
+     * @param treeDataFile name of the B-Tree data file
+     * @param metadata metadata of the tree. When opening an existing tree this should be the header
+     *                 already read with MetaData.read(); if null, the header is read from the file here.
+     * @param create if true, any existing file is emptied and nodes are allocated from the first slot
+     *               after the header, which is written by finish()
+     * @param useCache whether nodes are kept in a Cache
+     * @param cacheSize maximum number of nodes held by the cache
+     * @param useMemoryMap if true, nodes are read and written through a MappedNodeStore instead of
+     *                     positioning the channel for every node
+     * @param writeBack if true (and useCache is true), write() only marks the node dirty in the cache;
+     *                  dirty nodes reach the disk when they are evicted or when finish() is called
+     */
+    public DiskReadWrite(String treeDataFile, MetaData metadata, boolean create, boolean useCache, int cacheSize,
+                         boolean useMemoryMap, boolean writeBack) {
         this.metaData = metadata;
         this.treeDataFile = treeDataFile;
-        if (new File(treeDataFile + ".metadata").exists()) {
-            readMetaData();
-        }
-        this.degree = this.metaData.getDegree();
         this.useCache = useCache;
         File DATAFILE = new File(treeDataFile);
-        cache = new Cache<Long,BTreeNode>(cacheSize);
+        this.writeBack = useCache && writeBack;
+        if (this.writeBack) {
+            cache = new Cache<Long,BTreeNode>(cacheSize, this::evict);
+        } else {
+            cache = new Cache<Long,BTreeNode>(cacheSize);
+        }
 
-        nodeSize = new BTreeNode(degree).getObjectSize();
-        buffer = ByteBuffer.allocateDirect(nodeSize);
         try {
-            if(!DATAFILE.exists()) {
+            if(create && !DATAFILE.exists()) {
                 DATAFILE.createNewFile();
-                RandomAccessFile dataFile = new RandomAccessFile(DATAFILE, "rw");
-                file = dataFile.getChannel();
-
-            } else {
-                RandomAccessFile dataFile = new RandomAccessFile(DATAFILE, "rw");
-                file = dataFile.getChannel();
             }
-        } catch (Exception e) {
+            readOnly = !create;
+            RandomAccessFile dataFile = new RandomAccessFile(DATAFILE, readOnly ? "r" : "rw");
+            file = dataFile.getChannel();
+            if (create) {
+                file.truncate(0);
+            } else if (metaData == null) {
+                metaData = MetaData.read(file);
+            }
+        } catch (IOException e) {
+            Debug.logError("Unable to open " + treeDataFile + ": " + e.getMessage());
             e.printStackTrace();
         }
+        this.degree = this.metaData.getDegree();
+        this.maxFrequencies = metaData.hasMaxFrequencies();
+        nodeSize = metaData.getNodeSize();
+        int encodedSize = BTreeNode.diskSize(degree, maxFrequencies);
+        if (nodeSize < encodedSize) {
+            Debug.logError("Slot size " + nodeSize + " is too small for a node of degree " + degree + ".");
+        }
+        buffer = ByteBuffer.allocateDirect(encodedSize);
+        readBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(encodedSize));
+        firstAddress = metaData.getFirstNodeAddress();
+        nextAddress = firstAddress;
+        if (useMemoryMap && file != null) {
+            mappedStore = new MappedNodeStore(file, firstAddress, nodeSize, readOnly);
+        }
     }
 
     /**
@@ -55,163 +97,279 @@ public class DiskReadWrite {
     public BTreeNode allocateNode() {
         BTreeNode alloc = new BTreeNode(metaData.getDegree(), nextAddress);
         nextAddress += Long.valueOf(nodeSize);
+        if (mappedStore != null) {
+            mappedStore.ensureCapacity(nextAddress);
+        }
         cache.put(alloc.getAddress(),alloc);
         return alloc;
     }
 
     /**
-     * Saves Metadata of constructed tree
-     */
-    public void writeMetaData() {
-        try {
-            File metaFile = new File(treeDataFile + ".metadata");
-            System.out.println(treeDataFile + ".metadata");
-            metaFile.createNewFile();
-            FileOutputStream fout = new FileOutputStream(metaFile);
-            ObjectOutputStream out = new ObjectOutputStream(fout);
-            out.writeObject(this.metaData);
-            out.flush();
-            out.close();
-        } catch (IOException ioe) {
-            Debug.logError("Unable to write metadata file.");
-            Debug.logError(ioe.toString());
-            ioe.printStackTrace();
-        }
-    }
-
-    /**
-     * Reads Metadata of pre-constructed tree
+     * If cache is not being used, read from the disk directly.
+     * Otherwise, read from the cache.
+     * @param addr address of node to read. Must be the first node address plus a multiple of nodeSize
+     * @return node either reconstructed from disk, or returned from cache.
      */
-    public void readMetaData() {
-        File metaFile = new File(treeDataFile + ".metadata");
-        MetaData metadata;
-        try {
-            if (!metaFile.exists()) {
-                throw new IOException(metaFile.getAbsolutePath() + " does not exist.");
-            } else {
-                ObjectInputStream in = new ObjectInputStream(new FileInputStream(metaFile));
-                this.metaData = (MetaData)in.readObject();
-                in.close();
-            }
-        } catch (IOException ioe) {
-            Debug.logError("Unable to read metadata file.");
-            Debug.logError(ioe.toString());
-            ioe.printStackTrace();
-        } catch (ClassNotFoundException cnfe) {
-            Debug.logError("Metadata file is not in correct format.");
-            Debug.logError(cnfe.toString());
-            cnfe.printStackTrace();
-        }
+    public BTreeNode read(long addr){
+        return read(addr, null);
     }
 
     /**
-     * If cache is not being used, read from the disk directly.
-     * Otherwise, read from the cache.
-     * @param addr address of node to read. Must be a multiple of nodeSize
+     * Same as read(addr), but when the cache is off the node is decoded into reuse
+     * instead of a newly allocated BTreeNode, so walking the tree does not allocate.
+     * With the cache on, reuse is ignored: cached nodes are shared and must never be
+     * overwritten in place, so a cache miss still creates the node that gets cached.
+     * <p>
+     * Safe to call from several threads on a read-only instance, as long as each thread
+     * passes its own reuse node.
+     * @param addr address of node to read. Must be the first node address plus a multiple of nodeSize
+     * @param reuse node whose contents may be overwritten, or null to always allocate.
+     *              Must not be a node the caller still needs, such as the root.
      * @return node either reconstructed from disk, or returned from cache.
      */
-    public BTreeNode read(long addr){
+    public BTreeNode read(long addr, BTreeNode reuse){
         if (useCache && cache != null) {
-            BTreeNode result = (BTreeNode)cache.get(addr);
-            if (result != null) {
-                return result;
+            synchronized (cache) {  //an access-ordered map changes on every get
+                BTreeNode result = (BTreeNode)cache.get(addr);
+                if (result != null) {
+                    return result;
+                }
+                result = writeBack ? evicted.remove(addr) : null;
+                if (result != null) {
+                    cache.put(addr, result);
+                    return result;
+                }
             }
         }
-        if(addr % nodeSize != 0) {
-           debug.logError("address: " + addr + "positioned at invalid index");
+        if((addr - firstAddress) % nodeSize != 0) {
+           Debug.logError("address: " + addr + "positioned at invalid index");
         }
-        try {
-            file.position(addr);
-        } catch (IOException e) {
-            e.printStackTrace();
+        BTreeNode recreatedNode = (useCache || reuse == null) ? new BTreeNode(degree) : reuse;
+        if (mappedStore != null) {
+            decode(mappedStore.segmentFor(addr), mappedStore.offsetOf(addr), recreatedNode);
+        } else {
+            ByteBuffer in = readBuffer.get();
+            in.clear(); //still has junk from previous calls
+            try {
+                while (in.hasRemaining() && file.read(in, addr + in.position()) >= 0) {
+                    //positional reads leave the channel position alone, so threads cannot disturb each other
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            decode(in, 0, recreatedNode);
         }
-        buffer.clear(); //still has junk from previous calls
-
-        try {
-            file.read(buffer);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } 
-        buffer.flip();
+        if (useCache && cache != null) {
+            synchronized (cache) {
+                cache.put(recreatedNode.getAddress(),recreatedNode);
+            }
+        }
+        return recreatedNode;
+    }
 
-        BTreeNode recreatedNode = new BTreeNode(degree);
+    /**
+     * Rebuilds a node from its on-disk layout, starting at byte index base of src. Only
+     * absolute gets are used, so src can be a read buffer or a mapped segment shared by several threads.
+     * Every field of the node is overwritten, so into may hold a previously read node.
+     * @param src buffer holding the node's bytes
+     * @param base index of the node's first byte within src
+     * @param into node receiving the decoded contents
+     */
+    private void decode(ByteBuffer src, int base, BTreeNode into) {
+        long[] keys = into.getKeyArray();
+        int[] frequencies = into.getFrequencyArray();
+        long[] children = into.getChildren();
+        int pos = base;
 
-        recreatedNode.setAddress(buffer.getLong());
-        recreatedNode.setNumKeys(buffer.getInt());
-        recreatedNode.setNumChildren(buffer.getInt());
-        for(int i = 0; i < recreatedNode.getKeys().length; i++) {
-            TreeObject thisObject = new TreeObject();
-            thisObject.setFrequency(buffer.getInt());
-            thisObject.setKey(buffer.getLong());
-            recreatedNode.setKey(i, thisObject);
+        into.setAddress(src.getLong(pos));
+        pos += Long.BYTES;
+        into.setNumKeys(src.getInt(pos));
+        pos += Integer.BYTES;
+        into.setNumChildren(src.getInt(pos));
+        pos += Integer.BYTES;
+        for(int i = 0; i < keys.length; i++) {
+            frequencies[i] = src.getInt(pos);
+            pos += Integer.BYTES;
+            keys[i] = src.getLong(pos);
+            pos += Long.BYTES;
         }
-        for(int i = 0; i < recreatedNode.getChildren().length; i++) {
-            recreatedNode.setChild(i, buffer.getLong());
+        for(int i = 0; i < children.length; i++) {
+            children[i] = src.getLong(pos);
+            pos += Long.BYTES;
         }
-        int isLeafB = buffer.getInt();
-        recreatedNode.setLeaf(isLeafB == 1 ? true : false);
-        if (useCache && cache != null) {
-            cache.put(recreatedNode.getAddress(),recreatedNode);
+        int isLeafB = src.getInt(pos);
+        pos += Integer.BYTES;
+        into.setLeaf(isLeafB == 1 ? true : false);
+        if (maxFrequencies) {
+            int[] maxima = into.getMaxFrequencyArray();
+            for(int i = 0; i < maxima.length; i++) {
+                maxima[i] = src.getInt(pos);
+                pos += Integer.BYTES;
+            }
         }
-        return recreatedNode;
+        into.setDirty(false);
     }
 
     /**
      * Writes to cache if useCache is true, otherwise writes 
-     * only to disk.
+     * only to disk. In write-back mode the node is only marked
+     * dirty; it is written once it leaves the cache.
      * @param node to be overwritten with new information
      */
     public void write(BTreeNode node) {
-        try {
-            file.position(node.getAddress());
-        } catch (IOException e) {
-            debug.logError("Could not position channel on address: " + node.getAddress());
-            e.printStackTrace();
+        if (readOnly) {
+            Debug.logError("Cannot write node " + node.getAddress() + ": " + treeDataFile + " was opened read-only.");
+            return;
+        }
+        if (writeBack) {
+            node.setDirty(true);
+            evicted.remove(node.getAddress());
+            cache.put(node.getAddress(),node);
+            return;
+        }
+        writeToDisk(node);
+        if (useCache && cache != null) {
+            cache.put(node.getAddress(),node);
+        }
+    }
+
+    /**
+     * Encodes a node into the data file, either through the mapped store or by
+     * positioning the channel at the node's address.
+     * @param node node to save
+     */
+    private void writeToDisk(BTreeNode node) {
+        if (mappedStore != null) {
+            encode(node, mappedStore.segmentFor(node.getAddress()), mappedStore.offsetOf(node.getAddress()));
+        } else {
+            try {
+                file.position(node.getAddress());
+            } catch (IOException e) {
+                Debug.logError("Could not position channel on address: " + node.getAddress());
+                e.printStackTrace();
+            }
+            buffer.clear();
+            int total = encode(node, buffer, 0);
+            buffer.limit(total);
+            try {
+                file.write(buffer);
+            } catch (IOException e) {
+                Debug.logError("Could not write to byte buffer.");
+                e.printStackTrace();
+            }
+        }
+        node.setDirty(false);
+    }
+
+    /**
+     * Called by the cache for every node it drops in write-back mode. Dirty nodes are
+     * held back until FLUSH_BATCH of them have piled up, and are then written in address
+     * order so the channel moves forward through the file instead of seeking back and forth.
+     * A node that is read or written again before the batch is flushed simply moves back
+     * into the cache.
+     * @param addr address of the evicted node
+     * @param node the evicted node
+     */
+    private void evict(Long addr, BTreeNode node) {
+        if (!node.isDirty()) {
+            return;
         }
-        buffer.clear();
+        evicted.put(addr, node);
+        if (evicted.size() >= FLUSH_BATCH) {
+            flush(evicted);
+        }
+    }
 
+    /**
+     * Writes every dirty node in nodes in ascending address order and empties the map.
+     * @param nodes dirty nodes keyed by address
+     */
+    private void flush(TreeMap<Long,BTreeNode> nodes) {
+        Debug.log("flushing " + nodes.size() + " dirty nodes");
+        for (BTreeNode node : nodes.values()) {
+            if (node.isDirty()) {
+                writeToDisk(node);
+            }
+        }
+        nodes.clear();
+    }
+
+    /**
+     * Lays out a node in its on-disk format, starting at byte index base of dest. Only
+     * absolute puts are used, so dest can be the shared channel buffer or a mapped segment.
+     * @param node node to encode
+     * @param dest buffer receiving the node's bytes
+     * @param base index of the node's first byte within dest
+     * @return number of bytes written
+     */
+    private int encode(BTreeNode node, ByteBuffer dest, int base) {
         long address = node.getAddress();
         int numKeys = node.getNumKeys();
         int numChildren = node.getNumChildren();
-        TreeObject[] keys = node.getKeys();
+        long[] keys = node.getKeyArray();
+        int[] frequencies = node.getFrequencyArray();
         long[] children = node.getChildren();
         int isLeaf = node.isLeaf() ? 1 : 0;
+        int pos = base;
 
-        buffer.putLong(address);
-        int total = 0;
-        total += Long.BYTES;
-        buffer.putInt(numKeys);
-        total += Integer.BYTES;
-        buffer.putInt(numChildren);
-        total += Integer.BYTES;
+        dest.putLong(pos, address);
+        pos += Long.BYTES;
+        dest.putInt(pos, numKeys);
+        pos += Integer.BYTES;
+        dest.putInt(pos, numChildren);
+        pos += Integer.BYTES;
         for(int i = 0; i < keys.length; i++) {
-            buffer.putInt(keys[i].getFrequency());
-            total += Integer.BYTES;
-            buffer.putLong(keys[i].getKey());
-            total += Long.BYTES;
+            dest.putInt(pos, frequencies[i]);
+            pos += Integer.BYTES;
+            dest.putLong(pos, keys[i]);
+            pos += Long.BYTES;
         }
         for(int i = 0; i < children.length; i++) {
-            buffer.putLong(children[i]);
-            total += Long.BYTES;
+            dest.putLong(pos, children[i]);
+            pos += Long.BYTES;
         }
-        buffer.putInt(isLeaf);
-        total += Integer.BYTES;
-        buffer.flip();
-        try {
-            file.write(buffer);
-        } catch (IOException e) {
-            debug.logError("Could not write to byte buffer.");
-            e.printStackTrace();
+        dest.putInt(pos, isLeaf);
+        pos += Integer.BYTES;
+        if (maxFrequencies) {
+            for (int maximum : node.getMaxFrequencyArray()) {
+                dest.putInt(pos, maximum);
+                pos += Integer.BYTES;
+            }
         }
-        debug.log("wrote " + total + " bytes to disk");
-        if (useCache && cache != null) {
-            cache.put(node.getAddress(),node);
+        return pos - base;
+    }
+
+    /**
+     * Closes the data file of a tree that was opened for reading, without writing its header.
+     * @throws IOException if the file cannot be closed
+     */
+    public void close() throws IOException {
+        if (mappedStore != null) {
+            mappedStore.close(0);
         }
+        file.close();
     }
 
+    /**
+     * Flushes any nodes still held back by the write-back cache, writes the metadata
+     * as the file header and closes the data file.
+     * @param metadata final metadata of the tree
+     * @throws IOException if the header cannot be written or the file cannot be closed
+     */
     public void finish(MetaData metadata) throws IOException {
+        if (writeBack) {
+            for (Object node : cache.values()) {
+                if (((BTreeNode) node).isDirty()) {
+                    evicted.put(((BTreeNode) node).getAddress(), (BTreeNode) node);
+                }
+            }
+            flush(evicted);
+        }
         this.metaData = metadata;
-        writeMetaData();
+        if (mappedStore != null) {
+            mappedStore.close(nextAddress);
+        }
+        metaData.write(file);
         file.close();
     }
 
@@ -0,0 +1,134 @@
+package cs321.btree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Maps a B-Tree data file into memory in large segments so that DiskReadWrite can decode and
+ * encode nodes directly against the page cache instead of positioning the channel and copying
+ * through a buffer for every node access.
+ * <p>
+ * Mapping starts at the first node, after the file header. Each segment is a whole number of
+ * nodes long, so a node never straddles two segments and can be addressed with segmentFor(addr)
+ * and offsetOf(addr). Segments are mapped lazily: when opening an existing tree only the bytes
+ * that are already in the file are mapped, while a tree that is being built calls ensureCapacity()
+ * from allocateNode() so the file grows one full segment at a time. A read-only store maps its
+ * segments read-only and may be shared by several reading threads.
+ */
+public class MappedNodeStore {
+
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private final FileChannel file;
+    private final long base;
+    private final long segmentSize;
+    private final FileChannel.MapMode mode;
+    private volatile MappedByteBuffer[] segments;
+
+    /**
+     * @param file open channel of the B-Tree data file
+     * @param base address of the first node
+     * @param nodeSize number of bytes used by one node on disk
+     * @param readOnly true if file was opened read-only; the store can then only be read
+     */
+    public MappedNodeStore(FileChannel file, long base, int nodeSize, boolean readOnly) {
+        this.file = file;
+        this.base = base;
+        this.segmentSize = Math.max(1, SEGMENT_BYTES / nodeSize) * nodeSize;
+        this.segments = new MappedByteBuffer[4];
+        this.mode = readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+    }
+
+    /**
+     * Makes sure every byte below end is backed by a full-size mapping, extending the
+     * file when end lies past its current size.
+     * @param end first address that does not need to be mapped
+     */
+    public void ensureCapacity(long end) {
+        int last = segmentIndex(end - 1);
+        for (int i = 0; i <= last; i++) {
+            if (i >= segments.length || segments[i] == null || segments[i].capacity() < segmentSize) {
+                map(i, segmentSize);
+            }
+        }
+    }
+
+    /**
+     * Gets the mapped segment holding the node stored at addr. Segments of an existing
+     * file are mapped on first use, up to the end of the file.
+     * @param addr address of a node
+     * @return the mapping containing that node; use offsetOf(addr) to index into it
+     */
+    public MappedByteBuffer segmentFor(long addr) {
+        int index = segmentIndex(addr);
+        MappedByteBuffer[] current = segments;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        return mapExisting(index, addr);
+    }
+
+    /**
+     * Maps a segment of the existing file on first use. Synchronized so that threads
+     * reading a shared store map each segment once; segmentFor() only takes this lock
+     * on a miss.
+     */
+    private synchronized MappedByteBuffer mapExisting(int index, long addr) {
+        if (index < segments.length && segments[index] != null) {
+            return segments[index];
+        }
+        try {
+            long start = base + index * segmentSize;
+            return map(index, Math.min(segmentSize, file.size() - start));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map address " + addr, e);
+        }
+    }
+
+    /**
+     * @param addr address of a node
+     * @return byte index of that node within segmentFor(addr)
+     */
+    public int offsetOf(long addr) {
+        return (int) ((addr - base) % segmentSize);
+    }
+
+    /**
+     * Forces all mapped segments to disk and trims the slack left by the last segment,
+     * so the file ends where the last node does.
+     * @param end address just past the last node, or 0 to leave the file size alone
+     * @throws IOException if the channel cannot be forced or truncated
+     */
+    public void close(long end) throws IOException {
+        for (MappedByteBuffer segment : segments) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+        segments = new MappedByteBuffer[0];
+        if (end > 0 && file.size() > end) {
+            file.truncate(end);
+        }
+    }
+
+    private int segmentIndex(long addr) {
+        return (int) ((addr - base) / segmentSize);
+    }
+
+    private MappedByteBuffer map(int index, long length) {
+        MappedByteBuffer[] grown = segments;
+        if (index >= grown.length) {
+            grown = Arrays.copyOf(grown, Math.max(index + 1, grown.length * 2));
+        }
+        try {
+            grown[index] = file.map(mode, base + index * segmentSize, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map segment " + index, e);
+        }
+        segments = grown;
+        return grown[index];
+    }
+}
@@ -1,33 +1,189 @@
 package cs321.btree;
 
-import java.io.Serializable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Metadata of a tree, stored as a fixed-size binary header at offset 0 of the B-Tree data file.
+ * Opening a tree is therefore a single small read of the data file itself, and the degree and
+ * subsequence length needed to interpret it come from the file rather than from the command line.
+ * <p>
+ * Nodes are stored in fixed-size slots. When the tree has a page size, every slot is padded to a
+ * whole number of pages and the header takes up the first page, so each node starts on a page
+ * boundary and reading it never touches two pages. Version 1 files have no page size: their nodes
+ * are packed back to back right after the header.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ *  0  int   magic ("GBBT")
+ *  4  int   format version
+ *  8  int   degree
+ * 12  int   subsequence length
+ * 16  int   slot size in bytes (distance between two nodes)
+ * 20  int   page size in bytes, 0 if nodes are packed (always 0 in version 1)
+ * 24  long  root address
+ * 32  long  number of nodes
+ * 40  long  number of distinct keys
+ * 48  int   canonical mode of the keys, see SequenceUtils.canonical() (version 3, 0 before)
+ * 52  int   flags, see FLAG_BPLUS_TREE and FLAG_MAX_FREQUENCIES (version 4, 0 before)
+ * 56        reserved up to HEADER_SIZE
+ * </pre>
+ */
+public class MetaData {
+
+    public static final int MAGIC = 0x47424254;
+    public static final int FORMAT_VERSION = 4;
+    public static final int HEADER_SIZE = 64;
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    /** Keys live only in leaves, which are linked to their right sibling; see BTree. */
+    public static final int FLAG_BPLUS_TREE = 1;
+    /** Every node also stores the highest frequency below each of its children; see BTreeNode.getMaxFrequency(). */
+    public static final int FLAG_MAX_FREQUENCIES = 2;
 
-public class MetaData implements Serializable {
     private int degree;
-    private int numNodes;
-    private int nodeSize; 
+    private int subsequenceLength;
+    private long numNodes;
+    private long numKeys;
+    private int nodeSize;
     private long rootAddress;
-    private int debugLevel;
-    
+    private int pageSize;
+    private int canonicalMode;
+    private int flags;
+
+    /**
+     * Constructor for Metadata of a tree whose nodes are packed right after the header.
+     * @param degree degree of tree
+     * @param subsequenceLength length of the DNA subsequences stored as keys
+     * @param numNodes number of nodes in tree
+     * @param numKeys number of distinct keys in tree
+     * @param nodeSize number of bytes between the start of two consecutive nodes
+     * @param address address of root node
+     */
+    public MetaData(int degree, int subsequenceLength, long numNodes, long numKeys, int nodeSize, long address) {
+        this(degree, subsequenceLength, numNodes, numKeys, nodeSize, address, 0);
+    }
+
     /**
-     * Constructor for Metadata of a tree. 
+     * Constructor for Metadata of a tree.
      * @param degree degree of tree
+     * @param subsequenceLength length of the DNA subsequences stored as keys
      * @param numNodes number of nodes in tree
-     * @param debugLevel neeed for appropriate logging
-     * @param nodeSize 
+     * @param numKeys number of distinct keys in tree
+     * @param nodeSize number of bytes between the start of two consecutive nodes
      * @param address address of root node
+     * @param pageSize page size the node slots are aligned to, or 0 if nodes are packed
      */
-    public MetaData(int degree, int numNodes, int debugLevel, int nodeSize, long address) {
+    public MetaData(int degree, int subsequenceLength, long numNodes, long numKeys, int nodeSize, long address,
+                    int pageSize) {
         this.rootAddress = address;
         this.degree = degree;
+        this.subsequenceLength = subsequenceLength;
         this.numNodes = numNodes;
+        this.numKeys = numKeys;
         this.nodeSize = nodeSize;
-        this.debugLevel = debugLevel;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Size of the slot holding one node of the given degree: the encoded node rounded up to a
+     * whole number of pages, or the encoded node itself if pageSize is 0.
+     * @param degree degree of tree
+     * @param pageSize page size the slots are aligned to, or 0 for packed nodes
+     * @return number of bytes between the start of two consecutive nodes
+     */
+    public static int slotSize(int degree, int pageSize) {
+        return slotSize(degree, pageSize, false);
     }
 
-    //exists just to get size of MetaData obj
-    public MetaData(int degree) {
+    /**
+     * Same as slotSize(degree, pageSize), for a tree whose nodes may also store the highest
+     * frequency below each child.
+     * @param degree degree of tree
+     * @param pageSize page size the slots are aligned to, or 0 for packed nodes
+     * @param maxFrequencies whether nodes store per-child maximum frequencies
+     * @return number of bytes between the start of two consecutive nodes
+     */
+    public static int slotSize(int degree, int pageSize, boolean maxFrequencies) {
+        int size = BTreeNode.diskSize(degree, maxFrequencies);
+        if (pageSize <= 0) {
+            return size;
+        }
+        return ((size + pageSize - 1) / pageSize) * pageSize;
+    }
+
+    /**
+     * Reads the header of an existing B-Tree data file.
+     * @param treeDataFile name of the B-Tree data file
+     * @return the metadata stored in the file
+     * @throws IOException if the file cannot be read or does not start with a valid header
+     */
+    public static MetaData read(String treeDataFile) throws IOException {
+        File file = new File(treeDataFile);
+        if (!file.exists()) {
+            throw new IOException(file.getAbsolutePath() + " does not exist.");
+        }
+        try (RandomAccessFile dataFile = new RandomAccessFile(file, "r")) {
+            return read(dataFile.getChannel());
+        }
+    }
 
+    /**
+     * Reads the header from the start of an open B-Tree data file.
+     * @param file channel of the B-Tree data file
+     * @return the metadata stored in the file
+     * @throws IOException if the channel cannot be read or does not start with a valid header
+     */
+    public static MetaData read(FileChannel file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (file.read(header, header.position()) < 0) {
+                throw new IOException("B-Tree file is too short to hold a header.");
+            }
+        }
+        header.flip();
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a B-Tree data file (bad magic number).");
+        }
+        int version = header.getInt(4);
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Unsupported B-Tree file version " + version + ", expected at most " + FORMAT_VERSION + ".");
+        }
+        int pageSize = version >= 2 ? header.getInt(20) : 0;
+        MetaData metadata = new MetaData(header.getInt(8), header.getInt(12), header.getLong(32), header.getLong(40),
+                header.getInt(16), header.getLong(24), pageSize);
+        if (version >= 3) {
+            metadata.setCanonicalMode(header.getInt(48));
+        }
+        if (version >= 4) {
+            metadata.flags = header.getInt(52);
+        }
+        return metadata;
+    }
+
+    /**
+     * Writes this metadata as the header at the start of the B-Tree data file.
+     * @param file channel of the B-Tree data file
+     * @throws IOException if the header cannot be written
+     */
+    public void write(FileChannel file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.putInt(4, FORMAT_VERSION);
+        header.putInt(8, degree);
+        header.putInt(12, subsequenceLength);
+        header.putInt(16, nodeSize);
+        header.putInt(20, pageSize);
+        header.putLong(24, rootAddress);
+        header.putLong(32, numNodes);
+        header.putLong(40, numKeys);
+        header.putInt(48, canonicalMode);
+        header.putInt(52, flags);
+        while (header.hasRemaining()) {
+            file.write(header, header.position());
+        }
     }
 
     /* GETTERS AND SETTERS */
@@ -35,10 +191,18 @@ public class MetaData implements Serializable {
         return degree;
     }
 
-    public int getNumNodes() {
+    public int getSubsequenceLength() {
+        return subsequenceLength;
+    }
+
+    public long getNumNodes() {
         return numNodes;
     }
 
+    public long getNumKeys() {
+        return numKeys;
+    }
+
     public int getNodeSize() {
         return nodeSize;
     }
@@ -47,12 +211,58 @@ public class MetaData implements Serializable {
         return rootAddress;
     }
 
-    public int getDebugLevel() {
-        return debugLevel;
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return how keys were canonicalized when the tree was built: SequenceUtils.CANONICAL_NONE,
+     *         CANONICAL_COMPLEMENT or CANONICAL_REVERSE_COMPLEMENT
+     */
+    public int getCanonicalMode() {
+        return canonicalMode;
+    }
+
+    public void setCanonicalMode(int canonicalMode) {
+        this.canonicalMode = canonicalMode;
+    }
+
+    /**
+     * @return true if the tree is a B+ tree: internal nodes only hold separators, every key and frequency
+     *         is in a leaf, and each leaf links to the next one
+     */
+    public boolean isBPlusTree() {
+        return (flags & FLAG_BPLUS_TREE) != 0;
+    }
+
+    public void setBPlusTree(boolean bPlusTree) {
+        flags = bPlusTree ? flags | FLAG_BPLUS_TREE : flags & ~FLAG_BPLUS_TREE;
+    }
+
+    /**
+     * @return true if every node also stores the highest frequency below each of its children
+     */
+    public boolean hasMaxFrequencies() {
+        return (flags & FLAG_MAX_FREQUENCIES) != 0;
+    }
+
+    public void setMaxFrequencies(boolean maxFrequencies) {
+        flags = maxFrequencies ? flags | FLAG_MAX_FREQUENCIES : flags & ~FLAG_MAX_FREQUENCIES;
+    }
+
+    /**
+     * @return address of the first node: HEADER_SIZE for packed nodes, otherwise the first
+     *         slot boundary after the header
+     */
+    public long getFirstNodeAddress() {
+        if (pageSize <= 0) {
+            return HEADER_SIZE;
+        }
+        return ((HEADER_SIZE + pageSize - 1) / pageSize) * pageSize;
     }
 
     public int getObjectSize() {
-        return (Integer.BYTES * 4) + Long.BYTES;
+        return HEADER_SIZE;
     }
 
 }
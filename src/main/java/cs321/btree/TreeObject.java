@@ -18,6 +18,16 @@ public class TreeObject
         this.key = key;
         frequency = 1;
     }
+    /**
+     * Constructor for a view of a key that is stored in a node,
+     * as handed out by BTree.search().
+     * @param key Key this object will hold
+     * @param frequency Number of times the key was inserted
+     */
+    public TreeObject(long key, int frequency) {
+        this.key = key;
+        this.frequency = frequency;
+    }
     /**
      * Constructor for either TreeObject whose key is either
      * not known, or just for access to local variables.
@@ -71,6 +71,22 @@ public class Debug {
         }
     }
 
+    /**
+     * Sends everything dump() writes from now on to a new dumpfile, closing the current one. Used when one run
+     * builds several B-Trees, so each gets a dumpfile of its own. Debug must already have been initialized.
+     * @param filename String, name of the new dumpfile
+     */
+    public static void dumpTo(String filename) {
+        exit();
+        initialized = true;
+        try {
+            dumpWriter = new BufferedWriter(new FileWriter(filename));
+        } catch (IOException ioe) {
+            log("Could not write to file " + filename);
+            log(ioe.toString());
+        }
+    }
+
     /**
      * Closes the BufferedWriter after writing its contents to the dumpfile. User is required to call Debug.init()
      * again in order to make further changes to the dumpfile.
@@ -121,6 +137,15 @@ public class Debug {
         }
     }
 
+    /**
+     * Whether log() currently prints anything. Lets hot paths skip building a message
+     * that would be thrown away.
+     * @return true if debug level is 0
+     */
+    public static boolean isLogging() {
+        return localDebugLevel == 0;
+    }
+
     /**
      * Prints information to standard error (System.err). Only functions if debug level is set to 0, otherwise
      * this messaging will be suppressed.
@@ -1,6 +1,9 @@
 package cs321.common;
 
 import cs321.btree.*;
+
+import java.util.TreeSet;
+
 public class ParseArgumentUtils
 {
     /**
@@ -24,15 +27,70 @@ public class ParseArgumentUtils
         return converted;
     }
     
+    public static double convertStringToDouble(String argument) throws ParseArgumentException
+    {
+        double converted;
+        try {
+            converted = Double.parseDouble(argument);
+        } catch (NumberFormatException nfe){
+            throw new ParseArgumentException(nfe.getMessage());
+        }
+        return converted;
+    }
+
     /**
-     * Uses the equation 4096 >= (size of key array)(2t-1) + (size of children array)(2t) + (size of fields other than keys and children in node)
-     * which is then solved for t, and floored so that t <= the equation.
+     * Converts a comma separated list of numbers and ranges, such as "1-10,20,31", into the numbers it names.
+     * Every number must lie within lowRangeInclusive and highRangeInclusive.
+     * @return the distinct numbers in ascending order
+     */
+    public static int[] convertStringToIntList(String argument, int lowRangeInclusive, int highRangeInclusive) throws ParseArgumentException
+    {
+        TreeSet<Integer> numbers = new TreeSet<>();
+        for (String item : argument.split(",")) {
+            int dash = item.indexOf('-', 1);
+            int first = convertStringToInt(dash < 0 ? item : item.substring(0, dash));
+            int last = dash < 0 ? first : convertStringToInt(item.substring(dash + 1));
+            verifyRanges(first, lowRangeInclusive, highRangeInclusive);
+            verifyRanges(last, first, highRangeInclusive);
+            for (int i = first; i <= last; i++) {
+                numbers.add(i);
+            }
+        }
+        int[] result = new int[numbers.size()];
+        int i = 0;
+        for (int number : numbers) {
+            result[i++] = number;
+        }
+        return result;
+    }
+
+    /**
+     * Optimal degree for the default 4096 byte page.
      * @returns optimal degree 
      */
     public static int findOptimalDegree() {
-        int nodeFieldsSize = Long.BYTES + (Integer.BYTES*2);
-        int treeObjectSize = new TreeObject().getObjectSize();
-        
-        return (int)Math.floor((4096 - nodeFieldsSize + treeObjectSize)/((Long.BYTES*2)+(treeObjectSize*2)));
+        return findOptimalDegree(MetaData.DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Finds the largest degree t whose encoded node, BTreeNode.diskSize(t), still fits in one page.
+     * diskSize grows linearly in t, so it is solved from the size of a degree 0 and a degree 1 node.
+     * @param pageSize size of one node slot in bytes
+     * @returns optimal degree, at least 2
+     */
+    public static int findOptimalDegree(int pageSize) {
+        return findOptimalDegree(pageSize, false);
+    }
+
+    /**
+     * Same as findOptimalDegree(pageSize), for nodes that may also store the highest frequency below each child.
+     * @param pageSize size of one node slot in bytes
+     * @param maxFrequencies whether nodes store per-child maximum frequencies
+     * @returns optimal degree, at least 2
+     */
+    public static int findOptimalDegree(int pageSize, boolean maxFrequencies) {
+        int fixed = BTreeNode.diskSize(0, maxFrequencies);
+        int perDegree = BTreeNode.diskSize(1, maxFrequencies) - fixed;
+        return Math.max(2, (pageSize - fixed) / perDegree);
     }
 }
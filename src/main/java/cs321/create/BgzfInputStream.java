@@ -0,0 +1,198 @@
+package cs321.create;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses a block-gzip (BGZF) file on several threads. BGZF, as written by bgzip, is a series of
+ * gzip members of at most 64 KB each, and every member records its own compressed size in a "BC" extra
+ * field. The blocks can therefore be cut out of the file without inflating anything, and inflated
+ * independently.
+ * <p>
+ * read() cuts up to READ_AHEAD_PER_THREAD blocks per thread ahead of the reader and hands each to the
+ * pool; the inflated blocks are then returned strictly in file order, so to the reader this is an
+ * ordinary InputStream of the decompressed file. The CRC32 of every block is checked.
+ */
+public class BgzfInputStream extends InputStream
+{
+    private static final int FIXED_HEADER_SIZE = 12;  // gzip header up to and including XLEN
+    private static final int HEADER_SIZE = 18;        // ... followed by the 6 byte "BC" subfield
+    private static final int TRAILER_SIZE = 8;
+    private static final int READ_AHEAD_PER_THREAD = 4;
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final InputStream in;
+    private final ExecutorService pool;
+    private final int readAhead;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private boolean endOfFile;
+    private byte[] block = new byte[0];
+    private int position;
+
+    /**
+     * @param in InputStream positioned at the first BGZF block; closed by close()
+     * @param threads int, number of threads to inflate blocks with
+     */
+    public BgzfInputStream(InputStream in, int threads) {
+        this.in = in;
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bgzf-inflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.readAhead = threads * READ_AHEAD_PER_THREAD;
+    }
+
+    /**
+     * Checks whether a gzip header starts a BGZF block, that is, whether its first extra subfield is "BC".
+     * @param header byte[] holding at least the first 18 bytes of the file
+     * @return true if the file is BGZF
+     */
+    public static boolean isBgzfHeader(byte[] header) {
+        return header.length >= HEADER_SIZE
+                && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b
+                && (header[3] & 0x04) != 0                  // FEXTRA
+                && littleEndianShort(header, 10) >= 6       // XLEN
+                && header[12] == 'B' && header[13] == 'C'
+                && littleEndianShort(header, 14) == 2;      // SLEN
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return block[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, block.length - position);
+        System.arraycopy(block, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdownNow();
+        in.close();
+    }
+
+    /**
+     * Makes sure there is at least one byte left in block.
+     * @return false at the end of the file
+     */
+    private boolean fill() throws IOException {
+        while (position == block.length) {
+            while (!endOfFile && pending.size() < readAhead) {
+                byte[] compressed = nextBlock();
+                if (compressed == null) {
+                    endOfFile = true;
+                } else {
+                    pending.add(pool.submit(() -> inflate(compressed)));
+                }
+            }
+            if (pending.isEmpty()) {
+                return false;
+            }
+            try {
+                block = pending.remove().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while decompressing", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Could not decompress BGZF block", e.getCause());
+            }
+            position = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Cuts the next block out of the file without inflating it.
+     * @return the whole block, header and trailer included, or null at the end of the file
+     */
+    private byte[] nextBlock() throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        int read = in.read(header);
+        if (read < 0) {
+            return null;
+        }
+        readFully(header, read, HEADER_SIZE - read);
+        if (!isBgzfHeader(header)) {
+            throw new IOException("Not a BGZF block; decompress the file with a plain gzip reader instead");
+        }
+        int blockSize = littleEndianShort(header, 16) + 1;
+        byte[] compressed = new byte[blockSize];
+        System.arraycopy(header, 0, compressed, 0, HEADER_SIZE);
+        readFully(compressed, HEADER_SIZE, blockSize - HEADER_SIZE);
+        return compressed;
+    }
+
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        int dataStart = FIXED_HEADER_SIZE + littleEndianShort(compressed, 10);
+        int dataEnd = compressed.length - TRAILER_SIZE;
+        int expectedCrc = littleEndianInt(compressed, dataEnd);
+        byte[] data = new byte[littleEndianInt(compressed, dataEnd + 4)];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(compressed, dataStart, dataEnd - dataStart);
+        try {
+            int length = 0;
+            while (length < data.length && !inflater.finished()) {
+                int inflated = inflater.inflate(data, length, data.length - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != data.length) {
+                throw new IOException("Truncated BGZF block");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt BGZF block", e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("BGZF block failed its CRC check");
+        }
+        return data;
+    }
+
+    private void readFully(byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int read = in.read(buffer, offset, length);
+            if (read < 0) {
+                throw new EOFException("BGZF file ends inside a block");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+
+    private static int littleEndianShort(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) | (buffer[offset + 1] & 0xff) << 8;
+    }
+
+    private static int littleEndianInt(byte[] buffer, int offset) {
+        return littleEndianShort(buffer, offset) | littleEndianShort(buffer, offset + 2) << 16;
+    }
+}
@@ -0,0 +1,119 @@
+package cs321.create;
+
+import cs321.btree.BTree;
+import cs321.common.Debug;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Copies a finished B-Tree into an SQLite database, for GeneBankSearchDatabase. The database holds two tables:
+ * <pre>
+ * subsequences(key INTEGER, sequence TEXT, frequency INTEGER)   one row per distinct subsequence, in key order
+ * info(name TEXT, value INTEGER)                                subsequence_length and canonical_mode of the tree
+ * </pre>
+ * where key is the 2-bit encoding of sequence, as stored in the tree. Queries look subsequences up by key, through
+ * the unique index subsequences_key.
+ * <p>
+ * The export is built for loading speed: the rows come from one in-order walk of the tree (BTree.scan()) and
+ * are inserted through a single prepared statement in batches of BATCH_ROWS, with a commit only every
+ * TRANSACTION_ROWS rows. The database runs in WAL mode without syncing, since a failed export is simply run
+ * again, and the index is only created once every row is in, which sorts the keys once instead of updating
+ * the index on every insert.
+ */
+public class DatabaseExporter
+{
+    public static final String TABLE = "subsequences";
+    public static final String INFO_TABLE = "info";
+    public static final String KEY_INDEX = "subsequences_key";
+    public static final String SUBSEQUENCE_LENGTH = "subsequence_length";
+    public static final String CANONICAL_MODE = "canonical_mode";
+
+    private static final int BATCH_ROWS = 10000;
+    private static final int TRANSACTION_ROWS = 1000000;
+
+    /**
+     * Name of the database of one subsequence length: "<gbk file>.<length>.db", next to the B-Tree files.
+     * @param bTreeBaseName String, the name the B-Tree files start with, see GeneBankCreateBTreeArguments.getBTreeBaseName()
+     * @param subsequenceLength int, length of the subsequences in the tree
+     * @return String name of the database file
+     */
+    public static String fileFor(String bTreeBaseName, int subsequenceLength) {
+        return bTreeBaseName + "." + subsequenceLength + ".db";
+    }
+
+    /**
+     * Writes every key of bTree and its frequency into a new database in databaseFile, replacing any file of
+     * that name.
+     * @param bTree BTree, finished tree; it is only read
+     * @param databaseFile String, name of the SQLite database file to create
+     * @return long, number of rows written
+     * @throws SQLException if the database cannot be created or written
+     */
+    public static long export(BTree bTree, String databaseFile) throws SQLException {
+        new File(databaseFile).delete();
+        int subsequenceLength = bTree.getSubsequenceLength();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA journal_mode = WAL");
+                statement.execute("PRAGMA synchronous = OFF");
+                statement.execute("CREATE TABLE " + TABLE + " (key INTEGER NOT NULL, sequence TEXT NOT NULL, frequency INTEGER NOT NULL)");
+                statement.execute("CREATE TABLE " + INFO_TABLE + " (name TEXT PRIMARY KEY, value INTEGER NOT NULL)");
+                statement.execute("INSERT INTO " + INFO_TABLE + " VALUES ('" + SUBSEQUENCE_LENGTH + "', " + subsequenceLength + ")");
+                statement.execute("INSERT INTO " + INFO_TABLE + " VALUES ('" + CANONICAL_MODE + "', " + bTree.getCanonicalMode() + ")");
+            }
+            connection.setAutoCommit(false);
+            long[] rows = new long[1];
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + TABLE + " VALUES (?, ?, ?)")) {
+                bTree.scan(0, Long.MAX_VALUE, (key, frequency) -> {
+                    try {
+                        insert.setLong(1, key);
+                        insert.setString(2, SequenceUtils.longToDNAString(key, subsequenceLength));
+                        insert.setInt(3, frequency);
+                        insert.addBatch();
+                        rows[0]++;
+                        if (rows[0] % BATCH_ROWS == 0) {
+                            insert.executeBatch();
+                        }
+                        if (rows[0] % TRANSACTION_ROWS == 0) {
+                            connection.commit();
+                        }
+                    } catch (SQLException e) {
+                        throw new ExportFailure(e);
+                    }
+                });
+                insert.executeBatch();
+            } catch (ExportFailure e) {
+                throw e.getCause();
+            }
+            connection.commit();
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE UNIQUE INDEX " + KEY_INDEX + " ON " + TABLE + " (key)");
+            }
+            connection.commit();
+            Debug.log("exported " + rows[0] + " subsequences to " + databaseFile);
+            return rows[0];
+        }
+    }
+
+    /**
+     * Carries an SQLException out of the KeyVisitor, which cannot throw it.
+     */
+    private static class ExportFailure extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        ExportFailure(SQLException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+}
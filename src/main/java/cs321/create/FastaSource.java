@@ -0,0 +1,82 @@
+package cs321.create;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * SequenceSource for a FASTA file, optionally gzip compressed. Every record starts with a '>' header line
+ * and continues with lines of bases up to the next header; lines starting with ';' are comments. Like
+ * GeneBankParser, the file is read in large chunks and the bases are handed on in place, without
+ * splitting the input into Strings.
+ */
+public class FastaSource implements SequenceSource
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String filename;
+    private final int threads;
+
+    /**
+     * @param filename String, name of the FASTA file
+     * @param threads int, number of threads a BGZF file may be decompressed with
+     */
+    public FastaSource(String filename, int threads) {
+        this.filename = filename;
+        this.threads = threads;
+    }
+
+    @Override
+    public void read(GeneBankParser.SequenceHandler handler) throws IOException {
+        try (InputStream in = GeneBankInput.open(filename, threads)) {
+            parse(in, handler);
+        }
+    }
+
+    @Override
+    public String getFileName() {
+        return filename;
+    }
+
+    /**
+     * Reads a FASTA file and passes the bases of every record to handler. Line breaks are passed on with
+     * the bases; a SequenceHandler skips them like any other whitespace.
+     * @param in InputStream of the FASTA file; read to the end but not closed
+     * @param handler SequenceHandler receiving the sequence data
+     * @throws IOException if the stream cannot be read
+     */
+    public static void parse(InputStream in, GeneBankParser.SequenceHandler handler) throws IOException {
+        byte[] chunk = new byte[BUFFER_SIZE];
+        boolean lineStart = true;
+        boolean inHeader = false;   // inside a '>' or ';' line, which is not sequence data
+        boolean inRecord = false;
+        int read;
+        while ((read = in.read(chunk)) >= 0) {
+            int runStart = 0;
+            for (int i = 0; i < read; i++) {
+                byte b = chunk[i];
+                if (lineStart && (b == '>' || b == ';')) {
+                    if (!inHeader && i > runStart && inRecord) {
+                        handler.sequence(chunk, runStart, i);
+                    }
+                    if (b == '>') {
+                        if (inRecord) {
+                            handler.endOfRecord();
+                        }
+                        inRecord = true;
+                    }
+                    inHeader = true;
+                } else if (b == '\n' && inHeader) {
+                    inHeader = false;
+                    runStart = i + 1;
+                }
+                lineStart = b == '\n';
+            }
+            if (!inHeader && read > runStart && inRecord) {
+                handler.sequence(chunk, runStart, read);
+            }
+        }
+        if (inRecord) {
+            handler.endOfRecord();
+        }
+    }
+}
@@ -1,9 +1,19 @@
 package cs321.create;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import cs321.btree.BTree;
+import cs321.btree.MetaData;
 import cs321.common.Debug;
 import cs321.common.ParseArgumentException;
 import cs321.common.ParseArgumentUtils;
@@ -12,13 +22,15 @@ import cs321.common.ParseArgumentUtils;
  * This program reads a GeneBank file (.gbk) and parses its contained sequences for subsequences of a given
  * length. If a subsequence is encountered multiple times, the frequency of this subsequence is incremented.
  * This frequency updating is handled within the BTree class. This program will output varying levels of
- * process information depending on the debug level specified by the user. It will generate intermediate files
- * for help with data processing, and these files can be preserved after program exit by specifying a debug
- * level of 2.
+ * process information depending on the debug level specified by the user. The GeneBank file is read in a
+ * single streaming pass; the intermediate *.stripped and *.seq files are only written, for inspection, when
+ * a debug level of 2 is specified. FASTA files are read as well, and --gbkfile may name several files or a
+ * directory, whose sequences all go into one B-Tree. Several lengths may be given at once, as in --length=1-10,20,31, in which
+ * case that single pass populates one B-Tree per length.
  * <p>
  * Note that the BTree file created by this program will be stored in the same directory as the GeneBank file
- * that is used to populate the BTree in the first place. BTree metadata file will also be stored in this
- * same location. When performing automated tests via scripts, if GeneBank files are located in any directory
+ * that is used to populate the BTree in the first place. BTree metadata is written as a header at the start
+ * of that file. When performing automated tests via scripts, if GeneBank files are located in any directory
  * other than program root, user must take care to specify the additional directory information when providing
  * the filename. This will ensure proper loading of B-Tree information when using the created B-Tree in the
  * GeneBankSearchBTree program.
@@ -45,6 +57,10 @@ public class GeneBankCreateBTree
             GeneBankCreateBTreeArguments geneBankCreateBTreeArguments = parseArgumentsAndHandleExceptions(args);
             Debug.init(geneBankCreateBTreeArguments);
 
+            if (geneBankCreateBTreeArguments.getSubsequenceLengths().length > 1) {
+                createBTrees(geneBankCreateBTreeArguments);
+                return;
+            }
             BTree bTree = new BTree(geneBankCreateBTreeArguments);
 
         try {
@@ -53,6 +69,7 @@ public class GeneBankCreateBTree
             if (geneBankCreateBTreeArguments.getDebugLevel() == 1) {
                 bTree.print();
             }
+            writeExtras(bTree, geneBankCreateBTreeArguments);
             bTree.closeTree();
             long end = System.currentTimeMillis();
             System.out.println("Operation concluded successfully in " + (end - start) + " ms");
@@ -64,48 +81,324 @@ public class GeneBankCreateBTree
     }
 
     /**
-     * The final step of data processing. Parses the sequence (*.seq) file created by generateSequenceFile()
-     * and iterates through each line. From that String, progressive substrings of length sequenceLength are
-     * created, before being converted to a long value by SequenceUtils.DNAStringToLong() and ultimately
-     * inserted into the BTree.
+     * Builds one B-Tree for every subsequence length in args from a single read of the .gbk file. Each tree
+     * is stored in its own "<gbkfile>.btree.data.<length>.<degree>" file, exactly as a separate run per
+     * length would store it. Each also gets its own "DUMP.<length>" dumpfile, created whatever the debug level
+     * just as Debug.init() creates "DUMP" for a single length, and filled with the tree at a debug level of 1.
+     * @param args GeneBankCreateBTreeArguments, the validated command-line arguments provided to the program
+     */
+    private static void createBTrees(GeneBankCreateBTreeArguments args) {
+        int[] lengths = args.getSubsequenceLengths();
+        BTree[] bTrees = new BTree[lengths.length];
+        try {
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < lengths.length; i++) {
+                bTrees[i] = new BTree(args.forSubsequenceLength(lengths[i]));
+            }
+            populateBTreesFromGeneBankFile(bTrees, args);
+            for (int i = 0; i < lengths.length; i++) {
+                Debug.dumpTo("DUMP." + lengths[i]);
+                if (args.getDebugLevel() == 1) {
+                    bTrees[i].print();
+                }
+                writeExtras(bTrees[i], args);
+                bTrees[i].closeTree();
+            }
+            long end = System.currentTimeMillis();
+            System.out.println("Operation concluded successfully in " + (end - start) + " ms");
+            Debug.exit();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes what args asks for besides the B-Tree itself, from the finished tree: its Bloom filter
+     * ("<B-Tree file>.bloom") and its SQLite database ("<gbkfile>.<length>.db"). A database that cannot be
+     * written is reported, but does not stop the B-Tree from being saved.
+     * @param bTree BTree, the populated tree, not closed yet
+     * @param args GeneBankCreateBTreeArguments, the validated command-line arguments provided to the program
+     * @throws IOException if the Bloom filter cannot be written
+     */
+    private static void writeExtras(BTree bTree, GeneBankCreateBTreeArguments args) throws IOException {
+        if (args.getBloomFalsePositiveRate() > 0) {
+            bTree.writeBloomFilter(args.getBloomFalsePositiveRate());
+        }
+        if (args.isExportingDatabase()) {
+            String databaseFile = DatabaseExporter.fileFor(args.getBTreeBaseName(), bTree.getSubsequenceLength());
+            try {
+                long start = System.currentTimeMillis();
+                long rows = DatabaseExporter.export(bTree, databaseFile);
+                System.out.println("Exported " + rows + " subsequences to " + databaseFile + " in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            } catch (SQLException e) {
+                System.out.println("Unable to export the B-Tree to " + databaseFile);
+                System.out.println(e.toString());
+            }
+        }
+    }
+
+    /**
+     * Streams every input file through its SequenceSource in a single pass: a GeneBankParser for .gbk files,
+     * a FastaSource for FASTA files. A KmerEncoder turns every window of sequenceLength bases inside a record
+     * into its long value and hands them in batches to a TreeFeeder, which inserts them into the BTree (or
+     * collects them first when bulk loading or aggregating). Reading, encoding and inserting run as the three
+     * stages of an IngestPipeline, whose throughput counters are printed once all files are read. Windows
+     * never span an 'n', the end of a record or the end of a file. With more than one thread, an uncompressed
+     * .gbk file is memory-mapped and parsed in parallel chunks by a ParallelGeneBankReader instead. Other files
+     * are streamed, through GeneBankInput, which inflates the blocks of a BGZF file on the extra threads. More
+     * than one thread also builds the tree itself in parallel, in key range partitions, through a
+     * PartitionedTreeBuilder, except for a B+ tree, whose partitions could not be stitched together.
      * <p>
-     * At the end of this process, the intermediate files (*.stripped, *.seq) are deleted, unless the user
-     * has specified a debug level of 2. In that case, these files are preserved for inspection. However,
-     * running this program again will overwrite any existing files that share these same names.
+     * No intermediate files are needed. If the user has specified a debug level of 2, the *.stripped and
+     * *.seq files of earlier versions of this program are still generated for inspection; running this
+     * program again will overwrite any existing files that share these same names.
      * @param bTree BTree, the B-Tree to populate with sequence data
      * @param args GeneBankCreateBTreeArguments, the validated command-line arguments provided to the program
      */
     public static void populateBTreeFromGeneBankFile(BTree bTree, GeneBankCreateBTreeArguments args) {
-        String gbkFilename = args.getGbkFileName();
         int seqLength = args.getSubsequenceLength();
-        File strippedFile = generateStrippedFile(gbkFilename);
-        File seqFile = generateSequenceFile(strippedFile, seqLength);
+        int partitions = args.isBPlusTree() ? 1 : PartitionedTreeBuilder.partitionsFor(args.getThreads(), seqLength);
+        PartitionedTreeBuilder partitioned = partitions > 1 ? new PartitionedTreeBuilder(bTree, args, partitions) : null;
+        TreeFeeder feeder = partitioned == null ? new TreeFeeder(bTree, args) : null;
+        KmerEncoder.KmerSink sink = partitioned == null ? feeder : partitioned;
+        List<SequenceSource> sources = openSources(args);
+        IngestPipeline pipeline = new IngestPipeline(seqLength, sink);
+        boolean pipelined = false;
+        for (SequenceSource source : sources) {
+            String filename = source.getFileName();
+            try {
+                if (args.getThreads() > 1 && SequenceSource.isGeneBankFile(filename) && !GeneBankInput.isCompressed(filename)) {
+                    new ParallelGeneBankReader(filename, seqLength, args.getThreads()).read(sink);
+                } else {
+                    pipeline.run(source);
+                    pipelined = true;
+                }
+            } catch (IOException ioe) {
+                System.out.println("Unable to read " + new File(filename).getAbsolutePath());
+                System.out.println(ioe.toString());
+            }
+        }
+        if (pipelined) {
+            System.out.println(pipeline.report());
+        }
+        if (partitioned == null) {
+            feeder.finish();
+        } else {
+            try {
+                partitioned.finish();
+            } catch (IOException ioe) {
+                System.out.println("Unable to build the B-Tree in " + partitions + " partitions");
+                System.out.println(ioe.toString());
+            }
+        }
+
+        if (args.getDebugLevel() == 2) {
+            // For debugLevel==2, we write out the *.stripped and *.seq files for inspection
+            generateSequenceFile(generateStrippedFile(sources, args.getBTreeBaseName()), seqLength);
+        }
+    }
+
+    /**
+     * Creates a SequenceSource for every file named by --gbkfile, with directories expanded.
+     * @param args GeneBankCreateBTreeArguments, the validated command-line arguments provided to the program
+     * @return List of SequenceSource, in the order the files were given
+     */
+    private static List<SequenceSource> openSources(GeneBankCreateBTreeArguments args) {
+        List<SequenceSource> sources = new ArrayList<>();
         try {
-            Scanner fScan = new Scanner(seqFile);
-            while (fScan.hasNextLine()) {
-                String fullSeq = fScan.nextLine();
-                for (int i = 0; i < fullSeq.length()-seqLength+1; i++) {
-                    String subSeq = fullSeq.substring(i,(i+seqLength));
+            for (String filename : SequenceSource.listFiles(args.getGbkFileName())) {
+                sources.add(SequenceSource.forFile(filename, args.getThreads()));
+            }
+        } catch (IOException ioe) {
+            System.out.println(ioe.getMessage());
+        }
+        return sources;
+    }
 
-                    bTree.insert(SequenceUtils.DNAStringToLong(subSeq));
-                    //bTree.print();
+    /**
+     * Populates a B-Tree per subsequence length from one streaming pass over the input files. Their
+     * SequenceSources run on the calling thread and hands the sequence data to a SequenceBroadcaster, and every B-Tree has
+     * a consumer thread of its own that encodes the shared blocks with a KmerEncoder for its length and feeds
+     * them to its TreeFeeder. The trees live in separate files, so the consumers never touch shared state.
+     * A consumer that fails keeps draining its queue, so the parse always runs to the end.
+     * @param bTrees BTree[], one B-Tree per length in args.getSubsequenceLengths(), in the same order
+     * @param args GeneBankCreateBTreeArguments, the validated command-line arguments provided to the program
+     * @throws IOException if the file cannot be read or a tree could not be populated
+     */
+    public static void populateBTreesFromGeneBankFile(BTree[] bTrees, GeneBankCreateBTreeArguments args) throws IOException {
+        int[] lengths = args.getSubsequenceLengths();
+        SequenceBroadcaster broadcaster = new SequenceBroadcaster(bTrees.length);
+        ExecutorService pool = Executors.newFixedThreadPool(bTrees.length);
+        List<Future<Void>> consumers = new ArrayList<>();
+        for (int i = 0; i < bTrees.length; i++) {
+            int consumer = i;
+            TreeFeeder feeder = new TreeFeeder(bTrees[i], args.forSubsequenceLength(lengths[i]));
+            consumers.add(pool.submit(() -> {
+                KmerEncoder encoder = new KmerEncoder(lengths[consumer], feeder);
+                RuntimeException failure = null;
+                ByteBuffer block;
+                while ((block = broadcaster.take(consumer)) != null) {
+                    if (failure == null) {
+                        try {
+                            encoder.sequence(block);
+                        } catch (RuntimeException e) {
+                            failure = e;
+                        }
+                    }
                 }
+                if (failure != null) {
+                    throw failure;
+                }
+                encoder.flush();
+                feeder.finish();
+                return null;
+            }));
+        }
+        List<SequenceSource> sources = openSources(args);
+        try {
+            for (SequenceSource source : sources) {
+                source.read(broadcaster);
             }
-            fScan.close();
-        } catch (IOException ioe) {
-            System.out.println("Unable to read " + seqFile.getAbsolutePath());
-            System.out.println(ioe.toString());
+        } finally {
+            broadcaster.close();
+            pool.shutdown();
+        }
+        try {
+            for (Future<Void> consumer : consumers) {
+                consumer.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while populating B-Trees", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not populate B-Tree", e.getCause());
         }
 
         if (args.getDebugLevel() == 2) {
-            // For debugLevel==2, we will save the *.stripped and *.seq files we created in intermediate steps
-        } else {
-            // Otherwise, we delete them now that they're no longer needed
-            strippedFile.delete();
-            seqFile.delete();
+            generateSequenceFile(generateStrippedFile(sources, args.getBTreeBaseName()), lengths[0]);
         }
     }
 
+    /**
+     * Receives the subsequences of the .gbk file and gets them into the BTree according to the arguments,
+     * after replacing each with its canonical key if --canonical was given: inserted one at a time, counted in a LongIntHashMap that is spilled into the tree whenever it fills
+     * up, or collected in full for bulkLoadBTree().
+     */
+    static class TreeFeeder implements KmerEncoder.KmerSink
+    {
+        private final BTree bTree;
+        private final boolean bulkLoad;
+        private final int fillFactor;
+        private final int seqLength;
+        private final int canonicalMode;
+        private long[] subsequences;
+        private int numSubsequences;
+        private LongIntHashMap counts;
+
+        TreeFeeder(BTree bTree, GeneBankCreateBTreeArguments args) {
+            this(bTree, args, args.getCanonicalMode(), args.getAggregateMemory() * 1024L * 1024L);
+        }
+
+        /**
+         * @param canonicalMode SequenceUtils.CANONICAL_NONE if the subsequences arrive already canonical
+         * @param aggregateBytes memory for counting subsequences before inserting them, 0 for none
+         */
+        TreeFeeder(BTree bTree, GeneBankCreateBTreeArguments args, int canonicalMode, long aggregateBytes) {
+            this.bTree = bTree;
+            this.bulkLoad = args.isBulkLoad();
+            this.fillFactor = args.getFillFactor();
+            this.seqLength = args.getSubsequenceLength();
+            this.canonicalMode = canonicalMode;
+            this.subsequences = new long[bulkLoad ? 1024 : 0];
+            if (aggregateBytes > 0) {
+                counts = new LongIntHashMap(aggregateBytes);
+            }
+        }
+
+        @Override
+        public void accept(long[] kmers, int count) {
+            if (canonicalMode != SequenceUtils.CANONICAL_NONE) {
+                for (int i = 0; i < count; i++) {
+                    kmers[i] = SequenceUtils.canonical(kmers[i], seqLength, canonicalMode);
+                }
+            }
+            if (bulkLoad) {
+                if (numSubsequences + count > subsequences.length) {
+                    subsequences = Arrays.copyOf(subsequences, Math.max(numSubsequences + count, subsequences.length * 2));
+                }
+                System.arraycopy(kmers, 0, subsequences, numSubsequences, count);
+                numSubsequences += count;
+            } else if (counts != null) {
+                for (int i = 0; i < count; i++) {
+                    counts.add(kmers[i], 1);
+                    if (counts.isFull()) {
+                        spillCounts(bTree, counts);
+                    }
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    bTree.insert(kmers[i]);
+                }
+            }
+        }
+
+        /**
+         * Moves whatever is still held in memory into the tree.
+         */
+        void finish() {
+            if (bulkLoad) {
+                bulkLoadBTree(bTree, subsequences, numSubsequences, fillFactor);
+            }
+            if (counts != null) {
+                spillCounts(bTree, counts);
+            }
+        }
+    }
+
+    /**
+     * Empties the in-memory subsequence counts into the B-Tree. Each distinct subsequence costs one
+     * descent through BTree.insert(key, frequency), however many times it was seen since the last
+     * spill. Keys are inserted in ascending order so consecutive inserts tend to touch the same
+     * nodes, which are then still in the cache.
+     * @param bTree BTree, the B-Tree being populated
+     * @param counts LongIntHashMap, subsequence counts gathered since the last spill; cleared by this method
+     */
+    private static void spillCounts(BTree bTree, LongIntHashMap counts) {
+        int numKeys = counts.drainSorted();
+        Debug.log("spilling " + numKeys + " distinct keys into the tree");
+        for (int i = 0; i < numKeys; i++) {
+            bTree.insert(counts.keyAt(i), counts.valueAt(i));
+        }
+        counts.clear();
+    }
+
+    /**
+     * Sorts the collected subsequences, collapses each run of equal values into a single key with its
+     * frequency, and hands the result to BTree.bulkLoad() so the tree is built bottom-up with every node
+     * written exactly once. The aggregation happens in place, so no second array of keys is allocated.
+     * @param bTree BTree, an empty B-Tree to build
+     * @param subsequences long[] holding every subsequence in the order it was read; reordered by this method
+     * @param numSubsequences int, number of valid entries in subsequences
+     * @param fillFactor int, percentage of each node's key slots to fill
+     */
+    private static void bulkLoadBTree(BTree bTree, long[] subsequences, int numSubsequences, int fillFactor) {
+        Arrays.sort(subsequences, 0, numSubsequences);
+        int[] frequencies = new int[Math.max(numSubsequences, 1)];
+        int numKeys = 0;
+        for (int i = 0; i < numSubsequences; i++) {
+            if (numKeys > 0 && subsequences[numKeys - 1] == subsequences[i]) {
+                frequencies[numKeys - 1]++;
+            } else {
+                subsequences[numKeys] = subsequences[i];
+                frequencies[numKeys] = 1;
+                numKeys++;
+            }
+        }
+        Debug.log("bulk loading " + numKeys + " distinct keys from " + numSubsequences + " subsequences");
+        bTree.bulkLoad(subsequences, frequencies, numKeys, fillFactor);
+    }
+
     /**
      * Intermediate step of .gbk file processing. Takes in a strippedFile, as returned by generateStrippedFile(),
      * and further formats the included text to remove all blank lines. This new file is titled "<gbkFilename>.seq"
@@ -114,8 +407,8 @@ public class GeneBankCreateBTree
      * Integer.MAX_VALUE, and we can verify that no .gbk files (that we will use, anyway) contain sequences
      * exceeding this size, we are properly preserving sequence data without truncating it.
      * <p>
-     * This file is deleted in a later step of data processing, unless debug level is set to 2. In that case, the
-     * file is preserved for user inspection. File is located in the same directory as the provided .gbk file.
+     * This file is only written when debug level is set to 2, for user inspection; building the BTree does not
+     * need it. File is located in the same directory as the provided .gbk file.
      * @param strippedFile File, the stripped file generated by generatedStrippedFile()
      * @param seqLength int, the sequence length of DNA sequences stored in the B-Tree
      * @return File sequenceFile, the text file containing sequence data generated by this method
@@ -147,51 +440,50 @@ public class GeneBankCreateBTree
 
     /**
      * Intermediate step of .gbk file processing. A .gbk file contains large amounts of header information and
-     * additional text that is not necessary. This method takes a String with a .gbk file name and then parses
-     * that file to locate only the relevant information, as marked by "ORIGIN" and "//" tags. This information
-     * is then copied into a newly created file called "<gbkFilename>.stripped". When copying, this also removes
-     * the internal spaces and character count at the beginning of each line, and replaces all occurrences of the
-     * character 'n' with a newline ('\n') character.
+     * additional text that is not necessary. This method reads every input file through its SequenceSource,
+     * which locates only the relevant information (marked by "ORIGIN" and "//" tags in a .gbk file, or the
+     * lines after each '>' header in a FASTA file). This information is then copied into a newly created file
+     * called "<gbkFilename>.stripped". When copying, this also removes the internal spaces and character count
+     * at the beginning of each line, and replaces all occurrences of the character 'n' with a newline ('\n')
+     * character. Each record ends with a newline as well.
      * <p>
-     * This file is deleted in a later step of data processing, unless debug level is set to 2. In that case, the
-     * file is preserved for user inspection. File is located in the same directory as the provided .gbk file.
-     * @param gbkFilename String of .gbk file name
+     * This file is only written when debug level is set to 2, for user inspection; building the BTree does not
+     * need it. File is located next to the B-Tree file.
+     * @param sources List of SequenceSource, the files to strip
+     * @param baseName String, name the B-Tree file is named after
      * @return File representing the stripped text file
      */
-    private static File generateStrippedFile(String gbkFilename) {
-        String startSequenceKeyword = "ORIGIN";
-        String endSequenceKeyword = "//";
-        File gbkFile = new File(gbkFilename);
-        File strippedFile = new File(gbkFile.getAbsolutePath() + ".stripped");
+    private static File generateStrippedFile(List<SequenceSource> sources, String baseName) {
+        File strippedFile = new File(new File(baseName).getAbsolutePath() + ".stripped");
 
-        try {
-            strippedFile.createNewFile();
-
-            FileWriter fw = new FileWriter(strippedFile);
-            BufferedWriter fileWriter = new BufferedWriter(fw); //BufferedWriter is more efficient for large data
-            Scanner fScan = new Scanner(gbkFile);
+        try (BufferedWriter fileWriter = new BufferedWriter(new FileWriter(strippedFile))) {
+            GeneBankParser.SequenceHandler stripper = new GeneBankParser.SequenceHandler() {
+                @Override
+                public void sequence(byte[] buffer, int from, int to) {
+                    try {
+                        for (int i = from; i < to; i++) {
+                            if (buffer[i] == 'n') {
+                                fileWriter.write('\n');
+                            } else if (buffer[i] > ' ') {
+                                fileWriter.write(buffer[i]);
+                            }
+                        }
+                    } catch (IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    }
+                }
 
-            boolean writeEnabled = false;
-            while (fScan.hasNextLine()) {
-                String nextLine = fScan.nextLine();
-                if (nextLine.trim().equals(startSequenceKeyword)) {
-                    writeEnabled = true;
-                } else if (nextLine.trim().equals(endSequenceKeyword)) {
-                    fileWriter.write("\n");
-                    writeEnabled = false;
-                } else if (writeEnabled) {
-                    // Relevant data begins at index 10, then we strip out all whitespace, then write to file
-                    nextLine = nextLine.substring(10)
-                            .replaceAll("\\s","")
-                            .replaceAll("n","\n");
-                    fileWriter.write(nextLine);
+                @Override
+                public void endOfRecord() {
+                    sequence(new byte[] {'n'}, 0, 1);
                 }
+            };
+            for (SequenceSource source : sources) {
+                source.read(stripper);
             }
-            fileWriter.close();
-            fScan.close();
-        } catch (IOException ioe) {
+        } catch (IOException | UncheckedIOException e) {
             System.out.println("Unable to create " + strippedFile.getName());
-            System.out.println(ioe.toString());
+            System.out.println(e.toString());
         }
         return strippedFile;
     }
@@ -221,7 +513,10 @@ public class GeneBankCreateBTree
     private static void printUsageAndExit(String errorMessage)
     {
         System.out.println("Required arguments:\n " +
-            "java -jar build/libs/GeneBankCreateBTree.jar --cache=<0|1>  --degree=<btree degree>  --gbkfile=<gbk file> --length=<sequence length> [--cachesize=<n>] [--debug=0|1|2|3]"
+            "java -jar build/libs/GeneBankCreateBTree.jar --cache=<0|1>  --degree=<btree degree>  --gbkfile=<gbk/fasta file(s) or directory, optionally .gz> --length=<sequence length(s), e.g. 5 or 1-10,20,31> [--cachesize=<n>] [--debug=0|1|2|3] " +
+            "[--bulkload=<0|1>] [--fillfactor=<50-100>] [--mmap=<0|1>] [--writeback=<0|1>] " +
+            "[--aggregate=<megabytes>] [--pagesize=<4096|16384|65536>] [--threads=<n>] " +
+            "[--canonical=<0|1|2>] [--bplus=<0|1>] [--maxfrequencies=<0|1>] [--bloom=<false positive rate, e.g. 0.01>] [--database=<0|1>]"
         );
         System.exit(1);
     }
@@ -238,9 +533,21 @@ public class GeneBankCreateBTree
         Boolean useCache = null;
         int degree = 0;
         String gbkFileName = "";
-        int subsequenceLength = 0;
+        int[] subsequenceLengths = null;
         int cacheSize = 0;
         int debugLevel = 0;
+        boolean bulkLoad = false;
+        int fillFactor = 100;
+        boolean useMemoryMap = false;
+        boolean writeBack = false;
+        int aggregateMemory = 0;
+        int pageSize = MetaData.DEFAULT_PAGE_SIZE;
+        int threads = 1;
+        int canonicalMode = SequenceUtils.CANONICAL_NONE;
+        boolean bPlusTree = false;
+        boolean maxFrequencies = false;
+        double bloomFalsePositiveRate = 0;
+        boolean database = false;
 
         String[] validFlags = {
             "cache",
@@ -248,7 +555,19 @@ public class GeneBankCreateBTree
             "gbkfile",
             "length",
             "cachesize",
-            "debug"
+            "debug",
+            "bulkload",
+            "fillfactor",
+            "mmap",
+            "writeback",
+            "aggregate",
+            "pagesize",
+            "threads",
+            "canonical",
+            "bplus",
+            "maxfrequencies",
+            "bloom",
+            "database"
         };
 
         for(String thisArg : args) {
@@ -286,8 +605,7 @@ public class GeneBankCreateBTree
                             gbkFileName = argValue;
                             break;
                         case "length":
-                            subsequenceLength = ParseArgumentUtils.convertStringToInt(argValue);
-                            ParseArgumentUtils.verifyRanges(subsequenceLength, 1, 31);
+                            subsequenceLengths = ParseArgumentUtils.convertStringToIntList(argValue, 1, 31);
                             break;
                         case "cachesize":
                             if(useCache){
@@ -302,6 +620,65 @@ public class GeneBankCreateBTree
                             debugLevel = ParseArgumentUtils.convertStringToInt(argValue);
                             ParseArgumentUtils.verifyRanges(debugLevel, 0, 2);
                             break;
+                        case "bulkload":
+                            int bulkLoadInt = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(bulkLoadInt, 0, 1);
+                            bulkLoad = bulkLoadInt == 1;
+                            break;
+                        case "fillfactor":
+                            fillFactor = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(fillFactor, 50, 100);
+                            break;
+                        case "mmap":
+                            int useMemoryMapInt = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(useMemoryMapInt, 0, 1);
+                            useMemoryMap = useMemoryMapInt == 1;
+                            break;
+                        case "writeback":
+                            int writeBackInt = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(writeBackInt, 0, 1);
+                            writeBack = writeBackInt == 1;
+                            break;
+                        case "aggregate":
+                            aggregateMemory = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(aggregateMemory, 0, 8192);
+                            break;
+                        case "pagesize":
+                            pageSize = ParseArgumentUtils.convertStringToInt(argValue);
+                            if(pageSize != 4096 && pageSize != 16384 && pageSize != 65536) {
+                                throw new ParseArgumentException("--pagesize must be 4096, 16384 or 65536.");
+                            }
+                            break;
+                        case "threads":
+                            threads = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(threads, 1, 256);
+                            break;
+                        case "canonical":
+                            canonicalMode = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(canonicalMode, SequenceUtils.CANONICAL_NONE,
+                                    SequenceUtils.CANONICAL_REVERSE_COMPLEMENT);
+                            break;
+                        case "bplus":
+                            int bPlusTreeInt = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(bPlusTreeInt, 0, 1);
+                            bPlusTree = bPlusTreeInt == 1;
+                            break;
+                        case "maxfrequencies":
+                            int maxFrequenciesInt = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(maxFrequenciesInt, 0, 1);
+                            maxFrequencies = maxFrequenciesInt == 1;
+                            break;
+                        case "bloom":
+                            bloomFalsePositiveRate = ParseArgumentUtils.convertStringToDouble(argValue);
+                            if(!(bloomFalsePositiveRate > 0 && bloomFalsePositiveRate < 1)) {
+                                throw new ParseArgumentException("--bloom must be a false positive rate between 0 and 1, such as 0.01.");
+                            }
+                            break;
+                        case "database":
+                            int databaseInt = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(databaseInt, 0, 1);
+                            database = databaseInt == 1;
+                            break;
                     }
                 }
         }
@@ -310,18 +687,42 @@ public class GeneBankCreateBTree
             if(useCache == null) {
                 throw new ParseArgumentException("Required argument --cache not specified.");
             }
+            if(subsequenceLengths == null) {
+                throw new ParseArgumentException("Required argument --length not specified.");
+            }
             if(useCache && cacheSize == 0) {
                 throw new ParseArgumentException("Using cache, but no --cachesize specified.");
             }
-            if(!gbkFileName.substring(gbkFileName.length() - 3).equals("gbk")) {
-                throw new ParseArgumentException("Given file is invalid file type, must be .gbk");
+            if(writeBack && !useCache) {
+                throw new ParseArgumentException("Write-back specified, but <cache> set to false.");
+            }
+            if(bulkLoad && aggregateMemory > 0) {
+                throw new ParseArgumentException("--aggregate cannot be combined with --bulkload, which already aggregates every subsequence.");
+            }
+            for(String inputName : gbkFileName.split(",")) {
+                if(!new File(inputName).isDirectory() && !SequenceSource.isSequenceFile(inputName)) {
+                    throw new ParseArgumentException("Given file is invalid file type, must be .gbk, FASTA or a directory (optionally .gz)");
+                }
             }
             if(degree == 0){
-                degree = ParseArgumentUtils.findOptimalDegree();
+                degree = ParseArgumentUtils.findOptimalDegree(pageSize, maxFrequencies);
             }
             //debugLevel already set to default 0
 
         System.out.println("Arguments validated! Creating BTree...");
-        return new GeneBankCreateBTreeArguments(useCache, degree, gbkFileName, subsequenceLength, cacheSize, debugLevel);
+        return new GeneBankCreateBTreeArguments.Builder(useCache, degree, gbkFileName, subsequenceLengths, cacheSize, debugLevel)
+                .bulkLoad(bulkLoad)
+                .fillFactor(fillFactor)
+                .memoryMap(useMemoryMap)
+                .writeBack(writeBack)
+                .aggregateMemory(aggregateMemory)
+                .pageSize(pageSize)
+                .threads(threads)
+                .canonicalMode(canonicalMode)
+                .bPlusTree(bPlusTree)
+                .maxFrequencies(maxFrequencies)
+                .bloomFalsePositiveRate(bloomFalsePositiveRate)
+                .database(database)
+                .build();
     }
 }
@@ -1,23 +1,78 @@
 package cs321.create;
 
+import cs321.btree.MetaData;
+
+import java.io.File;
+import java.util.Arrays;
+
 public class GeneBankCreateBTreeArguments
 {
     private final boolean useCache;
     private final int degree;
     private final String gbkFileName;
-    private final int subsequenceLength;
+    private final int[] subsequenceLengths;
     private final int cacheSize;
     private final int debugLevel;
+    private final boolean bulkLoad;
+    private final int fillFactor;
+    private final boolean useMemoryMap;
+    private final boolean writeBack;
+    private final int aggregateMemory;
+    private final int pageSize;
+    private final int threads;
+    private final int canonicalMode;
+    private final boolean bPlusTree;
+    private final boolean maxFrequencies;
+    private final double bloomFalsePositiveRate;
+    private final boolean database;
 
     public GeneBankCreateBTreeArguments(boolean useCache, int degree, String gbkFileName, int subsequenceLength, int cacheSize, int debugLevel)
     {
-        this.useCache = useCache;
-        this.degree = degree;
-        this.gbkFileName = gbkFileName;
-        this.subsequenceLength = subsequenceLength;
-        this.cacheSize = cacheSize;
-        this.debugLevel = debugLevel;
+        this(new Builder(useCache, degree, gbkFileName, new int[] {subsequenceLength}, cacheSize, debugLevel));
+    }
+
+    private GeneBankCreateBTreeArguments(Builder builder)
+    {
+        this.useCache = builder.useCache;
+        this.degree = builder.degree;
+        this.gbkFileName = builder.gbkFileName;
+        this.subsequenceLengths = builder.subsequenceLengths.clone();
+        this.cacheSize = builder.cacheSize;
+        this.debugLevel = builder.debugLevel;
+        this.bulkLoad = builder.bulkLoad;
+        this.fillFactor = builder.fillFactor;
+        this.useMemoryMap = builder.useMemoryMap;
+        this.writeBack = builder.writeBack;
+        this.aggregateMemory = builder.aggregateMemory;
+        this.pageSize = builder.pageSize;
+        this.threads = builder.threads;
+        this.canonicalMode = builder.canonicalMode;
+        this.bPlusTree = builder.bPlusTree;
+        this.maxFrequencies = builder.maxFrequencies;
+        this.bloomFalsePositiveRate = builder.bloomFalsePositiveRate;
+        this.database = builder.database;
+    }
+
+    /**
+     * A builder holding the same arguments as this, to change a few of them.
+     * @return Builder with every argument of this
+     */
+    public Builder toBuilder() {
+        return new Builder(useCache, degree, gbkFileName, subsequenceLengths, cacheSize, debugLevel)
+                .bulkLoad(bulkLoad)
+                .fillFactor(fillFactor)
+                .memoryMap(useMemoryMap)
+                .writeBack(writeBack)
+                .aggregateMemory(aggregateMemory)
+                .pageSize(pageSize)
+                .threads(threads)
+                .canonicalMode(canonicalMode)
+                .bPlusTree(bPlusTree)
+                .maxFrequencies(maxFrequencies)
+                .bloomFalsePositiveRate(bloomFalsePositiveRate)
+                .database(database);
     }
+
     /**
      * Gets whether or not the B-Tree uses a cache.
      * @return true if using cache, false if not
@@ -35,7 +90,8 @@ public class GeneBankCreateBTreeArguments
     }
 
     /**
-     * The filename of the .gbk file to be read into the B-Tree.
+     * The filename of the .gbk file to be read into the B-Tree. May also be a FASTA file, a directory, or a
+     * comma separated list of these; see SequenceSource.listFiles().
      * @return String gbkFileName
      */
     public String getGbkFileName() {
@@ -43,11 +99,41 @@ public class GeneBankCreateBTreeArguments
     }
 
     /**
-     * The length of DNA subsequences stored in the B-Tree
+     * The name the B-Tree file is named after: the input file without any .gz suffix, the directory when a
+     * directory was given, or the first of several comma separated files.
+     * @return String baseName
+     */
+    public String getBTreeBaseName() {
+        String first = gbkFileName.split(",")[0];
+        while (first.length() > 1 && (first.endsWith("/") || first.endsWith(File.separator))) {
+            first = first.substring(0, first.length() - 1);
+        }
+        return GeneBankInput.uncompressedName(first);
+    }
+
+    /**
+     * The length of DNA subsequences stored in the B-Tree. When several lengths were given, this is the first.
      * @return int subsequenceLength
      */
     public int getSubsequenceLength() {
-        return subsequenceLength;
+        return subsequenceLengths[0];
+    }
+
+    /**
+     * Every subsequence length a B-Tree is built for, in ascending order. Each length gets its own B-Tree file.
+     * @return int[] subsequenceLengths, a copy
+     */
+    public int[] getSubsequenceLengths() {
+        return subsequenceLengths.clone();
+    }
+
+    /**
+     * The same arguments for a single one of the requested subsequence lengths.
+     * @param subsequenceLength int, length of the subsequences in the B-Tree
+     * @return GeneBankCreateBTreeArguments for one B-Tree
+     */
+    public GeneBankCreateBTreeArguments forSubsequenceLength(int subsequenceLength) {
+        return toBuilder().subsequenceLengths(new int[] {subsequenceLength}).build();
     }
 
     /**
@@ -66,6 +152,106 @@ public class GeneBankCreateBTreeArguments
         return debugLevel;
     }
 
+    /**
+     * Gets whether the B-Tree is built bottom-up from sorted, aggregated subsequences
+     * instead of one insert per subsequence.
+     * @return true if bulk loading, false if not
+     */
+    public boolean isBulkLoad() {
+        return bulkLoad;
+    }
+
+    /**
+     * The percentage of each node's key slots filled when bulk loading.
+     * @return int fillFactor, between 50 and 100
+     */
+    public int getFillFactor() {
+        return fillFactor;
+    }
+
+    /**
+     * Gets whether B-Tree nodes are accessed through a memory-mapped file.
+     * @return true if memory mapping the data file, false if using channel reads and writes
+     */
+    public boolean isUsingMemoryMap() {
+        return useMemoryMap;
+    }
+
+    /**
+     * Gets whether the cache holds changed nodes until they are evicted instead of writing
+     * every change through to disk. Only valid when a cache is used.
+     * @return true if using a write-back cache, false if writing through
+     */
+    public boolean isWriteBack() {
+        return writeBack;
+    }
+
+    /**
+     * The memory budget, in megabytes, for counting subsequences in memory before they are
+     * inserted into the B-Tree. 0 means every subsequence is inserted as soon as it is read.
+     * @return int aggregateMemory
+     */
+    public int getAggregateMemory() {
+        return aggregateMemory;
+    }
+
+    /**
+     * The page size, in bytes, that node slots in the B-Tree file are padded and aligned to.
+     * @return int pageSize, one of 4096, 16384 or 65536
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * The number of threads used to parse and encode the GeneBank file, and to build the B-Tree in partitions.
+     * @return int threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Whether each subsequence is stored under a canonical key shared with its complement
+     * or reverse complement.
+     * @return int canonicalMode, one of the SequenceUtils.CANONICAL_* constants
+     */
+    public int getCanonicalMode() {
+        return canonicalMode;
+    }
+
+    /**
+     * Whether the B-Tree is stored as a B+ tree, with every key in a leaf and the leaves linked in key order.
+     * @return true if building a B+ tree
+     */
+    public boolean isBPlusTree() {
+        return bPlusTree;
+    }
+
+    /**
+     * Whether every node also stores the highest frequency below each of its children, for top-N queries.
+     * @return true if building a tree with max frequencies
+     */
+    public boolean hasMaxFrequencies() {
+        return maxFrequencies;
+    }
+
+    /**
+     * The false positive rate of the Bloom filter written next to every tree, for searches to skip missing keys.
+     * @return false positive rate, or 0 if no Bloom filter is written
+     */
+    public double getBloomFalsePositiveRate() {
+        return bloomFalsePositiveRate;
+    }
+
+    /**
+     * Whether every finished tree is also exported to an SQLite database, see DatabaseExporter.
+     * @return true if exporting to a database
+     */
+    public boolean isExportingDatabase() {
+        return database;
+    }
+
     @Override
     public boolean equals(Object obj)
     {
@@ -109,7 +295,7 @@ public class GeneBankCreateBTreeArguments
                 return false;
             }
         }
-        if (subsequenceLength != other.subsequenceLength)
+        if (!Arrays.equals(subsequenceLengths, other.subsequenceLengths))
         {
             return false;
         }
@@ -117,6 +303,54 @@ public class GeneBankCreateBTreeArguments
         {
             return false;
         }
+        if (bulkLoad != other.bulkLoad)
+        {
+            return false;
+        }
+        if (fillFactor != other.fillFactor)
+        {
+            return false;
+        }
+        if (useMemoryMap != other.useMemoryMap)
+        {
+            return false;
+        }
+        if (writeBack != other.writeBack)
+        {
+            return false;
+        }
+        if (aggregateMemory != other.aggregateMemory)
+        {
+            return false;
+        }
+        if (pageSize != other.pageSize)
+        {
+            return false;
+        }
+        if (threads != other.threads)
+        {
+            return false;
+        }
+        if (canonicalMode != other.canonicalMode)
+        {
+            return false;
+        }
+        if (bPlusTree != other.bPlusTree)
+        {
+            return false;
+        }
+        if (maxFrequencies != other.maxFrequencies)
+        {
+            return false;
+        }
+        if (Double.compare(bloomFalsePositiveRate, other.bloomFalsePositiveRate) != 0)
+        {
+            return false;
+        }
+        if (database != other.database)
+        {
+            return false;
+        }
         return true;
     }
 
@@ -128,9 +362,188 @@ public class GeneBankCreateBTreeArguments
                 "useCache=" + useCache +
                 ", degree=" + degree +
                 ", gbkFileName='" + gbkFileName + '\'' +
-                ", subsequenceLength=" + subsequenceLength +
+                ", subsequenceLengths=" + Arrays.toString(subsequenceLengths) +
                 ", cacheSize=" + cacheSize +
                 ", debugLevel=" + debugLevel +
+                ", bulkLoad=" + bulkLoad +
+                ", fillFactor=" + fillFactor +
+                ", useMemoryMap=" + useMemoryMap +
+                ", writeBack=" + writeBack +
+                ", aggregateMemory=" + aggregateMemory +
+                ", pageSize=" + pageSize +
+                ", threads=" + threads +
+                ", canonicalMode=" + canonicalMode +
+                ", bPlusTree=" + bPlusTree +
+                ", maxFrequencies=" + maxFrequencies +
+                ", bloomFalsePositiveRate=" + bloomFalsePositiveRate +
+                ", database=" + database +
                 '}';
     }
+
+    /**
+     * Collects the arguments of GeneBankCreateBTree. The constructor takes the arguments every run has;
+     * every other one starts out as a plain run would have it: no bulk load, 100% fill, channel reads and
+     * writes through to disk, no aggregation, the default page size, one thread, plain keys, a classic
+     * B-Tree without max frequencies, and neither a Bloom filter nor a database.
+     */
+    public static class Builder
+    {
+        private final boolean useCache;
+        private final int degree;
+        private final String gbkFileName;
+        private int[] subsequenceLengths;
+        private final int cacheSize;
+        private final int debugLevel;
+        private boolean bulkLoad = false;
+        private int fillFactor = 100;
+        private boolean useMemoryMap = false;
+        private boolean writeBack = false;
+        private int aggregateMemory = 0;
+        private int pageSize = MetaData.DEFAULT_PAGE_SIZE;
+        private int threads = 1;
+        private int canonicalMode = SequenceUtils.CANONICAL_NONE;
+        private boolean bPlusTree = false;
+        private boolean maxFrequencies = false;
+        private double bloomFalsePositiveRate = 0;
+        private boolean database = false;
+
+        /**
+         * @param useCache boolean, whether or not the BTree is utilizing a cache
+         * @param degree int, the degree of the B-Tree
+         * @param gbkFileName String, the .gbk, FASTA or directory input, or a comma separated list of them
+         * @param subsequenceLengths int[], every subsequence length a B-Tree is built for, in ascending order
+         * @param cacheSize int, the size of the cache if a cache is being used
+         * @param debugLevel int, represents the level of verbosity desired in Debug functions
+         */
+        public Builder(boolean useCache, int degree, String gbkFileName, int[] subsequenceLengths, int cacheSize, int debugLevel)
+        {
+            this.useCache = useCache;
+            this.degree = degree;
+            this.gbkFileName = gbkFileName;
+            this.subsequenceLengths = subsequenceLengths.clone();
+            this.cacheSize = cacheSize;
+            this.debugLevel = debugLevel;
+        }
+
+        /**
+         * @param subsequenceLengths every subsequence length a B-Tree is built for, in ascending order
+         * @return this
+         */
+        public Builder subsequenceLengths(int[] subsequenceLengths) {
+            this.subsequenceLengths = subsequenceLengths.clone();
+            return this;
+        }
+
+        /**
+         * @param bulkLoad whether the tree is built bottom-up from sorted, aggregated subsequences
+         * @return this
+         */
+        public Builder bulkLoad(boolean bulkLoad) {
+            this.bulkLoad = bulkLoad;
+            return this;
+        }
+
+        /**
+         * @param fillFactor percentage of each node's key slots filled when bulk loading, 50 to 100
+         * @return this
+         */
+        public Builder fillFactor(int fillFactor) {
+            this.fillFactor = fillFactor;
+            return this;
+        }
+
+        /**
+         * @param useMemoryMap whether the datafile is memory mapped instead of read through a channel
+         * @return this
+         */
+        public Builder memoryMap(boolean useMemoryMap) {
+            this.useMemoryMap = useMemoryMap;
+            return this;
+        }
+
+        /**
+         * @param writeBack whether the cache holds changed nodes until they are evicted; needs a cache
+         * @return this
+         */
+        public Builder writeBack(boolean writeBack) {
+            this.writeBack = writeBack;
+            return this;
+        }
+
+        /**
+         * @param aggregateMemory megabytes for counting subsequences before they are inserted, or 0
+         * @return this
+         */
+        public Builder aggregateMemory(int aggregateMemory) {
+            this.aggregateMemory = aggregateMemory;
+            return this;
+        }
+
+        /**
+         * @param pageSize bytes that node slots are padded and aligned to
+         * @return this
+         */
+        public Builder pageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * @param threads number of threads reading the input and building partitions of the tree
+         * @return this
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param canonicalMode one of the SequenceUtils.CANONICAL_* constants
+         * @return this
+         */
+        public Builder canonicalMode(int canonicalMode) {
+            this.canonicalMode = canonicalMode;
+            return this;
+        }
+
+        /**
+         * @param bPlusTree whether the tree is stored as a B+ tree with linked leaves
+         * @return this
+         */
+        public Builder bPlusTree(boolean bPlusTree) {
+            this.bPlusTree = bPlusTree;
+            return this;
+        }
+
+        /**
+         * @param maxFrequencies whether nodes store the highest frequency below each child
+         * @return this
+         */
+        public Builder maxFrequencies(boolean maxFrequencies) {
+            this.maxFrequencies = maxFrequencies;
+            return this;
+        }
+
+        /**
+         * @param bloomFalsePositiveRate false positive rate of the Bloom filter written next to the tree, or 0 for none
+         * @return this
+         */
+        public Builder bloomFalsePositiveRate(double bloomFalsePositiveRate) {
+            this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+            return this;
+        }
+
+        /**
+         * @param database whether the finished tree is also exported to an SQLite database
+         * @return this
+         */
+        public Builder database(boolean database) {
+            this.database = database;
+            return this;
+        }
+
+        public GeneBankCreateBTreeArguments build() {
+            return new GeneBankCreateBTreeArguments(this);
+        }
+    }
 }
@@ -0,0 +1,67 @@
+package cs321.create;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens a GeneBank file for reading, whether it is stored as plain text (.gbk), gzip or block-gzip
+ * (.gbk.gz). The compression is recognized from the first bytes of the file rather than from its name.
+ * Plain gzip can only be inflated in order, so it is decompressed on the reading thread; BGZF is cut into
+ * its independent blocks, which are inflated on several threads by a BgzfInputStream.
+ */
+public class GeneBankInput
+{
+    public static final String COMPRESSED_SUFFIX = ".gz";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Opens filename and returns its decompressed contents.
+     * @param filename String, name of a .gbk or .gbk.gz file
+     * @param threads int, number of threads to decompress BGZF with; 1 inflates on the reading thread
+     * @return InputStream of the uncompressed GeneBank text; the caller must close it
+     * @throws IOException if the file cannot be opened
+     */
+    public static InputStream open(String filename, int threads) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(new FileInputStream(filename), BUFFER_SIZE);
+        byte[] header = new byte[18];
+        in.mark(header.length);
+        int length = 0;
+        int read;
+        while (length < header.length && (read = in.read(header, length, header.length - length)) > 0) {
+            length += read;
+        }
+        in.reset();
+        if (length < 2 || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b) {
+            return in;
+        }
+        if (threads > 1 && BgzfInputStream.isBgzfHeader(header)) {
+            return new BgzfInputStream(in, threads);
+        }
+        return new GZIPInputStream(in, BUFFER_SIZE);    // also reads every member of a BGZF file
+    }
+
+    /**
+     * @param filename String, name of a .gbk or .gbk.gz file
+     * @return true if the file starts with the gzip magic number
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isCompressed(String filename) throws IOException {
+        try (InputStream in = new FileInputStream(filename)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    /**
+     * The name of the GeneBank file with any .gz suffix removed. B-Tree files are named after it, so a tree
+     * built from "x.gbk.gz" is found under the same name as one built from "x.gbk".
+     * @param filename String, name of a .gbk or .gbk.gz file
+     * @return String filename without the compression suffix
+     */
+    public static String uncompressedName(String filename) {
+        return filename.endsWith(COMPRESSED_SUFFIX) ? filename.substring(0, filename.length() - COMPRESSED_SUFFIX.length()) : filename;
+    }
+}
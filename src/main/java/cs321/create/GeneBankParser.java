@@ -0,0 +1,129 @@
+package cs321.create;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Streams the sequence data out of a GeneBank (.gbk) file in a single pass. The file is read in large
+ * byte chunks and split into lines without creating a String per line; everything outside the "ORIGIN"
+ * and "//" markers of each record is skipped, and the sequence lines in between are handed to a
+ * SequenceHandler with their leading position column removed. The handler decides what to do with the
+ * remaining bases, spaces and 'n' characters, so nothing is written to disk along the way.
+ */
+public class GeneBankParser
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int POSITION_COLUMN = 10;
+    private static final byte[] START_SEQUENCE_KEYWORD = "ORIGIN".getBytes();
+    private static final byte[] END_SEQUENCE_KEYWORD = "//".getBytes();
+
+    /**
+     * Receives the sequence data of a GeneBank file, in file order.
+     */
+    public interface SequenceHandler
+    {
+        /**
+         * Called with the contents of one sequence line, starting after the position column. The bytes
+         * still contain the spaces between groups of bases and may contain 'n' or other non-acgt letters.
+         * @param buffer byte[] holding the line; only valid during this call
+         * @param from int, index of the first byte
+         * @param to int, index just past the last byte
+         */
+        void sequence(byte[] buffer, int from, int to);
+
+        /**
+         * Called at the "//" that ends a record's sequence. Subsequences must not span two records.
+         */
+        void endOfRecord();
+    }
+
+    /**
+     * Reads a GeneBank file and passes every sequence line to handler.
+     * @param in InputStream of the .gbk file; read to the end but not closed
+     * @param handler SequenceHandler receiving the sequence data
+     * @throws IOException if the stream cannot be read
+     */
+    public static void parse(InputStream in, SequenceHandler handler) throws IOException {
+        byte[] chunk = new byte[BUFFER_SIZE];
+        byte[] line = new byte[256];    // only used for a line cut in two by the end of a chunk
+        int lineLength = 0;
+        boolean inSequence = false;
+        int read;
+        while ((read = in.read(chunk)) >= 0) {
+            int start = 0;
+            for (int i = 0; i < read; i++) {
+                if (chunk[i] != '\n') {
+                    continue;
+                }
+                if (lineLength > 0) {
+                    line = append(line, lineLength, chunk, start, i);
+                    lineLength += i - start;
+                    inSequence = processLine(line, 0, lineLength, inSequence, handler);
+                    lineLength = 0;
+                } else {
+                    inSequence = processLine(chunk, start, i, inSequence, handler);
+                }
+                start = i + 1;
+            }
+            line = append(line, lineLength, chunk, start, read);
+            lineLength += read - start;
+        }
+        if (lineLength > 0) {
+            inSequence = processLine(line, 0, lineLength, inSequence, handler);
+        }
+        if (inSequence) {
+            handler.endOfRecord();  // file ended without a closing "//"
+        }
+    }
+
+    /**
+     * Handles one line of the file.
+     * @return whether the next line is inside a record's sequence
+     */
+    private static boolean processLine(byte[] buffer, int from, int to, boolean inSequence, SequenceHandler handler) {
+        int start = from;
+        int end = to;
+        while (start < end && buffer[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buffer[end - 1] <= ' ') {
+            end--;
+        }
+        if (startsWith(buffer, from, to, START_SEQUENCE_KEYWORD)) {
+            if (inSequence) {
+                handler.endOfRecord();
+            }
+            return true;
+        } else if (end - start == END_SEQUENCE_KEYWORD.length && startsWith(buffer, start, end, END_SEQUENCE_KEYWORD)) {
+            if (inSequence) {
+                handler.endOfRecord();
+            }
+            return false;
+        } else if (inSequence) {
+            handler.sequence(buffer, from + Math.min(POSITION_COLUMN, to - from), to);
+        }
+        return inSequence;
+    }
+
+    private static boolean startsWith(byte[] buffer, int from, int to, byte[] keyword) {
+        if (to - from < keyword.length) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length; i++) {
+            if (buffer[from + i] != keyword[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] append(byte[] line, int lineLength, byte[] chunk, int from, int to) {
+        int needed = lineLength + (to - from);
+        if (needed > line.length) {
+            line = Arrays.copyOf(line, Math.max(needed, line.length * 2));
+        }
+        System.arraycopy(chunk, from, line, lineLength, to - from);
+        return line;
+    }
+}
@@ -0,0 +1,35 @@
+package cs321.create;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * SequenceSource for a GenBank (.gbk or .gbk.gz) file, read by GeneBankParser. Only the lines between
+ * "ORIGIN" and "//" are sequence data.
+ */
+public class GeneBankSource implements SequenceSource
+{
+    private final String filename;
+    private final int threads;
+
+    /**
+     * @param filename String, name of the .gbk or .gbk.gz file
+     * @param threads int, number of threads a BGZF file may be decompressed with
+     */
+    public GeneBankSource(String filename, int threads) {
+        this.filename = filename;
+        this.threads = threads;
+    }
+
+    @Override
+    public void read(GeneBankParser.SequenceHandler handler) throws IOException {
+        try (InputStream in = GeneBankInput.open(filename, threads)) {
+            GeneBankParser.parse(in, handler);
+        }
+    }
+
+    @Override
+    public String getFileName() {
+        return filename;
+    }
+}
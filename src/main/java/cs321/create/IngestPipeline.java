@@ -0,0 +1,349 @@
+package cs321.create;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the ingest of a sequence file as three stages on their own threads, so parsing, encoding and tree
+ * insertion overlap instead of taking turns:
+ * <ol>
+ * <li>reader: a SequenceSource parses the file and copies the sequence data into byte blocks, with an
+ * 'n' at the end of every record so k-mers never span two records;</li>
+ * <li>encoder: a KmerEncoder turns the blocks into batches of encoded subsequences;</li>
+ * <li>inserter: the thread that called run() hands every batch to the KmerSink, usually a TreeFeeder.</li>
+ * </ol>
+ * Neighbouring stages share a fixed set of buffers that is allocated once: a producer takes a free buffer,
+ * fills it and passes it on, and the consumer returns it once done. A stage that runs ahead therefore
+ * waits for a free buffer instead of piling up data in memory. Each stage counts what it handled, how
+ * long it worked and how long it waited on its neighbours; report() summarizes this, which shows which
+ * stage limits the run.
+ * <p>
+ * run() may be called once per file; the counters add up over all of them.
+ */
+public class IngestPipeline
+{
+    private static final int BLOCK_BYTES = 1 << 20;
+    private static final int BLOCKS = 8;
+    private static final int BATCHES = 16;
+    private static final byte RECORD_BREAK = 'n';
+
+    private final int seqLength;
+    private final KmerEncoder.KmerSink sink;
+    private final Ring<ByteBlock> blocks;
+    private final Ring<KmerBatch> batches;
+    private final StageCounter reader = new StageCounter("reader", "bytes");
+    private final StageCounter encoder = new StageCounter("encoder", "subsequences");
+    private final StageCounter inserter = new StageCounter("inserter", "subsequences");
+
+    /**
+     * Allocates the buffers shared by the stages.
+     * @param seqLength int, length of the subsequences to encode
+     * @param sink KmerSink receiving the encoded subsequences, only ever called from the thread running run()
+     */
+    public IngestPipeline(int seqLength, KmerEncoder.KmerSink sink) {
+        this.seqLength = seqLength;
+        this.sink = sink;
+        List<ByteBlock> byteBlocks = new ArrayList<>();
+        for (int i = 0; i < BLOCKS; i++) {
+            byteBlocks.add(new ByteBlock());
+        }
+        List<KmerBatch> kmerBatches = new ArrayList<>();
+        for (int i = 0; i < BATCHES; i++) {
+            kmerBatches.add(new KmerBatch());
+        }
+        blocks = new Ring<>(byteBlocks);
+        batches = new Ring<>(kmerBatches);
+    }
+
+    /**
+     * Reads source through the pipeline and returns once every subsequence has been handed to the sink.
+     * @param source SequenceSource to read
+     * @throws IOException if the file cannot be read or a stage failed
+     */
+    public void run(SequenceSource source) throws IOException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread readerThread = new Thread(() -> read(source, failure), "ingest-reader");
+        Thread encoderThread = new Thread(() -> encode(failure), "ingest-encoder");
+        readerThread.setDaemon(true);
+        encoderThread.setDaemon(true);
+        readerThread.start();
+        encoderThread.start();
+        try {
+            insert();
+        } catch (RuntimeException | Error e) {
+            stop(readerThread, encoderThread);
+            throw e;
+        } catch (InterruptedException e) {
+            stop(readerThread, encoderThread);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + source.getFileName(), e);
+        }
+        if (failure.get() != null) {
+            // a failed encoder stops releasing blocks, so the reader may still be waiting for one
+            stop(readerThread, encoderThread);
+            throw new IOException("Could not read " + source.getFileName(), failure.get());
+        }
+    }
+
+    /**
+     * Interrupts the given stages and waits until they have ended and closed their source.
+     * @param stages Threads running the reader and encoder stages
+     */
+    private static void stop(Thread... stages) {
+        for (Thread stage : stages) {
+            stage.interrupt();
+        }
+        boolean interrupted = false;
+        for (Thread stage : stages) {
+            while (stage.isAlive()) {
+                try {
+                    stage.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return one line per stage with its counters
+     */
+    public String report() {
+        return reader + "\n" + encoder + "\n" + inserter;
+    }
+
+    /**
+     * Reader stage: fills byte blocks with the sequence data of source. Always ends with an empty block
+     * marked as the last one, even when the source fails.
+     */
+    private void read(SequenceSource source, AtomicReference<Throwable> failure) {
+        BlockFiller filler = new BlockFiller();
+        try {
+            source.read(filler);
+            filler.endOfRecord();
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        }
+        try {
+            filler.publish();
+            ByteBlock last = blocks.acquire(reader);
+            last.last = true;
+            blocks.publish(last);
+        } catch (InterruptedException e) {
+            // the inserter failed and stopped the pipeline
+        }
+    }
+
+    /**
+     * Encoder stage: encodes every byte block into batches until the reader's last block.
+     */
+    private void encode(AtomicReference<Throwable> failure) {
+        KmerEncoder kmerEncoder = createEncoder(this::publishBatch);
+        try {
+            while (true) {
+                ByteBlock block = blocks.take(encoder);
+                if (block.last) {
+                    block.last = false;
+                    blocks.release(block);
+                    break;
+                }
+                long start = System.nanoTime();
+                kmerEncoder.sequence(block.data, 0, block.length);
+                encoder.busyNanos += System.nanoTime() - start;
+                blocks.release(block);
+            }
+            kmerEncoder.flush();
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof InterruptedException) {
+                return;     // the inserter failed and stopped the pipeline
+            }
+            failure.compareAndSet(null, e);
+        } catch (InterruptedException e) {
+            return;
+        }
+        try {
+            KmerBatch last = batches.acquire(encoder);
+            last.last = true;
+            batches.publish(last);
+        } catch (InterruptedException e) {
+            // the inserter failed and stopped the pipeline
+        }
+    }
+
+    /**
+     * Creates the KmerEncoder of the encoder stage.
+     * @param batches KmerSink publishing every batch to the inserter
+     * @return KmerEncoder for subsequences of seqLength
+     */
+    KmerEncoder createEncoder(KmerEncoder.KmerSink batches) {
+        return new KmerEncoder(seqLength, batches);
+    }
+
+    private void publishBatch(long[] kmers, int count) {
+        try {
+            KmerBatch batch = batches.acquire(encoder);
+            System.arraycopy(kmers, 0, batch.kmers, 0, count);
+            batch.count = count;
+            encoder.items += count;
+            batches.publish(batch);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Inserter stage, on the calling thread.
+     */
+    private void insert() throws InterruptedException {
+        while (true) {
+            KmerBatch batch = batches.take(inserter);
+            if (batch.last) {
+                batch.last = false;
+                batches.release(batch);
+                return;
+            }
+            long start = System.nanoTime();
+            sink.accept(batch.kmers, batch.count);
+            inserter.busyNanos += System.nanoTime() - start;
+            inserter.items += batch.count;
+            batches.release(batch);
+        }
+    }
+
+    /**
+     * SequenceHandler of the reader stage, copying sequence data into the current block.
+     */
+    private class BlockFiller implements GeneBankParser.SequenceHandler
+    {
+        private ByteBlock block;
+        private long start = System.nanoTime();
+
+        @Override
+        public void sequence(byte[] buffer, int from, int to) {
+            while (from < to) {
+                if (block == null) {
+                    reader.busyNanos += System.nanoTime() - start;
+                    block = acquireUninterruptibly();
+                    block.length = 0;
+                    start = System.nanoTime();
+                }
+                int count = Math.min(to - from, block.data.length - block.length);
+                System.arraycopy(buffer, from, block.data, block.length, count);
+                block.length += count;
+                from += count;
+                reader.items += count;
+                if (block.length == block.data.length) {
+                    blocks.publish(block);
+                    block = null;
+                }
+            }
+        }
+
+        @Override
+        public void endOfRecord() {
+            sequence(new byte[] {RECORD_BREAK}, 0, 1);
+        }
+
+        void publish() {
+            reader.busyNanos += System.nanoTime() - start;
+            if (block != null) {
+                blocks.publish(block);
+                block = null;
+            }
+        }
+
+        private ByteBlock acquireUninterruptibly() {
+            try {
+                return blocks.acquire(reader);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reading", e);
+            }
+        }
+    }
+
+    private static class ByteBlock
+    {
+        final byte[] data = new byte[BLOCK_BYTES];
+        int length;
+        boolean last;
+    }
+
+    private static class KmerBatch
+    {
+        final long[] kmers = new long[KmerEncoder.DEFAULT_BATCH_SIZE];
+        int count;
+        boolean last;
+    }
+
+    /**
+     * A fixed set of buffers circulating between a producing and a consuming stage. Both queues can
+     * hold every buffer, so publish() and release() never block; acquire() and take() block, and the
+     * time they spend waiting is added to the calling stage's counter.
+     */
+    private static class Ring<T>
+    {
+        private final BlockingQueue<T> free;
+        private final BlockingQueue<T> full;
+
+        Ring(List<T> buffers) {
+            free = new ArrayBlockingQueue<>(buffers.size(), false, buffers);
+            full = new ArrayBlockingQueue<>(buffers.size());
+        }
+
+        T acquire(StageCounter counter) throws InterruptedException {
+            long start = System.nanoTime();
+            T buffer = free.take();
+            counter.waitNanos += System.nanoTime() - start;
+            return buffer;
+        }
+
+        void publish(T buffer) {
+            full.add(buffer);
+        }
+
+        T take(StageCounter counter) throws InterruptedException {
+            long start = System.nanoTime();
+            T buffer = full.take();
+            counter.waitNanos += System.nanoTime() - start;
+            return buffer;
+        }
+
+        void release(T buffer) {
+            free.add(buffer);
+        }
+    }
+
+    /**
+     * Throughput counters of one stage. Only written by that stage's thread; read by report() once the
+     * stages have finished.
+     */
+    private static class StageCounter
+    {
+        private final String name;
+        private final String unit;
+        long items;
+        long busyNanos;
+        long waitNanos;
+
+        StageCounter(String name, String unit) {
+            this.name = name;
+            this.unit = unit;
+        }
+
+        @Override
+        public String toString() {
+            double busySeconds = busyNanos / 1e9;
+            long perSecond = busySeconds > 0 ? (long) (items / busySeconds) : 0;
+            return String.format("%-8s %,d %s, busy %.3f s (%,d %s/s), waiting %.3f s",
+                    name, items, unit, busySeconds, perSecond, unit, waitNanos / 1e9);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package cs321.create;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rolling encoder that turns a stream of bases into the long values of every subsequence of length k
+ * (k-mers), using the same 2-bit code as SequenceUtils ('a' = 00, 'c' = 01, 'g' = 10, 't' = 11). Each
+ * base costs one table lookup, a shift and a mask, however long the subsequences are, and no Strings
+ * are created. Encoded k-mers are collected in a long[] and handed to a KmerSink a batch at a time.
+ * <p>
+ * Spaces, line breaks and digits are skipped. 'n' and any other byte that is not a base in either case
+ * start a new window, as does the end of a record, so a k-mer never spans a gap or two records.
+ */
+public class KmerEncoder implements GeneBankParser.SequenceHandler
+{
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private static final byte SKIP = -1;
+    private static final byte BREAK = -2;
+    private static final byte[] CODES = new byte[256];
+
+    static {
+        for (int i = 0; i < CODES.length; i++) {
+            CODES[i] = Character.isWhitespace(i) || Character.isDigit(i) ? SKIP : BREAK;
+        }
+        CODES['a'] = CODES['A'] = 0;
+        CODES['c'] = CODES['C'] = 1;
+        CODES['g'] = CODES['G'] = 2;
+        CODES['t'] = CODES['T'] = 3;
+    }
+
+    /**
+     * Receives batches of encoded k-mers, in sequence order.
+     */
+    public interface KmerSink
+    {
+        /**
+         * @param kmers long[] holding the k-mers; reused for the next batch once this call returns
+         * @param count int, number of k-mers at the start of kmers
+         */
+        void accept(long[] kmers, int count);
+    }
+
+    private final int k;
+    private final long mask;
+    private final KmerSink sink;
+    private final long[] batch;
+    private int batchCount;
+    private long value;
+    private int valid;
+
+    /**
+     * @param k int, subsequence length, between 1 and 31
+     * @param sink KmerSink receiving the encoded k-mers
+     */
+    public KmerEncoder(int k, KmerSink sink) {
+        this(k, sink, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param k int, subsequence length, between 1 and 31
+     * @param sink KmerSink receiving the encoded k-mers
+     * @param batchSize int, number of k-mers passed to the sink at once
+     */
+    public KmerEncoder(int k, KmerSink sink, int batchSize) {
+        this.k = k;
+        this.mask = (1L << (2 * k)) - 1;
+        this.sink = sink;
+        this.batch = new long[batchSize];
+    }
+
+    @Override
+    public void sequence(byte[] buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            push(CODES[buffer[i] & 0xff]);
+        }
+    }
+
+    /**
+     * Same as sequence(byte[], int, int), for the bytes between the position and the limit of buffer.
+     * Only absolute gets are used, so the buffer's position is left alone.
+     * @param buffer ByteBuffer holding bases, for example a memory-mapped part of a file
+     */
+    public void sequence(ByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            push(CODES[buffer.get(i) & 0xff]);
+        }
+    }
+
+    /**
+     * Feeds the bases between the position and the limit of buffer into the window without emitting
+     * any k-mer. A reader that splits a record into chunks primes each chunk's encoder with the last
+     * k-1 bases before the chunk, so k-mers crossing the cut are still emitted, exactly once.
+     * @param buffer ByteBuffer holding the bases just before the chunk
+     */
+    public void prime(ByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            byte code = CODES[buffer.get(i) & 0xff];
+            if (code >= 0) {
+                value = ((value << 2) | code) & mask;
+                valid = Math.min(k, valid + 1);
+            } else if (code == BREAK) {
+                valid = 0;
+            }
+        }
+    }
+
+    /**
+     * @param b byte of input
+     * @return true if b is a base, false if it is skipped or breaks the window
+     */
+    public static boolean isBase(byte b) {
+        return CODES[b & 0xff] >= 0;
+    }
+
+    /**
+     * @param b byte of input
+     * @return true if b starts a new window, like 'n' does
+     */
+    public static boolean isBreak(byte b) {
+        return CODES[b & 0xff] == BREAK;
+    }
+
+    private void push(byte code) {
+        if (code >= 0) {
+            value = ((value << 2) | code) & mask;
+            if (valid < k) {
+                valid++;
+            }
+            if (valid == k) {
+                batch[batchCount++] = value;
+                if (batchCount == batch.length) {
+                    flush();
+                }
+            }
+        } else if (code == BREAK) {
+            valid = 0;
+        }
+    }
+
+    @Override
+    public void endOfRecord() {
+        valid = 0;
+    }
+
+    /**
+     * Hands any k-mers still waiting in the current batch to the sink. Must be called once the
+     * input has been read completely.
+     */
+    public void flush() {
+        if (batchCount > 0) {
+            sink.accept(batch, batchCount);
+            batchCount = 0;
+        }
+    }
+}
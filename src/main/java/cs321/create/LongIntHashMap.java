@@ -0,0 +1,171 @@
+package cs321.create;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long keys to int counts, stored in two flat primitive arrays so
+ * that counting a subsequence neither boxes nor allocates. It is sized once from a memory budget
+ * and never grows: once isFull() reports true, the caller is expected to drain the entries with
+ * drainSorted(), hand them off (for example to BTree.insert(key, frequency)), and clear() the map.
+ * <p>
+ * Keys must be non-negative, which holds for every subsequence encoded by SequenceUtils; -1 marks
+ * an empty slot. Collisions are resolved with linear probing and the map is considered full at
+ * 70% occupancy, which keeps probe sequences short.
+ */
+public class LongIntHashMap
+{
+    private static final long EMPTY = -1;
+    private static final int BYTES_PER_SLOT = Long.BYTES + Integer.BYTES;
+    private static final int MAX_SLOTS = 1 << 30;
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+    private final int maxSize;
+    private int size;
+
+    /**
+     * Creates a map whose arrays take up at most memoryBudget bytes.
+     * @param memoryBudget long, number of bytes the map may use
+     */
+    public LongIntHashMap(long memoryBudget) {
+        long slots = Long.highestOneBit(Math.max(16, memoryBudget / BYTES_PER_SLOT));
+        int capacity = (int) Math.min(MAX_SLOTS, slots);
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        maxSize = (int) (capacity * 0.7);
+    }
+
+    /**
+     * Adds delta to the count of key, inserting the key if it is not present yet.
+     * @param key long, non-negative key
+     * @param delta int, amount to add
+     */
+    public void add(long key, int delta) {
+        int slot = hash(key) & mask;
+        while (true) {
+            long k = keys[slot];
+            if (k == key) {
+                values[slot] += delta;
+                return;
+            }
+            if (k == EMPTY) {
+                keys[slot] = key;
+                values[slot] = delta;
+                size++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return true once the map has reached its maximum occupancy and should be drained
+     */
+    public boolean isFull() {
+        return size >= maxSize;
+    }
+
+    /**
+     * @return int, number of distinct keys in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Moves every entry to the front of the table and sorts them by key, so they can be read back
+     * in ascending order with keyAt() and valueAt(). This breaks the hash layout: clear() must be
+     * called before the map is used again.
+     * @return int, number of entries available through keyAt() and valueAt()
+     */
+    public int drainSorted() {
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                keys[count] = keys[i];
+                values[count] = values[i];
+                count++;
+            }
+        }
+        sort(0, count - 1);
+        return count;
+    }
+
+    public long keyAt(int i) {
+        return keys[i];
+    }
+
+    public int valueAt(int i) {
+        return values[i];
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Sorts keys[lo..hi] ascending, moving values along with them. Quicksort on the middle
+     * element, recursing into the smaller half so the stack stays logarithmic, with insertion
+     * sort for short ranges.
+     */
+    private void sort(int lo, int hi) {
+        while (hi - lo > 16) {
+            long pivot = keys[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (j - lo < hi - i) {
+                sort(lo, j);
+                lo = i;
+            } else {
+                sort(i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            long key = keys[i];
+            int value = values[i];
+            int j = i - 1;
+            while (j >= lo && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
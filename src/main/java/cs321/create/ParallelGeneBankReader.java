@@ -0,0 +1,308 @@
+package cs321.create;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reads the subsequences of a GeneBank (.gbk) file on several threads. The file is memory-mapped and
+ * read in two parallel passes:
+ * <ol>
+ * <li>The file is cut into one range per thread, and each thread lists the "ORIGIN" and "//" lines
+ * starting in its range. Together they give the sequence section of every record.</li>
+ * <li>Sections are cut at line boundaries into chunks of about CHUNK_BYTES, so a single huge record
+ * is still spread over all threads. Each chunk is encoded by its own KmerEncoder, which is first
+ * primed with the last k-1 bases before the chunk, so subsequences spanning a line break or a chunk
+ * boundary are emitted exactly once.</li>
+ * </ol>
+ * Encoded batches go through a bounded queue to the thread that called read(), which is the only one
+ * touching the KmerSink, so the sink (and the BTree behind it) does not need to be thread-safe. Batches
+ * arrive in no particular order, which does not change the resulting tree. If the sink throws, the
+ * worker threads are interrupted and give up, so nothing is left blocked on the full queue; they are
+ * daemon threads, so they never keep the program running either.
+ * <p>
+ * Files larger than 2 GB are mapped as several regions that overlap by OVERLAP_BYTES, so every chunk
+ * lies completely inside one region.
+ */
+public class ParallelGeneBankReader
+{
+    private static final long REGION_BYTES = 1L << 30;
+    private static final int OVERLAP_BYTES = 16 << 20;
+    private static final int CHUNK_BYTES = 4 << 20;
+    private static final int QUEUE_BATCHES = 64;
+    private static final long[] END_OF_INPUT = new long[0];
+    private static final byte[] START_SEQUENCE_KEYWORD = "ORIGIN".getBytes();
+    private static final byte[] END_SEQUENCE_KEYWORD = "//".getBytes();
+
+    private final MappedByteBuffer[] regions;
+    private final long size;
+    private final int seqLength;
+    private final int threads;
+
+    /**
+     * Maps the file; it is read by read().
+     * @param gbkFilename String, name of the .gbk file
+     * @param seqLength int, length of the subsequences to encode
+     * @param threads int, number of threads to parse with
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public ParallelGeneBankReader(String gbkFilename, int seqLength, int threads) throws IOException {
+        this.seqLength = seqLength;
+        this.threads = threads;
+        try (RandomAccessFile file = new RandomAccessFile(gbkFilename, "r")) {
+            FileChannel channel = file.getChannel();
+            size = channel.size();
+            regions = new MappedByteBuffer[(int) Math.max(1, (size + REGION_BYTES - 1) / REGION_BYTES)];
+            for (int i = 0; i < regions.length; i++) {
+                long start = i * REGION_BYTES;
+                long length = Math.min(size - start, REGION_BYTES + OVERLAP_BYTES);
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(0, length));
+            }
+        }
+    }
+
+    /**
+     * Encodes every subsequence in the file and hands them to sink, in batches, on the calling thread.
+     * @param sink KmerSink receiving the subsequences
+     * @throws IOException if a worker thread failed
+     */
+    public void read(KmerEncoder.KmerSink sink) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "gbk-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<long[]> chunks = findChunks(findSections(pool));
+            encodeChunks(pool, chunks, sink);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * First pass: every thread lists the marker lines starting in its share of the file.
+     * @return {start, end} of the sequence section of every record, in file order
+     */
+    private List<long[]> findSections(ExecutorService pool) throws IOException {
+        List<Callable<long[]>> ranges = new ArrayList<>();
+        long rangeSize = Math.max(1, (size + threads - 1) / threads);
+        for (long start = 0; start < size; start += rangeSize) {
+            long from = start;
+            long to = Math.min(size, start + rangeSize);
+            ranges.add(() -> findMarkers(from, to));
+        }
+
+        List<long[]> sections = new ArrayList<>();
+        long sectionStart = -1;
+        for (long[] markers : invokeAll(pool, ranges)) {
+            for (long marker : markers) {
+                if (marker >= 0) {                      // ORIGIN line: sequence starts on the next line
+                    if (sectionStart >= 0) {
+                        sections.add(new long[] {sectionStart, marker});
+                    }
+                    sectionStart = marker;
+                } else if (sectionStart >= 0) {         // "//" line: sequence ends where it starts
+                    sections.add(new long[] {sectionStart, -(marker + 1)});
+                    sectionStart = -1;
+                }
+            }
+        }
+        if (sectionStart >= 0) {
+            sections.add(new long[] {sectionStart, size});  // file ended without a closing "//"
+        }
+        return sections;
+    }
+
+    /**
+     * Lists the "ORIGIN" and "//" lines that start in [from, to). An ORIGIN line is recorded as the
+     * position of the line after it; a "//" line as -(its start + 1).
+     */
+    private long[] findMarkers(long from, long to) {
+        long[] markers = new long[16];
+        int count = 0;
+        for (long pos = from; pos < to; pos++) {
+            if (pos > 0 && byteAt(pos - 1) != '\n') {
+                continue;
+            }
+            long marker;
+            if (startsWith(pos, START_SEQUENCE_KEYWORD)) {
+                marker = nextLine(pos);
+            } else if (startsWith(pos, END_SEQUENCE_KEYWORD)) {
+                marker = -(pos + 1);
+            } else {
+                continue;
+            }
+            if (count == markers.length) {
+                markers = Arrays.copyOf(markers, count * 2);
+            }
+            markers[count++] = marker;
+        }
+        return Arrays.copyOf(markers, count);
+    }
+
+    /**
+     * Cuts each section into chunks that end at a line break. Any cut would be correct, since chunks are
+     * primed and the encoder skips the position column, but cutting at lines keeps chunks easy to inspect.
+     * A line too long to fit the region overlap is cut where it is.
+     * @return {sectionStart, chunkStart, chunkEnd} of every chunk
+     */
+    private List<long[]> findChunks(List<long[]> sections) {
+        List<long[]> chunks = new ArrayList<>();
+        for (long[] section : sections) {
+            long start = section[0];
+            while (start < section[1]) {
+                long end = Math.min(section[1], start + CHUNK_BYTES);
+                if (end < section[1]) {
+                    end = Math.min(section[1], Math.min(nextLine(end), end + OVERLAP_BYTES / 2));
+                }
+                chunks.add(new long[] {section[0], start, end});
+                start = end;
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Second pass: encodes the chunks on the pool while this thread feeds their batches to sink. If sink
+     * fails, the workers are stopped with shutdownNow() before the failure is passed on.
+     */
+    private void encodeChunks(ExecutorService pool, List<long[]> chunks, KmerEncoder.KmerSink sink) throws IOException {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        BlockingQueue<long[]> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        AtomicInteger remaining = new AtomicInteger(chunks.size());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (long[] chunk : chunks) {
+            pool.execute(() -> {
+                try {
+                    encodeChunk(chunk[0], chunk[1], chunk[2], queue);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        try {
+                            put(queue, END_OF_INPUT);
+                        } catch (IllegalStateException e) {
+                            // interrupted by shutdownNow(): nobody is taking batches any more
+                        }
+                    }
+                }
+            });
+        }
+        try {
+            long[] batch;
+            while ((batch = queue.take()) != END_OF_INPUT) {
+                sink.accept(batch, batch.length);
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading subsequences", e);
+        } catch (RuntimeException | Error e) {
+            pool.shutdownNow();
+            throw e;
+        }
+        if (failure.get() != null) {
+            throw new IOException("Could not parse GeneBank file", failure.get());
+        }
+    }
+
+    private void encodeChunk(long sectionStart, long start, long end, BlockingQueue<long[]> queue) {
+        KmerEncoder encoder = new KmerEncoder(seqLength, (kmers, count) -> put(queue, Arrays.copyOf(kmers, count)));
+        long primeStart = start;
+        int bases = 0;
+        while (primeStart > sectionStart && bases < seqLength - 1) {
+            byte b = byteAt(primeStart - 1);
+            if (KmerEncoder.isBreak(b)) {
+                break;
+            }
+            if (KmerEncoder.isBase(b)) {
+                bases++;
+            }
+            primeStart--;
+        }
+        encoder.prime(slice(primeStart, start));
+        encoder.sequence(slice(start, end));
+        encoder.flush();
+    }
+
+    /**
+     * Hands a batch to the thread in read(). Interruption only comes from shutdownNow() once that thread
+     * has stopped taking batches, so it ends the worker instead of waiting for room that never comes.
+     * @throws IllegalStateException if the worker is interrupted
+     */
+    private static void put(BlockingQueue<long[]> queue, long[] batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while handing over subsequences", e);
+        }
+    }
+
+    private static <T> List<T> invokeAll(ExecutorService pool, List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (Exception e) {
+            throw new IOException("Could not parse GeneBank file", e);
+        }
+        return results;
+    }
+
+    /**
+     * @return a view of the bytes in [from, to), which must be less than OVERLAP_BYTES apart
+     */
+    private ByteBuffer slice(long from, long to) {
+        MappedByteBuffer region = regions[(int) (from / REGION_BYTES)];
+        int offset = (int) (from % REGION_BYTES);
+        ByteBuffer slice = region.duplicate();
+        slice.limit(offset + (int) (to - from));
+        slice.position(offset);
+        return slice;
+    }
+
+    private byte byteAt(long pos) {
+        int region = (int) (pos / REGION_BYTES);
+        return regions[region].get((int) (pos - region * REGION_BYTES));
+    }
+
+    private boolean startsWith(long pos, byte[] keyword) {
+        if (size - pos < keyword.length) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length; i++) {
+            if (byteAt(pos + i) != keyword[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return position just after the first line break at or after pos, or the file size
+     */
+    private long nextLine(long pos) {
+        while (pos < size && byteAt(pos) != '\n') {
+            pos++;
+        }
+        return Math.min(size, pos + 1);
+    }
+}
@@ -0,0 +1,256 @@
+package cs321.create;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import cs321.btree.BTree;
+import cs321.common.Debug;
+
+/**
+ * Builds a B-Tree on several threads by splitting the key space into partitions, each holding one
+ * contiguous range of keys. The ranges are cut at quantiles of a sample of the first SAMPLE_KEYS keys,
+ * so the partitions get about the same number of subsequences whatever the distribution of the keys.
+ * Splitting on the top bits of the 2-bit encoding would not: canonical keys are the smaller of a
+ * subsequence and its complement, so with --canonical=1 their top bit is always 0 and half the
+ * partitions would stay empty, and with --canonical=2 they lean towards low prefixes. Each partition is built by its
+ * own worker thread, with its own TreeFeeder, BTree and data file ("<tree file>.part<p>"), so the workers
+ * never share a cache or a file. Once the input has ended, BTree.stitch() streams the keys of the
+ * partitions, in partition order, into a bottom-up load of the real tree file, so the result is a
+ * balanced B-Tree that is searched, walked and dumped exactly like a tree built on a single thread.
+ * <p>
+ * The thread that calls accept() only canonicalizes each subsequence and appends it to the batch of its
+ * partition; full batches go to the partition's worker through a bounded queue.
+ */
+public class PartitionedTreeBuilder implements KmerEncoder.KmerSink
+{
+    private static final int BATCH_SIZE = KmerEncoder.DEFAULT_BATCH_SIZE;
+    private static final int QUEUE_BATCHES = 16;
+    private static final long[] END_OF_INPUT = new long[0];
+    private static final int SAMPLE_KEYS = 1 << 16;
+
+    private final BTree<?> bTree;
+    private final int seqLength;
+    private final int canonicalMode;
+    private final int fillFactor;
+    private long[] sample = new long[SAMPLE_KEYS];
+    private int sampled;
+    private long[] bounds;
+    private long[] partitionKeys;
+    private final long[][] batches;
+    private final int[] batchCounts;
+    private final List<BlockingQueue<long[]>> queues = new ArrayList<>();
+    private final List<Future<Long>> workers = new ArrayList<>();
+    private final List<String> partFiles = new ArrayList<>();
+    private final ExecutorService pool;
+
+    /**
+     * Starts one worker per partition.
+     * @param bTree BTree, the empty tree the partitions are stitched into
+     * @param args GeneBankCreateBTreeArguments, the validated command-line arguments provided to the program
+     * @param partitions int, number of partitions, from partitionsFor()
+     */
+    public PartitionedTreeBuilder(BTree<?> bTree, GeneBankCreateBTreeArguments args, int partitions) {
+        this.bTree = bTree;
+        this.seqLength = args.getSubsequenceLength();
+        this.canonicalMode = args.getCanonicalMode();
+        this.fillFactor = args.getFillFactor();
+        this.batches = new long[partitions][BATCH_SIZE];
+        this.batchCounts = new int[partitions];
+        this.pool = Executors.newFixedThreadPool(partitions);
+        long aggregateBytes = args.getAggregateMemory() * 1024L * 1024L / partitions;
+        for (int p = 0; p < partitions; p++) {
+            BlockingQueue<long[]> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+            String partFile = bTree.getFileName() + ".part" + p;
+            queues.add(queue);
+            partFiles.add(partFile);
+            workers.add(pool.submit(() -> buildPartition(queue, partFile, args, aggregateBytes)));
+        }
+    }
+
+    /**
+     * Number of partitions to build with: threads, but no more than there are different keys.
+     * @param threads int, number of threads available for building
+     * @param seqLength int, length of the subsequences
+     * @return int, number of partitions; 1 means the tree is built on a single thread as usual
+     */
+    public static int partitionsFor(int threads, int seqLength) {
+        int partitions = Math.max(1, threads);
+        return seqLength >= 16 ? partitions : Math.min(partitions, 1 << (2 * seqLength));
+    }
+
+    /**
+     * Canonicalizes the subsequences and adds them to the batches of their partitions. Until the
+     * partition bounds are chosen, they are only collected as the sample.
+     */
+    @Override
+    public void accept(long[] kmers, int count) {
+        for (int i = 0; i < count; i++) {
+            long kmer = kmers[i];
+            if (canonicalMode != SequenceUtils.CANONICAL_NONE) {
+                kmer = SequenceUtils.canonical(kmer, seqLength, canonicalMode);
+            }
+            if (bounds != null) {
+                route(kmer);
+            } else {
+                sample[sampled++] = kmer;
+                if (sampled == SAMPLE_KEYS) {
+                    chooseBounds();
+                }
+            }
+        }
+    }
+
+    /**
+     * Cuts the key space at evenly spaced quantiles of the sample, then routes the sampled keys.
+     * Partition p holds the keys from bounds[p-1] up to, but not including, bounds[p]. A key that
+     * fills more than one share of the sample may leave a partition between two equal bounds empty.
+     */
+    private void chooseBounds() {
+        long[] sorted = Arrays.copyOf(sample, sampled);
+        Arrays.sort(sorted);
+        bounds = new long[queues.size() - 1];
+        for (int p = 0; p < bounds.length; p++) {
+            bounds[p] = sampled == 0 ? 0 : sorted[(int) ((p + 1L) * sampled / queues.size())];
+        }
+        for (int i = 0; i < sampled; i++) {
+            route(sample[i]);
+        }
+        sample = null;
+    }
+
+    /**
+     * Appends a canonical key to the batch of its partition, sending the batch when it is full.
+     */
+    private void route(long kmer) {
+        int p = partitionOf(bounds, kmer);
+        batches[p][batchCounts[p]++] = kmer;
+        if (batchCounts[p] == BATCH_SIZE) {
+            put(queues.get(p), batches[p]);
+            batches[p] = new long[BATCH_SIZE];
+            batchCounts[p] = 0;
+        }
+    }
+
+    /**
+     * @return the partition of key: the number of bounds at or below it
+     */
+    static int partitionOf(long[] bounds, long key) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bounds[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return number of keys each partition was built with, in partition order; null until finish() has
+     *         built the partitions
+     */
+    public long[] getPartitionKeys() {
+        return partitionKeys;
+    }
+
+    /**
+     * Sends the last batches, waits for every partition to be built, and stitches the partitions
+     * into the tree. The partition files are deleted afterwards.
+     * @throws IOException if a partition could not be built or read back
+     */
+    public void finish() throws IOException {
+        if (bounds == null) {
+            chooseBounds();
+        }
+        for (int p = 0; p < queues.size(); p++) {
+            put(queues.get(p), Arrays.copyOf(batches[p], batchCounts[p]));
+            put(queues.get(p), END_OF_INPUT);
+        }
+        pool.shutdown();
+        List<String> built = new ArrayList<>();
+        long[] keys = new long[workers.size()];
+        try {
+            for (int p = 0; p < workers.size(); p++) {
+                keys[p] = workers.get(p).get();
+                if (keys[p] > 0) {
+                    built.add(partFiles.get(p));
+                }
+            }
+            partitionKeys = keys;
+            Debug.log("partition keys: " + Arrays.toString(keys));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building partitions", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not build partition", e.getCause());
+        }
+        try {
+            bTree.stitch(built, fillFactor);
+        } finally {
+            for (String partFile : partFiles) {
+                new File(partFile).delete();
+            }
+        }
+    }
+
+    /**
+     * Worker for one partition. A worker that fails keeps taking batches until the end of the input,
+     * so accept() never blocks on its full queue.
+     * @return number of keys in the partition
+     */
+    private static long buildPartition(BlockingQueue<long[]> queue, String partFile,
+                                             GeneBankCreateBTreeArguments args, long aggregateBytes) throws InterruptedException {
+        RuntimeException failure = null;
+        BTree<?> part = null;
+        GeneBankCreateBTree.TreeFeeder feeder = null;
+        try {
+            part = new BTree<>(args, partFile);
+            feeder = new GeneBankCreateBTree.TreeFeeder(part, args, SequenceUtils.CANONICAL_NONE, aggregateBytes);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        long[] batch;
+        while ((batch = queue.take()) != END_OF_INPUT) {
+            if (failure == null) {
+                try {
+                    feeder.accept(batch, batch.length);
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        feeder.finish();
+        part.closeTree();
+        return part.getNumKeys();
+    }
+
+    private static void put(BlockingQueue<long[]> queue, long[] batch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(batch);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
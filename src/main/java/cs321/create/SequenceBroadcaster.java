@@ -0,0 +1,109 @@
+package cs321.create;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands the sequence data of a single GeneBank parse to several consumers, so one read of the file can
+ * feed a B-Tree for every requested subsequence length. Sequence lines are copied into blocks of about
+ * BLOCK_BYTES, and each full block is put on the bounded queue of every consumer. Blocks are never
+ * changed once published, so all consumers read the same block without copying it again.
+ * <p>
+ * The end of a record is written into the block as an 'n', which a KmerEncoder already treats as the
+ * start of a new window, so consumers only ever see a stream of bytes. A slow consumer holds the parse
+ * back once its queue is full instead of letting blocks pile up in memory.
+ */
+public class SequenceBroadcaster implements GeneBankParser.SequenceHandler
+{
+    private static final int BLOCK_BYTES = 1 << 20;
+    private static final int QUEUE_BLOCKS = 16;
+    private static final byte RECORD_BREAK = 'n';
+    private static final ByteBuffer END_OF_INPUT = ByteBuffer.allocate(0);
+
+    private final List<BlockingQueue<ByteBuffer>> queues;
+    private byte[] block = new byte[BLOCK_BYTES];
+    private int length;
+
+    /**
+     * @param consumers int, number of consumers that each receive every block
+     */
+    public SequenceBroadcaster(int consumers) {
+        queues = new ArrayList<>(consumers);
+        for (int i = 0; i < consumers; i++) {
+            queues.add(new ArrayBlockingQueue<>(QUEUE_BLOCKS));
+        }
+    }
+
+    @Override
+    public void sequence(byte[] buffer, int from, int to) {
+        while (to - from > block.length - length) {
+            int part = block.length - length;
+            System.arraycopy(buffer, from, block, length, part);
+            length += part;
+            from += part;
+            publish();
+        }
+        System.arraycopy(buffer, from, block, length, to - from);
+        length += to - from;
+    }
+
+    @Override
+    public void endOfRecord() {
+        if (length == block.length) {
+            publish();
+        }
+        block[length++] = RECORD_BREAK;
+    }
+
+    /**
+     * Publishes the last block and tells every consumer that the input has ended.
+     */
+    public void close() {
+        publish();
+        for (BlockingQueue<ByteBuffer> queue : queues) {
+            put(queue, END_OF_INPUT);
+        }
+    }
+
+    /**
+     * Waits for the next block of consumer. Only absolute gets may be used on the returned buffer, since
+     * the other consumers read the same one; KmerEncoder.sequence(ByteBuffer) does so.
+     * @param consumer int, index of the consumer, from 0
+     * @return ByteBuffer holding the next bytes of sequence data, or null once the input has ended
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public ByteBuffer take(int consumer) throws InterruptedException {
+        ByteBuffer next = queues.get(consumer).take();
+        return next == END_OF_INPUT ? null : next;
+    }
+
+    private void publish() {
+        if (length == 0) {
+            return;
+        }
+        ByteBuffer published = ByteBuffer.wrap(block, 0, length).asReadOnlyBuffer();
+        for (BlockingQueue<ByteBuffer> queue : queues) {
+            put(queue, published);
+        }
+        block = new byte[BLOCK_BYTES];
+        length = 0;
+    }
+
+    private static void put(BlockingQueue<ByteBuffer> queue, ByteBuffer block) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(block);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
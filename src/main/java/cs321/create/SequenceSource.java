@@ -0,0 +1,102 @@
+package cs321.create;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A file of DNA sequences in some flat file format. A source knows where the sequence data of each
+ * record is and hands just those runs of bases to a GeneBankParser.SequenceHandler, such as a KmerEncoder,
+ * calling endOfRecord() between records, so everything downstream of it works on any format.
+ * <p>
+ * GenBank (.gbk) and FASTA (.fasta, .fa, .fna, .ffn, .fas) files are supported, either of them optionally
+ * gzip compressed (.gz). forFile() picks the implementation from the file name, and listFiles() expands a
+ * --gbkfile argument naming several files or a directory into the files to read.
+ */
+public interface SequenceSource
+{
+    String[] GENEBANK_EXTENSIONS = {".gbk"};
+    String[] FASTA_EXTENSIONS = {".fasta", ".fa", ".fna", ".ffn", ".fas"};
+
+    /**
+     * Reads the whole file and passes its sequence data to handler, in file order. The end of the file
+     * always ends a record.
+     * @param handler SequenceHandler receiving the sequence data
+     * @throws IOException if the file cannot be read
+     */
+    void read(GeneBankParser.SequenceHandler handler) throws IOException;
+
+    /**
+     * @return String, name of the file this source reads
+     */
+    String getFileName();
+
+    /**
+     * Creates the source for a GenBank or FASTA file, depending on its extension.
+     * @param filename String, name of the file, optionally ending in .gz
+     * @param threads int, number of threads a BGZF file may be decompressed with
+     * @return SequenceSource reading filename
+     */
+    static SequenceSource forFile(String filename, int threads) {
+        if (hasExtension(filename, FASTA_EXTENSIONS)) {
+            return new FastaSource(filename, threads);
+        }
+        return new GeneBankSource(filename, threads);
+    }
+
+    /**
+     * @param filename String, name of a file
+     * @return true if filename is a GenBank or FASTA file, optionally ending in .gz
+     */
+    static boolean isSequenceFile(String filename) {
+        return hasExtension(filename, GENEBANK_EXTENSIONS) || hasExtension(filename, FASTA_EXTENSIONS);
+    }
+
+    /**
+     * @param filename String, name of a file
+     * @return true if filename is a GenBank file, optionally ending in .gz
+     */
+    static boolean isGeneBankFile(String filename) {
+        return hasExtension(filename, GENEBANK_EXTENSIONS);
+    }
+
+    /**
+     * Expands a comma separated list of files and directories into the sequence files it names. A directory
+     * stands for every GenBank and FASTA file directly inside it, in name order; other files there are
+     * ignored. Files given by name are returned as given, without checking that they exist.
+     * @param argument String, for example "a.gbk", "a.gbk,b.fasta.gz" or "assembly/"
+     * @return List of file names, in the order given
+     * @throws IOException if a directory holds no sequence files
+     */
+    static List<String> listFiles(String argument) throws IOException {
+        List<String> files = new ArrayList<>();
+        for (String name : argument.split(",")) {
+            File file = new File(name);
+            if (!file.isDirectory()) {
+                files.add(name);
+                continue;
+            }
+            String[] children = file.list((dir, child) -> isSequenceFile(child));
+            if (children == null || children.length == 0) {
+                throw new IOException("No .gbk or FASTA files in directory " + name);
+            }
+            Arrays.sort(children);
+            for (String child : children) {
+                files.add(new File(file, child).getPath());
+            }
+        }
+        return files;
+    }
+
+    static boolean hasExtension(String filename, String[] extensions) {
+        String name = GeneBankInput.uncompressedName(filename).toLowerCase();
+        for (String extension : extensions) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -5,90 +5,71 @@ package cs321.create;
  */
 public class SequenceUtils
 {
+	public static final int CANONICAL_NONE = 0;
+	public static final int CANONICAL_COMPLEMENT = 1;
+	public static final int CANONICAL_REVERSE_COMPLEMENT = 2;
+
+	private static final char[] BASES = {'a', 'c', 'g', 't'};
 
 	/**
 	 * Converts a String to a long value based on a binary representation where
 	 * 'A' = 00, 'T' = 11, 'C' = 01, and 'G' = 10. Note: this method does not care
-	 * if input string is uppercase or lowercase or a mix.
+	 * if input string is uppercase or lowercase or a mix. Each base is shifted into
+	 * the low bits of the result, so the first base ends up in the highest bits.
 	 * @param DNAString	String formatted with only characters A, T, C, or G (or lowercase equivalent)
 	 * @return long value converted from binary as described above
 	 */
 	public static long DNAStringToLong(String DNAString)  {
-		String binaryString = "";
+		long sequence = 0;
 		for (int i = 0; i < DNAString.length(); i++) {
 			switch(DNAString.charAt(i)){
 				case 'a':
 				case 'A':
-					binaryString += "00";
+					sequence = sequence << 2;
 					break;
 				case 't':
 				case 'T':
-					binaryString += "11";
+					sequence = (sequence << 2) | 3;
 					break;
 				case 'c':
 				case 'C':
-					binaryString += "01";
+					sequence = (sequence << 2) | 1;
 					break;
 				case 'g':
 				case 'G':
-					binaryString += "10";
+					sequence = (sequence << 2) | 2;
 					break;
 			}
 		}
-		long sequence = Long.parseLong(binaryString,2);
 		return sequence;
 	}
 
 	/**
-	 * Takes a long value representing a DNA sequence of length seqLength. First converts
-	 * sequence to its binary representation using Long.toBinaryString(). Then adds leading
-	 * zeroes as necessary, which is required to properly include any 'A' bases at the start
-	 * of the sequence. Then parses this binary string and builds a String using the following:
-	 * "00" = 'a', "11" = 't', "01" = 'c', and "10" = 'g'
+	 * Takes a long value representing a DNA sequence of length seqLength and decodes it
+	 * two bits at a time, starting from the last base in the lowest bits, looking each
+	 * pair up in a table: 00 = 'a', 01 = 'c', 10 = 'g' and 11 = 't'. Leading 'a' bases
+	 * come out right because exactly seqLength pairs are decoded.
 	 * @param sequence long representation of DNA sequence
 	 * @param seqLength int number of chars in DNA sequence
 	 * @return String representation of DNA sequence
 	 */
 	public static String longToDNAString(long sequence, int seqLength) {
-		String binaryString = Long.toBinaryString(sequence);
-		if (binaryString.length() / 2 != seqLength) {
-			int leadingZeroes = (seqLength*2) - binaryString.length();
-			binaryString = "";
-			for (int i = 0; i < leadingZeroes; i++) {
-				binaryString += "0";
-			}
-			binaryString += Long.toBinaryString(sequence);
-		}
-		String DNAString = "";
-		for (int i = 0; i < binaryString.length(); i += 2) {
-			switch(binaryString.substring(i,i+2)) {
-				case "00":
-					DNAString += "a";
-					break;
-				case "11":
-					DNAString += "t";
-					break;
-				case "01":
-					DNAString += "c";
-					break;
-				case "10":
-					DNAString += "g";
-					break;
-			}
+		char[] DNAString = new char[seqLength];
+		for (int i = seqLength - 1; i >= 0; i--) {
+			DNAString[i] = BASES[(int) (sequence & 3)];
+			sequence >>>= 2;
 		}
-		return DNAString;
+		return new String(DNAString);
 	}
 
 	/**
 	 * Generates the complement of a DNA sequence, given in its long representation as a parameter.
 	 * DNA complement is such that "A" and "T" swap, and "C" and "G" swap. Because the binary
 	 * representation of these bases was chosen so that complements are also binary complements, we
-	 * can easily find the complement by flipping all bits that are included in the sequence, which
-	 * is calculated by seqLength*2. This procedure is equivalent to subtracting sequence from the
-	 * maximum value possible given seqLength*2 bits, or (2^(seqLength*2))-1. Thus, the final
-	 * formula used is (((2^(seqLength*2))-1)-sequence).
-	 * Example: sequence = 299, seqLength = 5. Sequence length 5 means 10 bits are used. The max
-	 * value achievable with 10 bits is 1023. 1023 - 299 = 724, which is the correct complement.
+	 * can find the complement by flipping the seqLength*2 bits that are included in the sequence,
+	 * which is an exclusive or with a mask of that many one bits.
+	 * Example: sequence = 299, seqLength = 5. Sequence length 5 means 10 bits are used, so the mask
+	 * is 1023. 299 ^ 1023 = 724, which is the correct complement.
 	 * (299 --> caggt  &  724 --> gtcca)
 	 *
 	 * @param sequence long representation of DNA sequence
@@ -96,8 +77,104 @@ public class SequenceUtils
 	 * @return long value of sequence's complement
 	 */
 	public static long getComplement(long sequence, int seqLength) {
-		long complement = ( (long) Math.pow( 2,(seqLength*2) ) - 1) - sequence;
-		return complement;
+		return sequence ^ mask(seqLength);
+	}
+
+	/**
+	 * Generates the reverse complement of a DNA sequence: the complement read backwards, which is
+	 * the sequence of the opposite strand. The complement is taken by flipping bits as in
+	 * getComplement(), then the order of the 2-bit bases is reversed by swapping neighbouring pairs,
+	 * nibbles and bytes, and the result is shifted back down to the low seqLength*2 bits.
+	 * Example: caggt --> complement gtcca --> reversed acctg.
+	 * @param sequence long representation of DNA sequence
+	 * @param seqLength integer value representing length of DNA sequence in chars
+	 * @return long value of sequence's reverse complement
+	 */
+	public static long getReverseComplement(long sequence, int seqLength) {
+		long x = ~sequence;
+		x = ((x >>> 2) & 0x3333333333333333L) | ((x & 0x3333333333333333L) << 2);
+		x = ((x >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((x & 0x0F0F0F0F0F0F0F0FL) << 4);
+		x = Long.reverseBytes(x);
+		return (x >>> (64 - 2 * seqLength)) & mask(seqLength);
+	}
+
+	/**
+	 * Maps a DNA sequence and its complement (or reverse complement) to the same key, the smaller
+	 * of the two, so a tree built from canonical keys answers a query and its complement with one
+	 * lookup.
+	 * @param sequence long representation of DNA sequence
+	 * @param seqLength integer value representing length of DNA sequence in chars
+	 * @param mode CANONICAL_NONE, CANONICAL_COMPLEMENT or CANONICAL_REVERSE_COMPLEMENT
+	 * @return long value of the canonical key; sequence itself for CANONICAL_NONE
+	 */
+	public static long canonical(long sequence, int seqLength, int mode) {
+		switch (mode) {
+			case CANONICAL_COMPLEMENT:
+				return Math.min(sequence, getComplement(sequence, seqLength));
+			case CANONICAL_REVERSE_COMPLEMENT:
+				return Math.min(sequence, getReverseComplement(sequence, seqLength));
+			default:
+				return sequence;
+		}
+	}
+
+	/**
+	 * Counts the sequences of length seqLength that differ from a given one in at least 1 and at most
+	 * distance bases: 3 per changed base, so 3*seqLength at distance 1 and 9 per pair of bases at distance 2.
+	 * @param seqLength integer value representing length of DNA sequence in chars
+	 * @param distance largest Hamming distance, 0, 1 or 2
+	 * @return number of neighbours neighbours() writes
+	 */
+	public static int countNeighbours(int seqLength, int distance) {
+		int count = 0;
+		if (distance >= 1) {
+			count += 3 * seqLength;
+		}
+		if (distance >= 2) {
+			count += 9 * (seqLength * (seqLength - 1) / 2);
+		}
+		return count;
+	}
+
+	/**
+	 * Writes every sequence at Hamming distance 1 up to distance from sequence, without building any
+	 * strings. Each base is 2 bits, and an exclusive or of a base with 1, 2 or 3 gives each of the
+	 * other three bases exactly once, so the neighbours are sequence ^ (v << 2*position) for every
+	 * position and v, and for distance 2 the same for every pair of positions. The neighbours are
+	 * all different and do not include sequence itself.
+	 * @param sequence long representation of DNA sequence
+	 * @param seqLength integer value representing length of DNA sequence in chars
+	 * @param distance largest Hamming distance, 0, 1 or 2
+	 * @param into array receiving the neighbours, distance 1 first
+	 * @param offset index of into to write the first neighbour at
+	 * @return number of neighbours written, countNeighbours(seqLength, distance)
+	 */
+	public static int neighbours(long sequence, int seqLength, int distance, long[] into, int offset) {
+		int n = offset;
+		if (distance >= 1) {
+			for (int i = 0; i < seqLength; i++) {
+				for (long v = 1; v <= 3; v++) {
+					into[n++] = sequence ^ (v << (2 * i));
+				}
+			}
+		}
+		if (distance >= 2) {
+			for (int i = 0; i < seqLength; i++) {
+				for (int j = i + 1; j < seqLength; j++) {
+					for (long v = 1; v <= 3; v++) {
+						long changed = sequence ^ (v << (2 * i));
+						for (long w = 1; w <= 3; w++) {
+							into[n++] = changed ^ (w << (2 * j));
+						}
+					}
+				}
+			}
+		}
+		return n - offset;
+	}
+
+	private static long mask(int seqLength) {
+		return (1L << (2 * seqLength)) - 1;
 	}
 
 }
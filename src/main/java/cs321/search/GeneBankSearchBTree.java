@@ -1,29 +1,46 @@
 package cs321.search;
 
 import cs321.btree.BTree;
-import cs321.btree.BTreeNode;
 import cs321.btree.MetaData;
 import cs321.btree.TreeObject;
 import cs321.common.Debug;
 import cs321.common.ParseArgumentException;
 import cs321.common.ParseArgumentUtils;
-import cs321.create.GeneBankCreateBTreeArguments;
 import cs321.create.SequenceUtils;
 
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileReader;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.util.Scanner;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class searches a B-Tree that is already created and stored somewhere in disk. First, the data file
  * containing B-Tree information is loaded into memory, with only the root node being in memory at first. Some
- * important information is stored in a separate .metadata file which should be located in the same directory
- * as the B-Tree datafile. User must also supply a query file as a command line argument. This query file
+ * important information, such as the degree and subsequence length of the tree, is read from the header at
+ * the start of the B-Tree datafile. User must also supply a query file as a command line argument. This query file
  * contains DNA sequence data in String format, each sequence on a new line. This program parses this file line
- * by line and searches the B-Tree for the given sequence before printing the results to standard out.
+ * by line and searches the B-Tree for the given sequence before printing the results to standard out. With
+ * --threads greater than 1 the queries are searched on several threads, but results are still printed in the
+ * order of the query file. With --batch=1 the queries are sorted and answered in one walk of the B-Tree.
+ * A query file line may also be a prefix query ("acg*") or a range query ("aaaaaa..acgtac"), which list
+ * every subsequence of the tree that starts with the prefix or lies in the range, see scan().
+ * With --serve, no query file is read; the B-Trees stay open and a QueryServer answers queries as they
+ * arrive on standard in or on a TCP port of the local machine. With --top=n, no query file is read either;
+ * the n most frequent subsequences of the tree are printed, see BTree.topN(). With --hamming=d, every query
+ * line also gets the combined frequency of all subsequences at Hamming distance 1 to d from it, see hammingSearch().
  * <p>
  * Note: This assumes that the arguments provided contain the full name of the B-Tree datafile, including any
  * subdirectories it may be stored in inside of the main working directory. Without this information properly
@@ -32,10 +49,12 @@ import java.util.Scanner;
  */
 public class GeneBankSearchBTree
 {
+    private static final int QUERY_BLOCK = 1 << 16;
+    private static final int BATCH_BLOCK = 1 << 22;
 
     /**
-     * Takes in a btreefile and loads a btree into memory. BTree files also have an associated *.metadata file
-     * that will be loaded automatically and does not need to be provided by the user. User must also provide
+     * Takes in a btreefile and loads a btree into memory. The degree and subsequence length are read from the
+     * header of the btreefile, so --degree and --length only need to be given as a sanity check. User must also provide
      * a query file. This program then parses that query file and searches the BTree for occurrences of the
      * DNA sequences contained within the query before printing these results to the console.
      * @param args command line args
@@ -44,57 +63,471 @@ public class GeneBankSearchBTree
     {
         GeneBankSearchBTreeArguments arguments = parseArgumentsAndHandleExceptions(args);
         Debug.init(arguments);
+        if (arguments.isServer()) {
+            serve(arguments);
+            Debug.exit();
+            return;
+        }
 
-        File metaFile = new File(arguments.getBTreeFileName() + ".metadata");
-        MetaData metadata = new MetaData(arguments.getDegree(),0,arguments.getDebugLevel(),new BTreeNode(arguments.getDegree()).getObjectSize(),0);
+        MetaData metadata = null;
         try {
-            if (!metaFile.exists()) {
-                throw new IOException(metaFile.getAbsolutePath() + " does not exist.");
-            } else {
-                ObjectInputStream in = new ObjectInputStream(new FileInputStream(metaFile));
-                metadata = (MetaData)in.readObject();
-                in.close();
-            }
+            metadata = MetaData.read(arguments.getBTreeFileName());
         } catch (IOException ioe) {
-            Debug.logError("Unable to read metadata file.");
+            Debug.logError("Unable to read B-Tree header.");
             Debug.logError(ioe.toString());
             ioe.printStackTrace();
-        } catch (ClassNotFoundException cnfe) {
-            Debug.logError("Metadata file is not in correct format.");
-            Debug.logError(cnfe.toString());
-            cnfe.printStackTrace();
+            System.exit(1);
+        }
+        if (arguments.getDegree() != 0 && arguments.getDegree() != metadata.getDegree()) {
+            Debug.logError("--degree=" + arguments.getDegree() + " does not match the B-Tree file, using "
+                    + metadata.getDegree() + ".");
+        }
+        if (arguments.getSubsequenceLength() != 0 && arguments.getSubsequenceLength() != metadata.getSubsequenceLength()) {
+            Debug.logError("--length=" + arguments.getSubsequenceLength() + " does not match the B-Tree file, using "
+                    + metadata.getSubsequenceLength() + ".");
+        }
+        int subsequenceLength = metadata.getSubsequenceLength();
+
+        BTree<?> bTree = new BTree<>(arguments,metadata);
+        if (arguments.getTop() > 0) {
+            List<TreeObject> top = bTree.topN(arguments.getTop());
+            for (TreeObject object : top) {
+                System.out.println(object.toString(subsequenceLength));
+            }
+            Debug.exit();
+            return;
         }
 
         File queryFile = new File(arguments.getQueryFileName());
-        BTree bTree = new BTree(arguments,metadata);
-        try {
-            Scanner fScan = new Scanner(queryFile);
-            while (fScan.hasNextLine()) {
-                String query = fScan.nextLine();
-                long sequence = SequenceUtils.DNAStringToLong(query);
-                long complement = SequenceUtils.getComplement(sequence,arguments.getSubsequenceLength());
-                int frequency = 0;
-                TreeObject node = bTree.search(sequence);
-                if (node != null) {
-                    frequency += node.getFrequency();   // get frequency of the sequence
+        int threads = arguments.getThreads();
+        boolean batch = arguments.isBatch();
+        int hamming = arguments.getHamming();
+        int blockSize = batch ? BATCH_BLOCK : QUERY_BLOCK;
+        if (hamming > 0) {
+            // keep the keys of a block, neighbours and complements included, around BATCH_BLOCK
+            blockSize = Math.max(1, BATCH_BLOCK / (2 * (1 + SequenceUtils.countNeighbours(subsequenceLength, hamming))));
+        }
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try (BufferedReader in = new BufferedReader(new FileReader(queryFile))) {
+            List<String> block = new ArrayList<>();
+            String query;
+            while ((query = in.readLine()) != null) {
+                if (isScanQuery(query)) {
+                    searchBlock(bTree, block, subsequenceLength, pool, threads, batch, hamming);
+                    block.clear();
+                    scan(bTree, query, subsequenceLength);
+                    continue;
                 }
-                node = bTree.search(complement);
-                if (node != null) {
-                    frequency += node.getFrequency();   // add the frequency of its complement
+                block.add(query);
+                if (block.size() == blockSize) {
+                    searchBlock(bTree, block, subsequenceLength, pool, threads, batch, hamming);
+                    block.clear();
                 }
-                System.out.println(query.toLowerCase() + " " + frequency);    // print results to console
             }
-            fScan.close();
+            searchBlock(bTree, block, subsequenceLength, pool, threads, batch, hamming);
         } catch (IOException ioe) {
             System.out.println(ioe.toString());
             ioe.printStackTrace();
         } catch (Exception e) {
             System.out.println(e.toString());
             e.printStackTrace();
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
         }
         Debug.exit();
     }
 
+    /**
+     * Opens every B-Tree named by --btreefile and answers queries with a QueryServer until standard in ends,
+     * or, when serving a TCP port, until the program is stopped. The port only accepts connections from the
+     * local machine.
+     * @param arguments parsed arguments, with --serve given
+     */
+    private static void serve(GeneBankSearchBTreeArguments arguments)
+    {
+        List<BTree> bTrees = new ArrayList<>();
+        for (String fileName : arguments.getBTreeFileNames()) {
+            try {
+                bTrees.add(new BTree(arguments.forBTreeFile(fileName), MetaData.read(fileName)));
+            } catch (IOException ioe) {
+                Debug.logError("Unable to read B-Tree header of " + fileName + ".");
+                Debug.logError(ioe.toString());
+                System.exit(1);
+            }
+        }
+        int threads = arguments.getThreads();
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            QueryServer server = new QueryServer(bTrees, pool, threads);
+            if (arguments.getServerPort() == GeneBankSearchBTreeArguments.STDIN_SERVER) {
+                server.serve(new BufferedReader(new InputStreamReader(System.in)),
+                        new BufferedWriter(new OutputStreamWriter(System.out)));
+            } else {
+                try (ServerSocket socket = new ServerSocket(arguments.getServerPort(), 50, InetAddress.getLoopbackAddress())) {
+                    System.out.println("Answering queries on " + socket.getLocalSocketAddress());
+                    server.listen(socket);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            Debug.logError(e.getMessage());
+        } catch (IOException ioe) {
+            System.out.println(ioe.toString());
+            ioe.printStackTrace();
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Looks up a block of queries and prints their results in the order of the block. With a pool,
+     * the block is cut into one contiguous slice per thread and the slices are searched at once;
+     * each result lands in its own slot of the frequency array, so printing afterwards keeps the
+     * original query order.
+     * @param bTree tree opened for searching
+     * @param block query lines, in file order
+     * @param subsequenceLength length of the subsequences in the tree
+     * @param pool threads to search with, or null to search on the calling thread
+     * @param threads number of threads in pool
+     * @param batch if true, the block is answered with batchSearch() instead of one search per query
+     * @param hamming if above 0, the block is answered with hammingSearch() up to this distance, and every
+     *                line also gets the frequency of the query's neighbourhood
+     * @throws Exception if searching a slice failed
+     */
+    private static void searchBlock(BTree bTree, List<String> block, int subsequenceLength,
+                                    ExecutorService pool, int threads, boolean batch, int hamming) throws Exception
+    {
+        int[] frequencies = new int[block.size()];
+        if (hamming > 0) {
+            long[] neighbourhood = new long[block.size()];
+            hammingSearch(bTree, block, subsequenceLength, hamming, pool, threads, frequencies, neighbourhood);
+            StringBuilder out = new StringBuilder();
+            for (int i = 0; i < block.size(); i++) {
+                out.append(block.get(i).toLowerCase()).append(' ').append(frequencies[i])
+                        .append(' ').append(neighbourhood[i]).append('\n');
+            }
+            System.out.print(out);
+            return;
+        }
+        if (batch) {
+            batchSearch(bTree, block, subsequenceLength, pool, threads, frequencies);
+        } else if (pool == null) {
+            for (int i = 0; i < block.size(); i++) {
+                frequencies[i] = countOccurrences(bTree, block.get(i), subsequenceLength);
+            }
+        } else {
+            List<Callable<Void>> slices = new ArrayList<>(threads);
+            int sliceSize = (block.size() + threads - 1) / threads;
+            for (int start = 0; start < block.size(); start += sliceSize) {
+                int from = start;
+                int to = Math.min(block.size(), start + sliceSize);
+                slices.add(() -> {
+                    for (int i = from; i < to; i++) {
+                        frequencies[i] = countOccurrences(bTree, block.get(i), subsequenceLength);
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> slice : pool.invokeAll(slices)) {
+                slice.get();    // rethrows anything a worker threw
+            }
+        }
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < block.size(); i++) {
+            out.append(block.get(i).toLowerCase()).append(' ').append(frequencies[i]).append('\n');
+        }
+        System.out.print(out);    // print results to console
+    }
+
+    /**
+     * Answers a block of queries with sorted walks of the tree instead of two root-to-leaf searches
+     * per query. Every query and its complement are encoded (or just the query's canonical key, if the
+     * tree was built with canonical keys), the keys are sorted and de-duplicated,
+     * and BTree.searchAll() looks them all up while reading each node on their paths once. With a
+     * pool, the sorted keys are cut into one range per thread and each range is walked separately,
+     * so only the upper levels shared by the ranges are read more than once. Each query then finds
+     * its frequencies by binary search in the sorted keys, which maps results back to the
+     * original query order.
+     * @param bTree tree opened for searching
+     * @param block query lines, in file order
+     * @param subsequenceLength length of the subsequences in the tree
+     * @param pool threads to search with, or null to search on the calling thread
+     * @param threads number of threads in pool
+     * @param frequencies receives the combined frequency of block.get(i) at index i
+     * @throws Exception if walking a range failed
+     */
+    static void batchSearch(BTree bTree, List<String> block, int subsequenceLength,
+                                    ExecutorService pool, int threads, int[] frequencies) throws Exception
+    {
+        long[] keys = queryKeys(block, subsequenceLength, bTree.getCanonicalMode());
+        long[] sorted = keys.clone();
+        int unique = sortUnique(sorted);
+
+        int[] found = lookUp(bTree, sorted, unique, pool, threads);
+        addUp(keys, sorted, unique, found, frequencies);
+    }
+
+    /**
+     * Answers a block of queries together with their Hamming neighbourhoods, every sequence that differs
+     * from the query in 1 up to distance bases. The neighbours are enumerated in 2-bit space by
+     * SequenceUtils.neighbours(), and they and their complements (or canonical keys) go into the same
+     * sorted, de-duplicated key array as the queries, so the whole block, neighbours included, is
+     * answered by the sorted walks of batchSearch() instead of one search per neighbour.
+     * @param bTree tree opened for searching
+     * @param block query lines, in file order
+     * @param subsequenceLength length of the subsequences in the tree
+     * @param distance largest Hamming distance, 1 or 2
+     * @param pool threads to search with, or null to search on the calling thread
+     * @param threads number of threads in pool
+     * @param exact receives the combined frequency of block.get(i) at index i
+     * @param neighbourhood receives the sum of the combined frequencies of the neighbours of block.get(i)
+     *                      at index i, the query itself not included
+     * @throws Exception if walking a range failed
+     */
+    static void hammingSearch(BTree bTree, List<String> block, int subsequenceLength, int distance,
+                              ExecutorService pool, int threads, int[] exact, long[] neighbourhood) throws Exception
+    {
+        int canonicalMode = bTree.getCanonicalMode();
+        int keysPerSequence = canonicalMode == SequenceUtils.CANONICAL_NONE ? 2 : 1;
+        int sequencesPerQuery = 1 + SequenceUtils.countNeighbours(subsequenceLength, distance);
+        long[] sequences = new long[sequencesPerQuery];
+        long[] keys = new long[block.size() * sequencesPerQuery * keysPerSequence];
+        int k = 0;
+        for (String query : block) {
+            sequences[0] = SequenceUtils.DNAStringToLong(query);
+            SequenceUtils.neighbours(sequences[0], subsequenceLength, distance, sequences, 1);
+            for (long sequence : sequences) {
+                if (keysPerSequence == 1) {
+                    keys[k++] = SequenceUtils.canonical(sequence, subsequenceLength, canonicalMode);
+                } else {
+                    keys[k++] = sequence;
+                    keys[k++] = SequenceUtils.getComplement(sequence, subsequenceLength);
+                }
+            }
+        }
+        // with a Bloom filter, the keys it rules out are dropped before sorting, which for long
+        // subsequences leaves only a small fraction of the neighbours
+        long[] sorted = new long[keys.length];
+        int candidates = 0;
+        for (long key : keys) {
+            if (bTree.mightContain(key)) {
+                sorted[candidates++] = key;
+            }
+        }
+        sorted = Arrays.copyOf(sorted, candidates);
+        int unique = sortUnique(sorted);
+
+        int[] found = lookUp(bTree, sorted, unique, pool, threads);
+        // most neighbours are not in the tree, so the keys are mapped back through only the ones that
+        // were found, which keeps the binary searches short and in cache
+        int hits = 0;
+        for (int i = 0; i < unique; i++) {
+            if (found[i] != 0) {
+                sorted[hits] = sorted[i];
+                found[hits++] = found[i];
+            }
+        }
+        int keysPerQuery = sequencesPerQuery * keysPerSequence;
+        for (int i = 0; i < block.size(); i++) {
+            exact[i] = 0;
+            neighbourhood[i] = 0;
+            for (int j = i * keysPerQuery; j < (i + 1) * keysPerQuery; j++) {
+                int hit = Arrays.binarySearch(sorted, 0, hits, keys[j]);
+                if (hit < 0) {
+                    continue;
+                }
+                if (j < i * keysPerQuery + keysPerSequence) {
+                    exact[i] += found[hit];
+                } else {
+                    neighbourhood[i] += found[hit];
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up sorted distinct keys with BTree.searchAll(). With a pool, the keys are cut into one range
+     * per thread and each range is walked separately, so only the upper levels shared by the ranges are
+     * read more than once.
+     * @param bTree tree opened for searching
+     * @param sorted distinct keys, as left by sortUnique()
+     * @param unique number of distinct keys in sorted
+     * @param pool threads to search with, or null to search on the calling thread
+     * @param threads number of threads in pool
+     * @return frequency of sorted[i] at index i, 0 for keys that are not in the tree
+     * @throws Exception if walking a range failed
+     */
+    private static int[] lookUp(BTree bTree, long[] sorted, int unique, ExecutorService pool, int threads) throws Exception
+    {
+        int[] found = new int[unique];
+        if (pool == null) {
+            bTree.searchAll(sorted, 0, unique, found);
+        } else {
+            List<Callable<Void>> ranges = new ArrayList<>(threads);
+            int rangeSize = (unique + threads - 1) / threads;
+            for (int start = 0; start < unique; start += rangeSize) {
+                int from = start;
+                int to = Math.min(unique, start + rangeSize);
+                ranges.add(() -> {
+                    bTree.searchAll(sorted, from, to, found);
+                    return null;
+                });
+            }
+            for (Future<Void> range : pool.invokeAll(ranges)) {
+                range.get();    // rethrows anything a worker threw
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Encodes a block of queries into the keys they are looked up under: every query and its complement,
+     * or just the query's canonical key if the tree was built with canonical keys.
+     * @param block query lines
+     * @param subsequenceLength length of the subsequences in the tree
+     * @param canonicalMode canonical mode of the tree's keys
+     * @return the keys in query order: two per query, the query and then its complement, or one per query,
+     *         its canonical key
+     */
+    static long[] queryKeys(List<String> block, int subsequenceLength, int canonicalMode)
+    {
+        int keysPerQuery = canonicalMode == SequenceUtils.CANONICAL_NONE ? 2 : 1;
+        long[] keys = new long[block.size() * keysPerQuery];
+        for (int i = 0; i < block.size(); i++) {
+            long sequence = SequenceUtils.DNAStringToLong(block.get(i));
+            if (keysPerQuery == 1) {
+                keys[i] = SequenceUtils.canonical(sequence, subsequenceLength, canonicalMode);
+            } else {
+                keys[2*i] = sequence;
+                keys[2*i + 1] = SequenceUtils.getComplement(sequence,subsequenceLength);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Sorts keys and moves each distinct key once to its front.
+     * @param keys keys to sort, sorted and de-duplicated in place
+     * @return number of distinct keys at the front of keys
+     */
+    static int sortUnique(long[] keys)
+    {
+        Arrays.sort(keys);
+        int unique = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (unique == 0 || keys[unique - 1] != keys[i]) {
+                keys[unique++] = keys[i];
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Adds up the frequencies found for the keys of every query.
+     * @param keys keys of the queries, as returned by queryKeys()
+     * @param sorted distinct keys, as left by sortUnique()
+     * @param unique number of distinct keys in sorted
+     * @param found frequency of sorted[i] at index i
+     * @param frequencies receives the combined frequency of query i at index i
+     */
+    static void addUp(long[] keys, long[] sorted, int unique, int[] found, int[] frequencies)
+    {
+        if (frequencies.length == 0) {
+            return;
+        }
+        int keysPerQuery = keys.length / frequencies.length;
+        for (int i = 0; i < frequencies.length; i++) {
+            frequencies[i] = 0;
+            for (int j = i * keysPerQuery; j < (i + 1) * keysPerQuery; j++) {
+                frequencies[i] += found[Arrays.binarySearch(sorted, 0, unique, keys[j])];
+            }
+        }
+    }
+
+    /**
+     * @param query line of the query file
+     * @return true if query is a prefix query, ending in '*', or a range query, holding ".."
+     */
+    static boolean isScanQuery(String query)
+    {
+        return query.endsWith("*") || query.contains("..");
+    }
+
+    /**
+     * Answers a prefix or range query with BTree.scan(), which on a B+ tree descends once and then
+     * reads the leaves in order. Prints the query and the total frequency of the subsequences it
+     * matched, followed by every match in key order, in the format of the dump file. The matches
+     * are the keys as stored, so complements are not added in, and a tree built with canonical keys
+     * lists only canonical subsequences.
+     * @param bTree tree opened for searching
+     * @param query prefix of at most subsequenceLength bases followed by '*', or two subsequences of
+     *              subsequenceLength bases separated by "..", the bounds of the range, both included
+     * @param subsequenceLength length of the subsequences in the tree
+     */
+    private static void scan(BTree bTree, String query, int subsequenceLength)
+    {
+        long from;
+        long to;
+        int range = query.indexOf("..");
+        if (range >= 0) {
+            String low = query.substring(0, range);
+            String high = query.substring(range + 2);
+            if (low.length() != subsequenceLength || high.length() != subsequenceLength) {
+                Debug.logError("Range " + query + " must be bounded by two subsequences of length " + subsequenceLength + ".");
+                return;
+            }
+            from = SequenceUtils.DNAStringToLong(low);
+            to = SequenceUtils.DNAStringToLong(high);
+        } else {
+            String prefix = query.substring(0, query.length() - 1);
+            if (prefix.length() > subsequenceLength) {
+                Debug.logError("Prefix " + query + " is longer than the subsequences of length " + subsequenceLength + ".");
+                return;
+            }
+            int freeBits = 2 * (subsequenceLength - prefix.length());
+            from = SequenceUtils.DNAStringToLong(prefix) << freeBits;
+            to = from | ((1L << freeBits) - 1);
+        }
+        StringBuilder matches = new StringBuilder();
+        long[] total = new long[1];
+        bTree.scan(from, to, (key, frequency) -> {
+            matches.append(SequenceUtils.longToDNAString(key, subsequenceLength)).append(' ').append(frequency).append('\n');
+            total[0] += frequency;
+        });
+        System.out.print(query.toLowerCase() + " " + total[0] + "\n" + matches);
+    }
+
+    /**
+     * Adds up how often a query sequence and its complement occur in the tree. If the tree was built
+     * with canonical keys, both are stored under one key and a single search is enough.
+     * @param bTree tree opened for searching
+     * @param query DNA sequence
+     * @param subsequenceLength length of the subsequences in the tree
+     * @return combined frequency
+     */
+    private static int countOccurrences(BTree bTree, String query, int subsequenceLength)
+    {
+        long sequence = SequenceUtils.DNAStringToLong(query);
+        if (bTree.getCanonicalMode() != SequenceUtils.CANONICAL_NONE) {
+            TreeObject node = bTree.search(SequenceUtils.canonical(sequence, subsequenceLength, bTree.getCanonicalMode()));
+            return node == null ? 0 : node.getFrequency();
+        }
+        long complement = SequenceUtils.getComplement(sequence,subsequenceLength);
+        int frequency = 0;
+        TreeObject node = bTree.search(sequence);
+        if (node != null) {
+            frequency += node.getFrequency();   // get frequency of the sequence
+        }
+        node = bTree.search(complement);
+        if (node != null) {
+            frequency += node.getFrequency();   // add the frequency of its complement
+        }
+        return frequency;
+    }
+
     /**
      * Parses command line arguments, confirms their validity, and handles any exceptions thrown due to
      * incorrectly provided arguments
@@ -122,8 +555,12 @@ public class GeneBankSearchBTree
     private static void printUsageAndExit(String errorMessage)
     {
         String usageMessage = "Usage: java -jar build/libs/GeneBankSearchBTree.jar --cache=<0/1> " +
-                "--degree=<btree degree> --btreefile=<BTree file> --length=<sequence length> " +
-                "--queryfile=<query file> [--cachesize=<n>] [--debug=0|1|2]";
+                "--btreefile=<BTree file> --queryfile=<query file> [--degree=<btree degree>] " +
+                "[--length=<sequence length>] [--cachesize=<n>] [--debug=0|1|2] [--mmap=<0|1>] [--threads=<n>] [--batch=<0|1>] [--hamming=<1|2>]\n" +
+                "   or: java -jar build/libs/GeneBankSearchBTree.jar --cache=<0/1> --btreefile=<BTree file> " +
+                "--top=<n> [--cachesize=<n>] [--debug=0|1|2] [--mmap=<0|1>]\n" +
+                "   or: java -jar build/libs/GeneBankSearchBTree.jar --cache=<0/1> --btreefile=<BTree file>[,<BTree file>...] " +
+                "--serve=<stdin|port> [--cachesize=<n>] [--debug=0|1|2] [--mmap=<0|1>] [--threads=<n>]";
         System.out.println(usageMessage);
         System.exit(1);
     }
@@ -145,6 +582,12 @@ public class GeneBankSearchBTree
             subsequenceLength = 0, 
             cacheSize = 0, 
             debugLevel = 0;
+        boolean useMemoryMap = false;
+        int threads = 1;
+        boolean batch = false;
+        int serverPort = GeneBankSearchBTreeArguments.NO_SERVER;
+        int top = 0;
+        int hamming = 0;
 
         String[] validFlags = {
             "cache",
@@ -154,7 +597,13 @@ public class GeneBankSearchBTree
             "cachesize",
             "debug", 
             "btreefile", 
-            "queryfile"
+            "queryfile",
+            "mmap",
+            "threads",
+            "batch",
+            "serve",
+            "top",
+            "hamming"
         };
 
         for(String thisArg : args) {
@@ -213,6 +662,36 @@ public class GeneBankSearchBTree
                             debugLevel = ParseArgumentUtils.convertStringToInt(argValue);
                             ParseArgumentUtils.verifyRanges(debugLevel, 0, 2);
                             break;
+                        case "mmap":
+                            int useMemoryMapInt = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(useMemoryMapInt, 0, 1);
+                            useMemoryMap = useMemoryMapInt == 1;
+                            break;
+                        case "threads":
+                            threads = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(threads, 1, 256);
+                            break;
+                        case "batch":
+                            int batchInt = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(batchInt, 0, 1);
+                            batch = batchInt == 1;
+                            break;
+                        case "serve":
+                            if (argValue.equals("stdin")) {
+                                serverPort = GeneBankSearchBTreeArguments.STDIN_SERVER;
+                            } else {
+                                serverPort = ParseArgumentUtils.convertStringToInt(argValue);
+                                ParseArgumentUtils.verifyRanges(serverPort, 1, 65535);
+                            }
+                            break;
+                        case "top":
+                            top = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(top, 1, Integer.MAX_VALUE);
+                            break;
+                        case "hamming":
+                            hamming = ParseArgumentUtils.convertStringToInt(argValue);
+                            ParseArgumentUtils.verifyRanges(hamming, 0, 2);
+                            break;
                     }
                 }
         }
@@ -224,14 +703,28 @@ public class GeneBankSearchBTree
             if(useCache && cacheSize == 0) {
                 throw new ParseArgumentException("Using cache, but no --cachesize specified.");
             }
-            //btreefile and queryfile dont have extensions (regular files), cant check here
-            if(degree == 0){
-                degree = ParseArgumentUtils.findOptimalDegree();
+            if(serverPort == GeneBankSearchBTreeArguments.NO_SERVER && bTreeFileName.contains(",")) {
+                throw new ParseArgumentException("Several B-Tree files can only be given with --serve.");
             }
+            if(serverPort != GeneBankSearchBTreeArguments.NO_SERVER && top != 0) {
+                throw new ParseArgumentException("--top cannot be combined with --serve.");
+            }
+            if(hamming != 0 && (serverPort != GeneBankSearchBTreeArguments.NO_SERVER || top != 0)) {
+                throw new ParseArgumentException("--hamming only applies to a query file.");
+            }
+            //btreefile and queryfile dont have extensions (regular files), cant check here
+            //degree and length default to 0, meaning "take them from the B-Tree file header"
             //debugLevel already set to default 0
 
         //Debug.log("Arguments validated! Searching BTree...");
-        return new GeneBankSearchBTreeArguments(useCache, degree, bTreeFileName, subsequenceLength, queryFileName, cacheSize, debugLevel);
+        return new GeneBankSearchBTreeArguments.Builder(useCache, degree, bTreeFileName, subsequenceLength, queryFileName, cacheSize, debugLevel)
+                .memoryMap(useMemoryMap)
+                .threads(threads)
+                .batch(batch)
+                .serverPort(serverPort)
+                .top(top)
+                .hamming(hamming)
+                .build();
     }
 
 }
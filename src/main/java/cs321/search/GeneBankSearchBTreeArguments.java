@@ -5,6 +5,9 @@ package cs321.search;
  */
 public class GeneBankSearchBTreeArguments
 {
+    public static final int NO_SERVER = -1;
+    public static final int STDIN_SERVER = 0;
+
     private final boolean useCache;
     private final int degree;
     private final String bTreeFileName;
@@ -12,12 +15,18 @@ public class GeneBankSearchBTreeArguments
     private final String queryFileName;
     private final int cacheSize;
     private final int debugLevel;
+    private final boolean useMemoryMap;
+    private final int threads;
+    private final boolean batch;
+    private final int serverPort;
+    private final int top;
+    private final int hamming;
 
     /**
      * Constructor for GeneBankSearchBTreeArguments object.
      * @param useCache boolean, whether or not the BTree is utilizing a cache
      * @param degree int, the degree of the B-Tree
-     * @param bTreeFileName String, the name of the datafile containing the B-Tree
+     * @param bTreeFileName String, the name of the datafile containing the B-Tree, or a comma separated list of them when serving
      * @param subsequenceLength int, the length of DNA subsequences contained in the B-Tree
      * @param queryFileName String, the name of the query file containing search queries
      * @param cacheSize int, the size of the cache if a cache is being used
@@ -25,13 +34,24 @@ public class GeneBankSearchBTreeArguments
      */
     public GeneBankSearchBTreeArguments(boolean useCache, int degree, String bTreeFileName, int subsequenceLength, String queryFileName, int cacheSize, int debugLevel)
     {
-        this.useCache = useCache;
-        this.degree = degree;
-        this.bTreeFileName = bTreeFileName;
-        this.subsequenceLength = subsequenceLength;
-        this.queryFileName = queryFileName;
-        this.cacheSize = cacheSize;
-        this.debugLevel = debugLevel;
+        this(new Builder(useCache, degree, bTreeFileName, subsequenceLength, queryFileName, cacheSize, debugLevel));
+    }
+
+    private GeneBankSearchBTreeArguments(Builder builder)
+    {
+        this.useCache = builder.useCache;
+        this.degree = builder.degree;
+        this.bTreeFileName = builder.bTreeFileName;
+        this.subsequenceLength = builder.subsequenceLength;
+        this.queryFileName = builder.queryFileName;
+        this.cacheSize = builder.cacheSize;
+        this.debugLevel = builder.debugLevel;
+        this.useMemoryMap = builder.useMemoryMap;
+        this.threads = builder.threads;
+        this.batch = builder.batch;
+        this.serverPort = builder.serverPort;
+        this.top = builder.top;
+        this.hamming = builder.hamming;
     }
 
     /**
@@ -58,6 +78,30 @@ public class GeneBankSearchBTreeArguments
         return bTreeFileName;
     }
 
+    /**
+     * The B-Tree data files named by --btreefile, which holds a comma separated list when serving several trees.
+     * @return String[] of B-Tree file names
+     */
+    public String[] getBTreeFileNames() {
+        return bTreeFileName.split(",");
+    }
+
+    /**
+     * Copy of these arguments for one of the B-Tree files being served.
+     * @param fileName String, name of the B-Tree data file
+     * @return GeneBankSearchBTreeArguments naming only fileName
+     */
+    public GeneBankSearchBTreeArguments forBTreeFile(String fileName) {
+        return new Builder(useCache, degree, fileName, subsequenceLength, queryFileName, cacheSize, debugLevel)
+                .memoryMap(useMemoryMap)
+                .threads(threads)
+                .batch(batch)
+                .serverPort(serverPort)
+                .top(top)
+                .hamming(hamming)
+                .build();
+    }
+
     /**
      * The length of DNA subsequences stored in the B-Tree
      * @return int subsequenceLength
@@ -88,6 +132,63 @@ public class GeneBankSearchBTreeArguments
         return debugLevel;
     }
 
+    /**
+     * Gets whether B-Tree nodes are accessed through a memory-mapped file.
+     * @return true if memory mapping the data file, false if using channel reads
+     */
+    public boolean isUsingMemoryMap() {
+        return useMemoryMap;
+    }
+
+    /**
+     * The number of threads the query file is spread across.
+     * @return int threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Gets whether the query file is answered with one sorted walk of the B-Tree instead of
+     * two root-to-leaf searches per query.
+     * @return true if searching in batch mode, false if not
+     */
+    public boolean isBatch() {
+        return batch;
+    }
+
+    /**
+     * The port queries are answered on in server mode.
+     * @return int TCP port, STDIN_SERVER for standard in, or NO_SERVER when answering a query file
+     */
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    /**
+     * Gets whether the program keeps its B-Trees open and answers queries as they arrive.
+     * @return true if running as a query server
+     */
+    public boolean isServer() {
+        return serverPort != NO_SERVER;
+    }
+
+    /**
+     * The number of most frequent subsequences to print instead of answering a query file.
+     * @return int top, 0 if no top-N query was asked for
+     */
+    public int getTop() {
+        return top;
+    }
+
+    /**
+     * The largest Hamming distance of the neighbours whose frequency is reported next to every query.
+     * @return int hamming, 0 if only exact matches are counted
+     */
+    public int getHamming() {
+        return hamming;
+    }
+
     @Override
     public boolean equals(Object obj)
     {
@@ -153,6 +254,30 @@ public class GeneBankSearchBTreeArguments
         {
             return false;
         }
+        if (useMemoryMap != other.useMemoryMap)
+        {
+            return false;
+        }
+        if (threads != other.threads)
+        {
+            return false;
+        }
+        if (batch != other.batch)
+        {
+            return false;
+        }
+        if (serverPort != other.serverPort)
+        {
+            return false;
+        }
+        if (top != other.top)
+        {
+            return false;
+        }
+        if (hamming != other.hamming)
+        {
+            return false;
+        }
         return true;
     }
 
@@ -168,6 +293,104 @@ public class GeneBankSearchBTreeArguments
                 ", queryFileName='" + queryFileName + '\'' +
                 ", cacheSize=" + cacheSize +
                 ", debugLevel=" + debugLevel +
+                ", useMemoryMap=" + useMemoryMap +
+                ", threads=" + threads +
+                ", batch=" + batch +
+                ", serverPort=" + serverPort +
+                ", top=" + top +
+                ", hamming=" + hamming +
                 '}';
     }
+
+    /**
+     * Collects the arguments of GeneBankSearchBTree. The constructor takes the ones of the constructor of
+     * GeneBankSearchBTreeArguments; every other one starts out as a plain run would have it: channel reads,
+     * one thread, one search per query, a query file instead of a server, and no top-N or Hamming search.
+     */
+    public static class Builder
+    {
+        private final boolean useCache;
+        private final int degree;
+        private final String bTreeFileName;
+        private final int subsequenceLength;
+        private final String queryFileName;
+        private final int cacheSize;
+        private final int debugLevel;
+        private boolean useMemoryMap = false;
+        private int threads = 1;
+        private boolean batch = false;
+        private int serverPort = NO_SERVER;
+        private int top = 0;
+        private int hamming = 0;
+
+        public Builder(boolean useCache, int degree, String bTreeFileName, int subsequenceLength, String queryFileName, int cacheSize, int debugLevel)
+        {
+            this.useCache = useCache;
+            this.degree = degree;
+            this.bTreeFileName = bTreeFileName;
+            this.subsequenceLength = subsequenceLength;
+            this.queryFileName = queryFileName;
+            this.cacheSize = cacheSize;
+            this.debugLevel = debugLevel;
+        }
+
+        /**
+         * @param useMemoryMap whether the datafile is memory mapped instead of read through a channel
+         * @return this
+         */
+        public Builder memoryMap(boolean useMemoryMap) {
+            this.useMemoryMap = useMemoryMap;
+            return this;
+        }
+
+        /**
+         * @param threads number of threads searching the B-Tree
+         * @return this
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param batch whether queries are sorted and answered in one walk of the B-Tree
+         * @return this
+         */
+        public Builder batch(boolean batch) {
+            this.batch = batch;
+            return this;
+        }
+
+        /**
+         * @param serverPort TCP port to answer queries on, STDIN_SERVER to answer them on standard in,
+         *                   or NO_SERVER to answer the query file and exit
+         * @return this
+         */
+        public Builder serverPort(int serverPort) {
+            this.serverPort = serverPort;
+            return this;
+        }
+
+        /**
+         * @param top number of most frequent subsequences to print instead of answering a query file, or 0
+         * @return this
+         */
+        public Builder top(int top) {
+            this.top = top;
+            return this;
+        }
+
+        /**
+         * @param hamming largest Hamming distance of the neighbours counted for every query, or 0 for none
+         * @return this
+         */
+        public Builder hamming(int hamming) {
+            this.hamming = hamming;
+            return this;
+        }
+
+        public GeneBankSearchBTreeArguments build() {
+            return new GeneBankSearchBTreeArguments(this);
+        }
+    }
 }
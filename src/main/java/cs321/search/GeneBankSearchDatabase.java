@@ -1,16 +1,163 @@
 package cs321.search;
 
-import cs321.btree.BTree;
+import cs321.common.Debug;
 import cs321.common.ParseArgumentException;
 import cs321.common.ParseArgumentUtils;
+import cs321.create.DatabaseExporter;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Answers a query file from the SQLite database that GeneBankCreateBTree writes with --database=1 (see
+ * DatabaseExporter), instead of from the B-Tree file. The output is the same as GeneBankSearchBTree's: one line
+ * "query frequency" per query, in the order of the query file, where the frequency adds up the query and its
+ * complement (or is the frequency of its canonical key, if the tree was built with canonical keys).
+ * <p>
+ * Queries are not sent to the database one at a time. Every block of QUERY_BLOCK queries is encoded into keys,
+ * which are sorted, de-duplicated and loaded into a temporary table in one transaction; a single join of that
+ * table with the subsequences table, through its key index, then answers the whole block. The frequencies are
+ * mapped back to the queries exactly as in GeneBankSearchBTree.batchSearch().
+ */
 public class GeneBankSearchDatabase
 {
+    private static final int QUERY_BLOCK = 1 << 16;
+    private static final int BATCH_ROWS = 10000;
 
-    public static void main(String[] args) throws Exception
+    /**
+     * Opens the database named on the command line and prints the frequency of every query in the query file.
+     * @param args command line args: database file, query file and optionally the debug level
+     */
+    public static void main(String[] args)
     {
-        System.out.println("Hello world from cs321.search.GeneBankSearchDatabase.main");
+        GeneBankSearchDatabaseArguments arguments = null;
+        try {
+            arguments = parseArguments(args);
+        } catch (ParseArgumentException e) {
+            printUsageAndExit(e.getMessage());
+        }
+        Debug.setlocalDebugLevel(arguments.getDebugLevel());
+        if (!new File(arguments.getSqliteDatabasePath()).isFile()) {
+            Debug.logError(new File(arguments.getSqliteDatabasePath()).getAbsolutePath() + " does not exist.");
+            System.exit(1);
+        }
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + arguments.getSqliteDatabasePath());
+             BufferedReader in = new BufferedReader(new FileReader(arguments.getQueryFileName()))) {
+            int subsequenceLength = readInfo(connection, DatabaseExporter.SUBSEQUENCE_LENGTH);
+            int canonicalMode = readInfo(connection, DatabaseExporter.CANONICAL_MODE);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TEMP TABLE queries (key INTEGER PRIMARY KEY)");
+            }
+            connection.setAutoCommit(false);
+            List<String> block = new ArrayList<>();
+            String query;
+            while ((query = in.readLine()) != null) {
+                block.add(query);
+                if (block.size() == QUERY_BLOCK) {
+                    printBlock(connection, block, subsequenceLength, canonicalMode);
+                    block.clear();
+                }
+            }
+            printBlock(connection, block, subsequenceLength, canonicalMode);
+        } catch (IOException ioe) {
+            System.out.println(ioe.toString());
+            ioe.printStackTrace();
+        } catch (SQLException e) {
+            System.out.println(e.toString());
+            e.printStackTrace();
+        }
+    }
 
+    /**
+     * Looks up a block of queries and prints their results in the order of the block.
+     * @param connection open connection to the database, not in auto-commit mode
+     * @param block query lines, in file order
+     * @param subsequenceLength length of the subsequences in the database
+     * @param canonicalMode canonical mode of the keys in the database
+     * @throws SQLException if the database could not be searched
+     */
+    private static void printBlock(Connection connection, List<String> block, int subsequenceLength, int canonicalMode)
+            throws SQLException
+    {
+        int[] frequencies = new int[block.size()];
+        search(connection, block, subsequenceLength, canonicalMode, frequencies);
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < block.size(); i++) {
+            out.append(block.get(i).toLowerCase()).append(' ').append(frequencies[i]).append('\n');
+        }
+        System.out.print(out);
+    }
+
+    /**
+     * Answers a block of queries with one join: their distinct keys replace the contents of the temporary
+     * queries table, which is then joined with the subsequences table.
+     * @param connection open connection to the database, not in auto-commit mode, with the temporary queries table
+     * @param block query lines
+     * @param subsequenceLength length of the subsequences in the database
+     * @param canonicalMode canonical mode of the keys in the database
+     * @param frequencies receives the combined frequency of block.get(i) at index i
+     * @throws SQLException if the database could not be searched
+     */
+    static void search(Connection connection, List<String> block, int subsequenceLength, int canonicalMode,
+                       int[] frequencies) throws SQLException
+    {
+        long[] keys = GeneBankSearchBTree.queryKeys(block, subsequenceLength, canonicalMode);
+        long[] sorted = keys.clone();
+        int unique = GeneBankSearchBTree.sortUnique(sorted);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM temp.queries");
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO temp.queries VALUES (?)")) {
+            for (int i = 0; i < unique; i++) {
+                insert.setLong(1, sorted[i]);
+                insert.addBatch();
+                if ((i + 1) % BATCH_ROWS == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+
+        int[] found = new int[unique];
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT s.key, s.frequency FROM temp.queries q JOIN "
+                     + DatabaseExporter.TABLE + " s ON s.key = q.key")) {
+            while (rows.next()) {
+                found[Arrays.binarySearch(sorted, 0, unique, rows.getLong(1))] = rows.getInt(2);
+            }
+        }
+        connection.commit();
+        GeneBankSearchBTree.addUp(keys, sorted, unique, found, frequencies);
+    }
+
+    /**
+     * Reads a value of the info table.
+     * @throws SQLException if the database has no such value, so it was not written by DatabaseExporter
+     */
+    private static int readInfo(Connection connection, String name) throws SQLException
+    {
+        try (PreparedStatement select = connection.prepareStatement("SELECT value FROM " + DatabaseExporter.INFO_TABLE
+                + " WHERE name = ?")) {
+            select.setString(1, name);
+            try (ResultSet rows = select.executeQuery()) {
+                if (!rows.next()) {
+                    throw new SQLException("The database has no " + name + "; was it written by GeneBankCreateBTree --database=1?");
+                }
+                return rows.getInt(1);
+            }
+        }
     }
 
     private static void printUsageAndExit(String errorMessage)
@@ -21,4 +168,23 @@ public class GeneBankSearchDatabase
         System.exit(1);
     }
 
+    /**
+     * Parses arguments as provided in the command line: the database file, the query file and an optional
+     * debug level, in this order.
+     * @param args command line args
+     * @return GeneBankSearchDatabaseArguments correctly parsed and validated
+     * @throws ParseArgumentException if there are too few or too many arguments, or the debug level is invalid
+     */
+    public static GeneBankSearchDatabaseArguments parseArguments(String[] args) throws ParseArgumentException
+    {
+        if (args.length < 2 || args.length > 3) {
+            throw new ParseArgumentException("Expected a database file, a query file and optionally a debug level.");
+        }
+        int debugLevel = 0;
+        if (args.length == 3) {
+            debugLevel = ParseArgumentUtils.convertStringToInt(args[2]);
+            ParseArgumentUtils.verifyRanges(debugLevel, 0, 1);
+        }
+        return new GeneBankSearchDatabaseArguments(args[0], args[1], debugLevel);
+    }
 }
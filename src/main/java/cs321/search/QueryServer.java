@@ -0,0 +1,178 @@
+package cs321.search;
+
+import cs321.btree.BTree;
+import cs321.common.Debug;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Keeps one or more B-Trees open and answers queries as they arrive, so a client sending many small
+ * query batches pays for opening the trees and warming their caches only once.
+ * <p>
+ * The protocol is line based, over a TCP connection or standard in and out. Every line is a query; the
+ * answer is the line "query frequency", exactly as GeneBankSearchBTree prints it for a query file, or
+ * "error: ..." for a query that cannot be answered. Blank lines are skipped. Answers come back in the
+ * order of the queries, so a client may send any number of queries before reading the answers. Each
+ * query is answered by the tree whose subsequence length equals the query's length, which is why two
+ * served trees must not share a length.
+ * <p>
+ * Queries are answered in batches: the server reads every line that has already arrived (up to
+ * MAX_BATCH), answers them with one sorted walk per tree, and flushes the answers before waiting for
+ * more. A client that pipelines its queries therefore gets them answered together, while one that sends
+ * a single query and waits gets its answer right away.
+ */
+public class QueryServer
+{
+    private static final int MAX_BATCH = 1 << 16;
+
+    private final Map<Integer, BTree> trees = new TreeMap<>();
+    private final ExecutorService pool;
+    private final int threads;
+
+    /**
+     * @param bTrees List of trees opened for searching, each with a different subsequence length
+     * @param pool threads to search every batch with, or null to search on the connection's thread
+     * @param threads number of threads in pool
+     * @throws IllegalArgumentException if two trees have the same subsequence length
+     */
+    public QueryServer(List<BTree> bTrees, ExecutorService pool, int threads) {
+        for (BTree bTree : bTrees) {
+            BTree previous = trees.put(bTree.getSubsequenceLength(), bTree);
+            if (previous != null) {
+                throw new IllegalArgumentException(previous.getFileName() + " and " + bTree.getFileName()
+                        + " both hold subsequences of length " + bTree.getSubsequenceLength());
+            }
+        }
+        this.pool = pool;
+        this.threads = threads;
+    }
+
+    /**
+     * Accepts connections until server is closed, answering each connection on a thread of its own.
+     * @param server ServerSocket to accept connections on
+     * @throws IOException if accepting a connection failed for another reason than the socket being closed
+     */
+    public void listen(ServerSocket server) throws IOException {
+        while (true) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (SocketException e) {
+                if (server.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            Thread connection = new Thread(() -> {
+                try (Socket client = socket) {
+                    serve(new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII)),
+                            new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.US_ASCII)));
+                } catch (IOException e) {
+                    Debug.logError("Connection from " + socket.getRemoteSocketAddress() + " failed: " + e);
+                }
+            }, "query-connection");
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+
+    /**
+     * Answers the queries of one session until in ends.
+     * @param in BufferedReader of query lines
+     * @param out Writer the answers are written to; flushed after every batch
+     * @throws IOException if in or out failed
+     */
+    public void serve(BufferedReader in, Writer out) throws IOException {
+        List<String> batch = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty()) {
+                batch.add(line);
+            }
+            if (batch.size() == MAX_BATCH || (!batch.isEmpty() && !in.ready())) {
+                for (String answer : answer(batch)) {
+                    out.write(answer);
+                    out.write('\n');
+                }
+                out.flush();
+                batch.clear();
+            }
+        }
+        for (String answer : answer(batch)) {
+            out.write(answer);
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /**
+     * Answers a batch of queries. The queries are grouped by length and each group is looked up in
+     * its tree with GeneBankSearchBTree.batchSearch().
+     * @param queries List of query lines
+     * @return answer line for every query, in the order of queries
+     * @throws IOException if searching a tree failed
+     */
+    public String[] answer(List<String> queries) throws IOException {
+        String[] answers = new String[queries.size()];
+        Map<Integer, List<Integer>> byLength = new TreeMap<>();
+        for (int i = 0; i < queries.size(); i++) {
+            String query = queries.get(i);
+            if (!isDNA(query)) {
+                answers[i] = "error: " + query + " is not a DNA sequence";
+            } else if (!trees.containsKey(query.length())) {
+                answers[i] = "error: no B-Tree for length " + query.length();
+            } else {
+                byLength.computeIfAbsent(query.length(), length -> new ArrayList<>()).add(i);
+            }
+        }
+        for (Map.Entry<Integer, List<Integer>> group : byLength.entrySet()) {
+            List<String> block = new ArrayList<>(group.getValue().size());
+            for (int i : group.getValue()) {
+                block.add(queries.get(i));
+            }
+            int[] frequencies = new int[block.size()];
+            try {
+                GeneBankSearchBTree.batchSearch(trees.get(group.getKey()), block, group.getKey(), pool, threads, frequencies);
+            } catch (Exception e) {
+                throw new IOException("Could not search B-Tree for length " + group.getKey(), e);
+            }
+            for (int j = 0; j < block.size(); j++) {
+                answers[group.getValue().get(j)] = block.get(j).toLowerCase() + " " + frequencies[j];
+            }
+        }
+        return answers;
+    }
+
+    private static boolean isDNA(String query) {
+        if (query.length() > 31) {
+            return false;
+        }
+        for (int i = 0; i < query.length(); i++) {
+            switch (query.charAt(i)) {
+                case 'a': case 'A':
+                case 'c': case 'C':
+                case 'g': case 'G':
+                case 't': case 'T':
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+}
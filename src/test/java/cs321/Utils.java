@@ -1,14 +1,122 @@
 package cs321;
 
+import cs321.btree.BTree;
+import cs321.btree.BTreeNode;
+import cs321.btree.BloomFilter;
+import cs321.btree.MetaData;
+import cs321.btree.TreeObject;
+import cs321.create.GeneBankCreateBTreeArguments;
+import cs321.search.GeneBankSearchBTreeArguments;
+
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 /**
  * Utils and Helper methods for Unit Tests
  */
 public class Utils
 {
+    /**
+     * Arguments for building a test tree without cache or debug output, to adjust before build().
+     * @param degree degree of the tree
+     * @param subsequenceLength length of the subsequences in the tree
+     * @return builder for the arguments
+     */
+    public static GeneBankCreateBTreeArguments.Builder treeArguments(int degree, int subsequenceLength)
+    {
+        return new GeneBankCreateBTreeArguments.Builder(false, degree, "test.gbk", new int[] {subsequenceLength}, 0, 0);
+    }
+
+    /**
+     * Creates an empty temporary file for a tree, deleted with its Bloom filter when the tests end.
+     * @param prefix start of the file name
+     * @return name of the file
+     */
+    public static String tempTreeFile(String prefix) throws IOException
+    {
+        File file = File.createTempFile(prefix, ".btree");
+        file.deleteOnExit();
+        new File(BloomFilter.fileFor(file.getPath())).deleteOnExit();
+        return file.getPath();
+    }
+
+    /**
+     * Reopens a closed tree for searching, the way GeneBankSearchBTree does.
+     * @param treeFile name of the tree file
+     * @return the tree, opened without cache
+     */
+    public static BTree openForSearch(String treeFile) throws IOException
+    {
+        return new BTree(new GeneBankSearchBTreeArguments(false, 0, treeFile, 0, "", 0, 0), MetaData.read(treeFile));
+    }
+
+    /**
+     * Reopens a closed B-Tree (not a B+ tree) and checks that it is a valid B-Tree: every leaf at the
+     * same depth, between degree-1 and 2*degree-1 keys in every node but the root, keys strictly
+     * increasing in order, max frequency entries equal to the highest frequency below them, and as
+     * many nodes and keys as the header says.
+     * @param treeFile name of the tree file
+     * @return every key of the tree with its frequency, in order
+     */
+    public static List<TreeObject> checkInvariants(String treeFile) throws IOException
+    {
+        MetaData metadata = MetaData.read(treeFile);
+        BTree tree = openForSearch(treeFile);
+        List<TreeObject> keys = new ArrayList<>();
+        int[] leafDepth = {-1};
+        long[] nodes = {0};
+        checkSubtree(tree, metadata, tree.getRoot(), 0, true, keys, leafDepth, nodes);
+        assertEquals("nodes", metadata.getNumNodes(), nodes[0]);
+        assertEquals("keys", metadata.getNumKeys(), keys.size());
+        for (int i = 1; i < keys.size(); i++) {
+            assertTrue("keys out of order", keys.get(i - 1).getKey() < keys.get(i).getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * Walks the subtree at node in order for checkInvariants().
+     * @return highest frequency in the subtree
+     */
+    private static int checkSubtree(BTree tree, MetaData metadata, BTreeNode node, int depth, boolean isRoot,
+                                    List<TreeObject> keys, int[] leafDepth, long[] nodes)
+    {
+        int degree = metadata.getDegree();
+        nodes[0]++;
+        assertTrue("node too full", node.getNumKeys() <= 2 * degree - 1);
+        if (!isRoot) {
+            assertTrue("node underfull", node.getNumKeys() >= degree - 1);
+        }
+        if (node.isLeaf()) {
+            if (leafDepth[0] < 0) {
+                leafDepth[0] = depth;
+            }
+            assertEquals("leaf depth", leafDepth[0], depth);
+        } else {
+            assertTrue("empty internal node", node.getNumKeys() > 0);
+        }
+        int max = 0;
+        for (int i = 0; i <= node.getNumKeys(); i++) {
+            if (!node.isLeaf()) {
+                int childMax = checkSubtree(tree, metadata, tree.getNode(node.getChild(i)), depth + 1, false,
+                        keys, leafDepth, nodes);
+                if (metadata.hasMaxFrequencies()) {
+                    assertEquals("max frequency", childMax, node.getMaxFrequency(i));
+                }
+                max = Math.max(max, childMax);
+            }
+            if (i < node.getNumKeys()) {
+                keys.add(new TreeObject(node.getObjectsKey(i), node.getFrequency(i)));
+                max = Math.max(max, node.getFrequency(i));
+            }
+        }
+        return max;
+    }
 }
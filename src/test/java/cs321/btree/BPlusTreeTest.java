@@ -0,0 +1,108 @@
+package cs321.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import cs321.Utils;
+import cs321.create.GeneBankCreateBTreeArguments;
+import cs321.create.SequenceUtils;
+
+import org.junit.Test;
+
+public class BPlusTreeTest
+{
+    private static final int SEQUENCE_LENGTH = 6;
+
+    @Test
+    public void insertedTreeFindsAndScansEveryKey() throws IOException
+    {
+        Random random = new Random(321);
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        String treeFile = Utils.tempTreeFile("bplus");
+        BTree tree = new BTree(arguments(), treeFile);
+        for (int i = 0; i < 5000; i++) {
+            long key = random.nextInt(1 << (2 * SEQUENCE_LENGTH));
+            tree.insert(key);
+            expected.merge(key, 1, Integer::sum);
+        }
+        tree.closeTree();
+        checkTree(treeFile, expected);
+    }
+
+    @Test
+    public void bulkLoadedTreeFindsAndScansEveryKey() throws IOException
+    {
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        long[] keys = new long[700];
+        int[] frequencies = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 3L * i;
+            frequencies[i] = i % 5 + 1;
+            expected.put(keys[i], frequencies[i]);
+        }
+        String treeFile = Utils.tempTreeFile("bplus");
+        BTree tree = new BTree(arguments(), treeFile);
+        tree.bulkLoad(keys, frequencies, keys.length, 70);
+        tree.closeTree();
+        checkTree(treeFile, expected);
+    }
+
+    /**
+     * Reopens the tree for searching and checks point lookups, batch lookups and scans against expected.
+     */
+    private static void checkTree(String treeFile, TreeMap<Long, Integer> expected) throws IOException
+    {
+        MetaData metadata = MetaData.read(treeFile);
+        assertTrue(metadata.isBPlusTree());
+        assertEquals(expected.size(), metadata.getNumKeys());
+        BTree tree = Utils.openForSearch(treeFile);
+
+        long[] all = new long[1 << (2 * SEQUENCE_LENGTH)];
+        for (int key = 0; key < all.length; key++) {
+            all[key] = key;
+            TreeObject found = tree.search(key);
+            if (expected.containsKey((long) key)) {
+                assertEquals((int) expected.get((long) key), found.getFrequency());
+            } else {
+                assertNull(found);
+            }
+        }
+        int[] frequencies = new int[all.length];
+        tree.searchAll(all, 0, all.length, frequencies);
+        for (int key = 0; key < all.length; key++) {
+            assertEquals((int) expected.getOrDefault((long) key, 0), frequencies[key]);
+        }
+
+        assertEquals(new ArrayList<>(expected.entrySet()), scan(tree, 0, Long.MAX_VALUE));
+        long from = SequenceUtils.DNAStringToLong("cg") << 8;
+        long to = from | 0xff;
+        assertEquals(new ArrayList<>(expected.subMap(from, true, to, true).entrySet()), scan(tree, from, to));
+    }
+
+    private static List<Map.Entry<Long, Integer>> scan(BTree tree, long from, long to)
+    {
+        TreeMap<Long, Integer> visited = new TreeMap<>();
+        List<Map.Entry<Long, Integer>> result = new ArrayList<>();
+        tree.scan(from, to, (key, frequency) -> {
+            assertNull(visited.put(key, frequency));
+            result.add(new AbstractMap.SimpleEntry<>(key, frequency));
+        });
+        return result;
+    }
+
+    private static GeneBankCreateBTreeArguments arguments()
+    {
+        return Utils.treeArguments(2, SEQUENCE_LENGTH)
+                .bPlusTree(true)
+                .build();
+    }
+}
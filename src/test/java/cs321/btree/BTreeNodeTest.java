@@ -0,0 +1,46 @@
+package cs321.btree;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class BTreeNodeTest
+{
+    @Test
+    public void findKeyHitsAndSlots()
+    {
+        BTreeNode node = new BTreeNode(4);
+        long[] keys = {3, 8, 15, 20, 42};
+        for (int i = 0; i < keys.length; i++) {
+            node.insertKeyAt(i, keys[i], 1);
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i, node.findKey(keys[i]));
+        }
+        assertEquals(-1, node.findKey(0));      // before every key: child 0
+        assertEquals(-3, node.findKey(9));      // between 8 and 15: child 2
+        assertEquals(-6, node.findKey(100));    // after every key: last child
+    }
+
+    @Test
+    public void findKeyOnEmptyNode()
+    {
+        assertEquals(-1, new BTreeNode(2).findKey(7));
+    }
+
+    @Test
+    public void insertKeyAtKeepsOrder()
+    {
+        BTreeNode node = new BTreeNode(3);
+        node.insertKeyAt(0, 10, 1);
+        node.insertKeyAt(1, 30, 2);
+        node.insertKeyAt(1, 20, 3);
+
+        assertEquals(3, node.getNumKeys());
+        assertEquals(20, node.getObjectsKey(1));
+        assertEquals(3, node.getFrequency(1));
+        assertEquals(30, node.getObjectsKey(2));
+        assertEquals(2, node.getFrequency(2));
+    }
+}
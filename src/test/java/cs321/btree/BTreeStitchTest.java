@@ -0,0 +1,206 @@
+package cs321.btree;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import cs321.Utils;
+import cs321.create.GeneBankCreateBTreeArguments;
+import cs321.create.PartitionedTreeBuilder;
+import cs321.create.SequenceUtils;
+
+import org.junit.Test;
+
+public class BTreeStitchTest
+{
+    @Test
+    public void stitchedPartitionsSearchLikeOneTree() throws IOException
+    {
+        File directory = Files.createTempDirectory("stitch").toFile();
+        directory.deleteOnExit();
+        GeneBankCreateBTreeArguments args = Utils.treeArguments(2, 10).build();
+        List<String> partFiles = new ArrayList<>();
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        for (int p = 0; p < 4; p++) {
+            String partFile = new File(directory, "part" + p).getPath();
+            BTree part = new BTree(args, partFile);
+            // part 2 is empty and part 3 holds a single key
+            int size = p == 2 ? 0 : p == 3 ? 1 : 100 * (p + 1);
+            for (long key = p * 1000; key < p * 1000 + size; key++) {
+                part.insert(key, (int) (key % 7) + 1);
+                expected.put(key, (int) (key % 7) + 1);
+            }
+            part.closeTree();
+            partFiles.add(partFile);
+            new File(partFile).deleteOnExit();
+        }
+
+        String treeFile = new File(directory, "tree").getPath();
+        new File(treeFile).deleteOnExit();
+        BTree stitched = new BTree(args, treeFile);
+        stitched.stitch(partFiles, 100);
+        stitched.closeTree();
+        assertEquals(301, stitched.getNumKeys());
+        checkKeys(expected, Utils.checkInvariants(treeFile));
+
+        BTree tree = Utils.openForSearch(treeFile);
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), tree.search(entry.getKey()).getFrequency());
+        }
+        assertNull(tree.search(3001));
+    }
+
+    @Test
+    public void partitionsRouteCanonicalKeys() throws IOException
+    {
+        // tttt and its reverse complement aaaa are at opposite ends of the key space; both are counted as aaaa
+        int seqLength = 4;
+        GeneBankCreateBTreeArguments args = Utils.treeArguments(2, seqLength)
+                .canonicalMode(SequenceUtils.CANONICAL_REVERSE_COMPLEMENT)
+                .threads(4)
+                .build();
+        Random random = new Random(18);
+        long[] kmers = new long[3000];
+        for (int i = 0; i < kmers.length; i++) {
+            kmers[i] = i % 10 == 0 ? SequenceUtils.DNAStringToLong("tttt") : random.nextInt(1 << (2 * seqLength));
+        }
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        for (long kmer : kmers) {
+            expected.merge(SequenceUtils.canonical(kmer, seqLength, SequenceUtils.CANONICAL_REVERSE_COMPLEMENT), 1, Integer::sum);
+        }
+        String treeFile = Utils.tempTreeFile("partitioned");
+        buildPartitioned(args, 4, kmers, treeFile);
+        checkKeys(expected, Utils.checkInvariants(treeFile));
+        assertNull(Utils.openForSearch(treeFile).search(SequenceUtils.DNAStringToLong("tttt")));
+    }
+
+    @Test
+    public void canonicalBuildsUseEveryPartition() throws IOException
+    {
+        // canonical keys crowd into the lower part of the key space, so top-bit partitions would leave some empty
+        int seqLength = 10;
+        Random random = new Random(14);
+        long[] kmers = new long[100000];   // more than the sample, so keys are routed both ways
+        for (int i = 0; i < kmers.length; i++) {
+            kmers[i] = random.nextInt(1 << (2 * seqLength));
+        }
+        for (int canonicalMode : new int[] {SequenceUtils.CANONICAL_COMPLEMENT, SequenceUtils.CANONICAL_REVERSE_COMPLEMENT}) {
+            for (int partitions : new int[] {2, 3, 8}) {
+                GeneBankCreateBTreeArguments args = Utils.treeArguments(3, seqLength)
+                        .canonicalMode(canonicalMode)
+                        .threads(partitions)
+                        .build();
+                TreeMap<Long, Integer> expected = new TreeMap<>();
+                for (long kmer : kmers) {
+                    expected.merge(SequenceUtils.canonical(kmer, seqLength, canonicalMode), 1, Integer::sum);
+                }
+                String treeFile = Utils.tempTreeFile("partitioned");
+                long[] partitionKeys = buildPartitioned(args, partitions, kmers, treeFile);
+                assertEquals(partitions, partitionKeys.length);
+                for (long keys : partitionKeys) {
+                    assertTrue("unbalanced partitions " + Arrays.toString(partitionKeys),
+                            keys > expected.size() / (2 * partitions));
+                }
+                checkKeys(expected, Utils.checkInvariants(treeFile));
+            }
+        }
+    }
+
+    @Test
+    public void emptyAndSingleKeyPartitions() throws IOException
+    {
+        int seqLength = 4;
+        GeneBankCreateBTreeArguments args = Utils.treeArguments(2, seqLength).threads(4).build();
+        // key 5 fills most of the sample, so every bound is 5: partition 0 only holds key 1,
+        // partitions 1 and 2 lie between equal bounds and stay empty, partition 3 holds 5 and 130
+        long[] kmers = new long[500];
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < kmers.length; i++) {
+            kmers[i] = i == 0 ? 1 : i == 250 ? 130 : 5;
+            expected.merge(kmers[i], 1, Integer::sum);
+        }
+        String treeFile = Utils.tempTreeFile("partitioned");
+        assertArrayEquals(new long[] {1, 0, 0, 2}, buildPartitioned(args, 4, kmers, treeFile));
+        checkKeys(expected, Utils.checkInvariants(treeFile));
+
+        treeFile = Utils.tempTreeFile("partitioned");
+        assertArrayEquals(new long[] {0, 0, 0, 0}, buildPartitioned(args, 4, new long[0], treeFile));
+        checkKeys(new TreeMap<>(), Utils.checkInvariants(treeFile));
+
+        treeFile = Utils.tempTreeFile("partitioned");
+        buildPartitioned(args, 4, new long[] {0, 0, 0}, treeFile);
+        checkKeys(Collections.singletonMap(0L, 3), Utils.checkInvariants(treeFile));
+    }
+
+    @Test
+    public void partitionedDumpMatchesSingleThreadedBuild() throws IOException
+    {
+        int seqLength = 10;
+        Random random = new Random(321);
+        long[] kmers = new long[20000];
+        for (int i = 0; i < kmers.length; i++) {
+            kmers[i] = random.nextInt(1 << 12) << 8;   // few distinct keys, spread over every partition
+        }
+        for (boolean bulkLoad : new boolean[] {false, true}) {
+            GeneBankCreateBTreeArguments args = Utils.treeArguments(3, seqLength).bulkLoad(bulkLoad).threads(8).build();
+            String treeFile = Utils.tempTreeFile("single");
+            BTree single = new BTree(args, treeFile);
+            for (long kmer : kmers) {
+                single.insert(kmer);
+            }
+            single.closeTree();
+
+            String partitionedFile = Utils.tempTreeFile("partitioned");
+            buildPartitioned(args, 8, kmers, partitionedFile);
+            List<TreeObject> expected = Utils.checkInvariants(treeFile);
+            List<TreeObject> partitioned = Utils.checkInvariants(partitionedFile);
+            assertEquals(expected.size(), partitioned.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).toString(seqLength), partitioned.get(i).toString(seqLength));
+            }
+        }
+    }
+
+    /**
+     * Builds a tree in treeFile from kmers through a PartitionedTreeBuilder, in batches of 1000, and closes it.
+     * @return number of keys each partition was built with
+     */
+    private static long[] buildPartitioned(GeneBankCreateBTreeArguments args, int partitions, long[] kmers,
+                                           String treeFile) throws IOException
+    {
+        BTree tree = new BTree(args, treeFile);
+        PartitionedTreeBuilder builder = new PartitionedTreeBuilder(tree, args, partitions);
+        for (int from = 0; from < kmers.length; from += 1000) {
+            int count = Math.min(1000, kmers.length - from);
+            long[] batch = new long[count];
+            System.arraycopy(kmers, from, batch, 0, count);
+            builder.accept(batch, count);
+        }
+        builder.finish();
+        tree.closeTree();
+        return builder.getPartitionKeys();
+    }
+
+    private static void checkKeys(Map<Long, Integer> expected, List<TreeObject> keys)
+    {
+        assertEquals(expected.size(), keys.size());
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((long) entry.getKey(), keys.get(i).getKey());
+            assertEquals((int) entry.getValue(), keys.get(i).getFrequency());
+            i++;
+        }
+    }
+}
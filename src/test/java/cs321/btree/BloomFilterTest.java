@@ -0,0 +1,120 @@
+package cs321.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import cs321.Utils;
+
+import org.junit.Test;
+
+public class BloomFilterTest
+{
+    private static final int SEQUENCE_LENGTH = 20;
+
+    @Test
+    public void keepsEveryKeyAndFewMissingOnes() throws IOException
+    {
+        for (double rate : new double[] {0.1, 0.01, 0.001}) {
+            Random random = new Random(321);
+            Set<Long> keys = new HashSet<>();
+            while (keys.size() < 20000) {
+                keys.add(random.nextLong() >>> (64 - 2 * SEQUENCE_LENGTH));
+            }
+            BloomFilter filter = new BloomFilter(keys.size(), rate, SEQUENCE_LENGTH);
+            for (long key : keys) {
+                filter.add(key);
+            }
+            String fileName = Utils.tempTreeFile("bloom");
+            filter.write(fileName);
+            BloomFilter mapped = BloomFilter.map(fileName);
+            assertEquals(keys.size(), mapped.getNumKeys());
+            assertEquals(SEQUENCE_LENGTH, mapped.getSubsequenceLength());
+
+            for (long key : keys) {
+                assertTrue(filter.mightContain(key));
+                assertTrue(mapped.mightContain(key));
+            }
+            int trials = 200000;
+            int falsePositives = 0;
+            for (int i = 0; i < trials; i++) {
+                long key = random.nextLong() >>> (64 - 2 * SEQUENCE_LENGTH);
+                if (!keys.contains(key)) {
+                    assertEquals(filter.mightContain(key), mapped.mightContain(key));
+                    if (mapped.mightContain(key)) {
+                        falsePositives++;
+                    }
+                }
+            }
+            assertTrue("false positive rate " + (double) falsePositives / trials + " for " + rate,
+                    falsePositives < rate * trials);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFileThatIsNoFilter() throws IOException
+    {
+        String fileName = Utils.tempTreeFile("bloom");
+        new BloomFilter(10, 0.01, SEQUENCE_LENGTH).write(fileName);
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            file.writeInt(0);
+        }
+        BloomFilter.map(fileName);
+    }
+
+    @Test
+    public void treeSearchesThroughItsFilter() throws IOException
+    {
+        Random random = new Random(123);
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        String treeFile = Utils.tempTreeFile("bloom");
+        BTree tree = new BTree(Utils.treeArguments(4, SEQUENCE_LENGTH).build(), treeFile);
+        for (int i = 0; i < 3000; i++) {
+            long key = random.nextInt(5000);
+            tree.insert(key);
+            expected.merge(key, 1, Integer::sum);
+        }
+        tree.writeBloomFilter(0.01);
+        tree.closeTree();
+
+        BTree searched = Utils.openForSearch(treeFile);
+        assertTrue(searched.hasBloomFilter());
+        long[] all = new long[10000];
+        for (int key = 0; key < all.length; key++) {
+            all[key] = key;
+            TreeObject found = searched.search(key);
+            if (expected.containsKey((long) key)) {
+                assertEquals((int) expected.get((long) key), found.getFrequency());
+            } else {
+                assertNull(found);
+            }
+        }
+        int[] frequencies = new int[all.length];
+        searched.searchAll(all, 0, all.length, frequencies);
+        for (int key = 0; key < all.length; key++) {
+            assertEquals((int) expected.getOrDefault((long) key, 0), frequencies[key]);
+        }
+    }
+
+    @Test
+    public void filterOfAnotherTreeIsIgnored() throws IOException
+    {
+        String treeFile = Utils.tempTreeFile("bloom");
+        BTree tree = new BTree(Utils.treeArguments(4, SEQUENCE_LENGTH).build(), treeFile);
+        tree.insert(42);
+        tree.closeTree();
+        new BloomFilter(1000, 0.01, SEQUENCE_LENGTH).write(BloomFilter.fileFor(treeFile));
+
+        BTree searched = Utils.openForSearch(treeFile);
+        assertFalse(searched.hasBloomFilter());
+        assertEquals(1, searched.search(42).getFrequency());
+    }
+}
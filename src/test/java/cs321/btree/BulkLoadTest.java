@@ -0,0 +1,95 @@
+package cs321.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import cs321.Utils;
+import cs321.create.GeneBankCreateBTreeArguments;
+
+import org.junit.Test;
+
+public class BulkLoadTest
+{
+    private static final int DEGREE = 3;
+    private static final int SEQUENCE_LENGTH = 8;
+
+    @Test
+    public void bulkLoadedTreesMatchInsertedTrees() throws IOException
+    {
+        // 5 keys fill one leaf of degree 3, 6 need a second one, 35 fill six leaves and a root exactly
+        for (int count : new int[] {0, 1, 2, 5, 6, 7, 11, 12, 35, 36, 100, 1000, 5000}) {
+            for (int fillPercent : new int[] {50, 67, 80, 100}) {
+                checkBulkLoad(count, fillPercent);
+            }
+        }
+    }
+
+    @Test
+    public void bulkLoadUsesTheFewestNodesTheFillFactorAllows() throws IOException
+    {
+        // 36 keys are one too many for two levels, so they need a third
+        assertEquals(1, checkBulkLoad(5, 100));
+        assertEquals(3, checkBulkLoad(6, 100));
+        assertEquals(7, checkBulkLoad(35, 100));
+        assertEquals(10, checkBulkLoad(36, 100));
+        assertEquals(3, checkBulkLoad(11, 100));
+        // 50% aims for the minimum of degree-1 keys per node, but one leaf still takes all it can hold
+        assertEquals(5, checkBulkLoad(11, 50));
+        assertEquals(1, checkBulkLoad(5, 50));
+    }
+
+    /**
+     * Bulk-loads count random sorted keys, then checks the tree's invariants and compares its in-order
+     * walk and the search for every key, present or not, against a tree built by insert().
+     * @return number of nodes of the bulk-loaded tree
+     */
+    private static long checkBulkLoad(int count, int fillPercent) throws IOException
+    {
+        Random random = new Random(count);
+        long[] keys = new long[count];
+        int[] frequencies = new int[count];
+        long key = 0;
+        for (int i = 0; i < count; i++) {
+            key += 1 + random.nextInt(3);
+            keys[i] = key;
+            frequencies[i] = 1 + random.nextInt(20);
+        }
+        GeneBankCreateBTreeArguments args = Utils.treeArguments(DEGREE, SEQUENCE_LENGTH).maxFrequencies(true).build();
+
+        String insertedFile = Utils.tempTreeFile("inserted");
+        BTree inserted = new BTree(args, insertedFile);
+        for (int i = 0; i < count; i++) {
+            inserted.insert(keys[i], frequencies[i]);
+        }
+        inserted.closeTree();
+
+        String loadedFile = Utils.tempTreeFile("bulkloaded");
+        BTree loaded = new BTree(args, loadedFile);
+        loaded.bulkLoad(keys.clone(), frequencies.clone(), count, fillPercent);
+        loaded.closeTree();
+
+        List<TreeObject> expected = Utils.checkInvariants(insertedFile);
+        List<TreeObject> walked = Utils.checkInvariants(loadedFile);
+        assertEquals(count, walked.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(expected.get(i).getKey(), walked.get(i).getKey());
+            assertEquals(expected.get(i).getFrequency(), walked.get(i).getFrequency());
+        }
+
+        BTree insertedTree = Utils.openForSearch(insertedFile);
+        BTree loadedTree = Utils.openForSearch(loadedFile);
+        for (long k = 0; k <= key + 1; k++) {
+            TreeObject found = insertedTree.search(k);
+            if (found == null) {
+                assertNull(loadedTree.search(k));
+            } else {
+                assertEquals(found.getFrequency(), loadedTree.search(k).getFrequency());
+            }
+        }
+        return MetaData.read(loadedFile).getNumNodes();
+    }
+}
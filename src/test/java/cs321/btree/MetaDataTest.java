@@ -0,0 +1,91 @@
+package cs321.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import cs321.Utils;
+import cs321.common.ParseArgumentUtils;
+
+import org.junit.Test;
+
+public class MetaDataTest
+{
+    @Test
+    public void headerRoundTrip() throws IOException
+    {
+        String file = Utils.tempTreeFile("metadata");
+        try (RandomAccessFile dataFile = new RandomAccessFile(file, "rw")) {
+            MetaData written = new MetaData(102, 31, 5000000000L, 7L, 4096, 4096, 4096);
+            written.setCanonicalMode(2);
+            written.setMaxFrequencies(true);
+            written.write(dataFile.getChannel());
+        }
+
+        MetaData metadata = MetaData.read(file);
+        assertEquals(102, metadata.getDegree());
+        assertEquals(31, metadata.getSubsequenceLength());
+        assertEquals(5000000000L, metadata.getNumNodes());
+        assertEquals(7L, metadata.getNumKeys());
+        assertEquals(4096, metadata.getNodeSize());
+        assertEquals(4096, metadata.getRootAddress());
+        assertEquals(4096, metadata.getPageSize());
+        assertEquals(4096, metadata.getFirstNodeAddress());
+        assertEquals(2, metadata.getCanonicalMode());
+        assertTrue(metadata.hasMaxFrequencies());
+        assertFalse(metadata.isBPlusTree());
+    }
+
+    @Test
+    public void readsVersionOneHeader() throws IOException
+    {
+        String file = Utils.tempTreeFile("metadata");
+        ByteBuffer header = ByteBuffer.allocate(MetaData.HEADER_SIZE);
+        header.putInt(0, MetaData.MAGIC);
+        header.putInt(4, 1);
+        header.putInt(8, 102);
+        header.putInt(12, 9);
+        header.putInt(16, 4088);
+        header.putLong(24, 64);
+        try (RandomAccessFile dataFile = new RandomAccessFile(file, "rw")) {
+            dataFile.write(header.array());
+        }
+
+        MetaData metadata = MetaData.read(file);
+        assertEquals(0, metadata.getPageSize());
+        assertEquals(MetaData.HEADER_SIZE, metadata.getFirstNodeAddress());
+        assertEquals(4088, metadata.getNodeSize());
+    }
+
+    @Test
+    public void slotsArePageAligned()
+    {
+        assertEquals(4088, BTreeNode.diskSize(102));
+        assertEquals(4096, MetaData.slotSize(102, 4096));
+        assertEquals(8192, MetaData.slotSize(103, 4096));
+        assertEquals(BTreeNode.diskSize(3), MetaData.slotSize(3, 0));
+        assertEquals(102, ParseArgumentUtils.findOptimalDegree(4096));
+        assertEquals(409, ParseArgumentUtils.findOptimalDegree(16384));
+        assertEquals(1638, ParseArgumentUtils.findOptimalDegree(65536));
+    }
+
+    @Test
+    public void rejectsFileWithoutHeader() throws IOException
+    {
+        String file = Utils.tempTreeFile("metadata");
+        try (RandomAccessFile dataFile = new RandomAccessFile(file, "rw")) {
+            dataFile.write(new byte[MetaData.HEADER_SIZE]);
+        }
+
+        try {
+            MetaData.read(file);
+            fail("expected an IOException for a file with a bad magic number");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package cs321.btree;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import cs321.Utils;
+import cs321.create.GeneBankCreateBTreeArguments;
+
+import org.junit.Test;
+
+public class TopNTest
+{
+    private static final int SEQUENCE_LENGTH = 6;
+
+    @Test
+    public void insertedTreesAnswerTopN() throws IOException
+    {
+        for (boolean bPlusTree : new boolean[] {false, true}) {
+            for (boolean maxFrequencies : new boolean[] {false, true}) {
+                Random random = new Random(321);
+                TreeMap<Long, Integer> expected = new TreeMap<>();
+                String treeFile = Utils.tempTreeFile("topn");
+                BTree tree = new BTree(arguments(bPlusTree, maxFrequencies), treeFile);
+                for (int i = 0; i < 8000; i++) {
+                    // skewed, so a few keys are far more frequent than the rest
+                    long key = (long) (Math.pow(random.nextDouble(), 4) * (1 << (2 * SEQUENCE_LENGTH)));
+                    tree.insert(key);
+                    expected.merge(key, 1, Integer::sum);
+                }
+                tree.closeTree();
+                checkTopN(treeFile, expected, maxFrequencies);
+            }
+        }
+    }
+
+    @Test
+    public void bulkLoadedTreesAnswerTopN() throws IOException
+    {
+        for (boolean bPlusTree : new boolean[] {false, true}) {
+            TreeMap<Long, Integer> expected = new TreeMap<>();
+            long[] keys = new long[900];
+            int[] frequencies = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = 4L * i;
+                frequencies[i] = (i * 37) % 101 + 1;
+                expected.put(keys[i], frequencies[i]);
+            }
+            String treeFile = Utils.tempTreeFile("topn");
+            BTree tree = new BTree(arguments(bPlusTree, true), treeFile);
+            tree.bulkLoad(keys, frequencies, keys.length, 80);
+            tree.closeTree();
+            checkTopN(treeFile, expected, true);
+        }
+    }
+
+    /**
+     * Reopens the tree for searching and compares topN() for several n against sorting expected.
+     */
+    private static void checkTopN(String treeFile, TreeMap<Long, Integer> expected, boolean maxFrequencies) throws IOException
+    {
+        assertEquals(maxFrequencies, MetaData.read(treeFile).hasMaxFrequencies());
+        BTree tree = Utils.openForSearch(treeFile);
+
+        List<Map.Entry<Long, Integer>> sorted = new ArrayList<>(expected.entrySet());
+        sorted.sort((a, b) -> a.getValue().equals(b.getValue())
+                ? Long.compare(a.getKey(), b.getKey()) : Integer.compare(b.getValue(), a.getValue()));
+        for (int n : new int[] {0, 1, 10, 100, expected.size() + 5}) {
+            List<TreeObject> top = tree.topN(n);
+            assertEquals(Math.min(n, sorted.size()), top.size());
+            for (int i = 0; i < top.size(); i++) {
+                assertEquals((long) sorted.get(i).getKey(), top.get(i).getKey());
+                assertEquals((int) sorted.get(i).getValue(), top.get(i).getFrequency());
+            }
+        }
+    }
+
+    private static GeneBankCreateBTreeArguments arguments(boolean bPlusTree, boolean maxFrequencies)
+    {
+        return Utils.treeArguments(3, SEQUENCE_LENGTH)
+                .bPlusTree(bPlusTree)
+                .maxFrequencies(maxFrequencies)
+                .build();
+    }
+}
@@ -0,0 +1,72 @@
+package cs321.btree;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import cs321.Utils;
+import cs321.create.GeneBankCreateBTreeArguments;
+
+import org.junit.Test;
+
+public class WriteBackTest
+{
+    private static final int SEQUENCE_LENGTH = 8;
+
+    @Test
+    public void evictionsDuringInsertsKeepEveryKey() throws IOException
+    {
+        for (int degree : new int[] {2, 3}) {
+            for (int cacheSize : new int[] {1, 2, 3, 5}) {
+                for (boolean maxFrequencies : new boolean[] {false, true}) {
+                    checkWriteBack(degree, cacheSize, maxFrequencies);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the same random keys into a write-through tree without cache and into a write-back tree
+     * whose cache is so small that nodes are evicted while an insert still holds them, then reopens
+     * both and compares every key and frequency.
+     */
+    private static void checkWriteBack(int degree, int cacheSize, boolean maxFrequencies) throws IOException
+    {
+        GeneBankCreateBTreeArguments writeThrough = Utils.treeArguments(degree, SEQUENCE_LENGTH)
+                .maxFrequencies(maxFrequencies)
+                .build();
+        GeneBankCreateBTreeArguments writeBack = new GeneBankCreateBTreeArguments.Builder(true, degree, "test.gbk",
+                new int[] {SEQUENCE_LENGTH}, cacheSize, 0)
+                .writeBack(true)
+                .maxFrequencies(maxFrequencies)
+                .build();
+
+        String writeThroughFile = Utils.tempTreeFile("writethrough");
+        String writeBackFile = Utils.tempTreeFile("writeback");
+        BTree expectedTree = new BTree(writeThrough, writeThroughFile);
+        BTree tree = new BTree(writeBack, writeBackFile);
+        Random random = new Random(degree * 10 + cacheSize);
+        for (int i = 0; i < 5000; i++) {
+            long key = random.nextInt(2000);
+            int frequency = 1 + random.nextInt(3);
+            expectedTree.insert(key, frequency);
+            tree.insert(key, frequency);
+        }
+        expectedTree.closeTree();
+        tree.closeTree();
+
+        List<TreeObject> expected = Utils.checkInvariants(writeThroughFile);
+        List<TreeObject> keys = Utils.checkInvariants(writeBackFile);
+        assertEquals(expected.size(), keys.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getKey(), keys.get(i).getKey());
+            assertEquals(expected.get(i).getFrequency(), keys.get(i).getFrequency());
+        }
+        BTree reopened = Utils.openForSearch(writeBackFile);
+        for (TreeObject key : expected) {
+            assertEquals(key.getFrequency(), reopened.search(key.getKey()).getFrequency());
+        }
+    }
+}
@@ -3,7 +3,9 @@ package cs321.create;
 import cs321.common.ParseArgumentException;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class GeneBankCreateBTreeTest
@@ -30,5 +32,55 @@ public class GeneBankCreateBTreeTest
         actualConfiguration = GeneBankCreateBTree.parseArguments(args);
         assertEquals(expectedConfiguration, actualConfiguration);
     }
-    
+    @Test
+    public void parseArgsWithBulkLoad() throws ParseArgumentException
+    {
+        args = new String[] {"--cache=0",  "--degree=25", "--gbkfile=hs_ref_chrY.gbk", "--length=12", "--bulkload=1", "--fillfactor=75"};
+
+        actualConfiguration = GeneBankCreateBTree.parseArguments(args);
+        assertTrue(actualConfiguration.isBulkLoad());
+        assertEquals(75, actualConfiguration.getFillFactor());
+    }
+    @Test
+    public void parseArgsWithLengthList() throws ParseArgumentException
+    {
+        args = new String[] {"--cache=0",  "--degree=25", "--gbkfile=hs_ref_chrY.gbk", "--length=20,1-3,31,2"};
+
+        actualConfiguration = GeneBankCreateBTree.parseArguments(args);
+        assertArrayEquals(new int[] {1, 2, 3, 20, 31}, actualConfiguration.getSubsequenceLengths());
+        assertEquals(1, actualConfiguration.getSubsequenceLength());
+        assertEquals(new GeneBankCreateBTreeArguments(false, 25, "hs_ref_chrY.gbk", 20, 0, 0),
+                actualConfiguration.forSubsequenceLength(20));
+    }
+    @Test(expected = ParseArgumentException.class)
+    public void parseArgsRejectsLengthRangeOutOfBounds() throws ParseArgumentException
+    {
+        args = new String[] {"--cache=0",  "--degree=25", "--gbkfile=hs_ref_chrY.gbk", "--length=20-32"};
+
+        GeneBankCreateBTree.parseArguments(args);
+    }
+    @Test
+    public void parseArgsWithBloomFilter() throws ParseArgumentException
+    {
+        args = new String[] {"--cache=0",  "--degree=25", "--gbkfile=hs_ref_chrY.gbk", "--length=20", "--bloom=0.01"};
+
+        actualConfiguration = GeneBankCreateBTree.parseArguments(args);
+        assertEquals(0.01, actualConfiguration.getBloomFalsePositiveRate(), 0);
+    }
+    @Test(expected = ParseArgumentException.class)
+    public void parseArgsRejectsBloomRateOutOfRange() throws ParseArgumentException
+    {
+        args = new String[] {"--cache=0",  "--degree=25", "--gbkfile=hs_ref_chrY.gbk", "--length=20", "--bloom=1.5"};
+
+        GeneBankCreateBTree.parseArguments(args);
+    }
+    @Test
+    public void parseArgsWithDatabase() throws ParseArgumentException
+    {
+        args = new String[] {"--cache=0",  "--degree=25", "--gbkfile=hs_ref_chrY.gbk", "--length=20", "--database=1"};
+
+        actualConfiguration = GeneBankCreateBTree.parseArguments(args);
+        assertTrue(actualConfiguration.isExportingDatabase());
+    }
+
 }
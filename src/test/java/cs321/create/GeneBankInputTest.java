@@ -0,0 +1,111 @@
+package cs321.create;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeneBankInputTest
+{
+    private static final String GBK_FILE = "data/files_gbk/test3.gbk";
+    private static final int BGZF_BLOCK_DATA = 65280;
+
+    @Test
+    public void readsPlainFile() throws IOException
+    {
+        byte[] original = Files.readAllBytes(Paths.get(GBK_FILE));
+        assertFalse(GeneBankInput.isCompressed(GBK_FILE));
+        assertArrayEquals(original, readAll(GeneBankInput.open(GBK_FILE, 4)));
+    }
+
+    @Test
+    public void readsGzipFile() throws IOException
+    {
+        byte[] original = Files.readAllBytes(Paths.get(GBK_FILE));
+        File gz = File.createTempFile("test3", ".gbk.gz");
+        gz.deleteOnExit();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gz))) {
+            out.write(original);
+        }
+        assertTrue(GeneBankInput.isCompressed(gz.getPath()));
+        assertArrayEquals(original, readAll(GeneBankInput.open(gz.getPath(), 4)));
+    }
+
+    @Test
+    public void readsBgzfFileInParallel() throws IOException
+    {
+        byte[] original = Files.readAllBytes(Paths.get(GBK_FILE));
+        File bgzf = File.createTempFile("test3", ".gbk.gz");
+        bgzf.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(bgzf)) {
+            for (int i = 0; i < original.length; i += BGZF_BLOCK_DATA) {
+                writeBgzfBlock(out, original, i, Math.min(original.length, i + BGZF_BLOCK_DATA));
+            }
+            writeBgzfBlock(out, original, 0, 0);    // empty end-of-file block
+        }
+        for (int threads : new int[] {1, 4}) {
+            assertArrayEquals(original, readAll(GeneBankInput.open(bgzf.getPath(), threads)));
+        }
+    }
+
+    @Test
+    public void stripsCompressionSuffix()
+    {
+        assertEquals("data/test0.gbk", GeneBankInput.uncompressedName("data/test0.gbk.gz"));
+        assertEquals("data/test0.gbk", GeneBankInput.uncompressedName("data/test0.gbk"));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream input = in) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes data[from, to) as one BGZF block, the way bgzip does.
+     */
+    private static void writeBgzfBlock(OutputStream out, byte[] data, int from, int to) throws IOException
+    {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, from, to - from);
+        deflater.finish();
+        byte[] compressed = new byte[to - from + 1024];
+        int length = deflater.deflate(compressed);
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data, from, to - from);
+
+        int blockSize = 18 + length + 8;
+        out.write(new byte[] {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+                (byte) (blockSize - 1), (byte) ((blockSize - 1) >> 8)});
+        out.write(compressed, 0, length);
+        writeLittleEndianInt(out, (int) crc.getValue());
+        writeLittleEndianInt(out, to - from);
+    }
+
+    private static void writeLittleEndianInt(OutputStream out, int value) throws IOException
+    {
+        out.write(new byte[] {(byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24)});
+    }
+}
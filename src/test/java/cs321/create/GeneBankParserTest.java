@@ -0,0 +1,41 @@
+package cs321.create;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class GeneBankParserTest
+{
+    private static final String GBK =
+            "LOCUS       TEST\n" +
+            "DEFINITION  acgt in a header line.\n" +
+            "ORIGIN      \n" +
+            "        1 acgtnacg tt\n" +
+            "       11 ggcc\n" +
+            "//\n" +
+            "LOCUS       SECOND\n" +
+            "ORIGIN\n" +
+            "        1 tttt\n" +
+            "//\n";
+
+    @Test
+    public void parseSkipsHeadersAndPositionColumn() throws IOException
+    {
+        StringBuilder seen = new StringBuilder();
+        GeneBankParser.parse(new ByteArrayInputStream(GBK.getBytes()), new GeneBankParser.SequenceHandler() {
+            @Override
+            public void sequence(byte[] buffer, int from, int to) {
+                seen.append(new String(buffer, from, to - from));
+            }
+
+            @Override
+            public void endOfRecord() {
+                seen.append('|');
+            }
+        });
+        assertEquals("acgtnacg ttggcc|tttt|", seen.toString());
+    }
+}
@@ -0,0 +1,126 @@
+package cs321.create;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IngestPipelineTest
+{
+    private static final String GBK_FILE = "data/files_gbk/test3.gbk";
+
+    @Test
+    public void pipelineEncodesLikeEncoder() throws IOException
+    {
+        for (int seqLength : new int[] {1, 6, 31}) {
+            List<Long> expected = new ArrayList<>();
+            KmerEncoder encoder = new KmerEncoder(seqLength, (kmers, count) -> collect(expected, kmers, count));
+            SequenceSource.forFile(GBK_FILE, 1).read(encoder);
+            encoder.flush();
+
+            List<Long> actual = new ArrayList<>();
+            IngestPipeline pipeline = new IngestPipeline(seqLength, (kmers, count) -> collect(actual, kmers, count));
+            pipeline.run(SequenceSource.forFile(GBK_FILE, 1));
+            assertEquals(expected, actual);
+            assertTrue(pipeline.report().contains("inserter " + String.format("%,d", actual.size())));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void missingFileFailsRun() throws IOException
+    {
+        new IngestPipeline(6, (kmers, count) -> { }).run(SequenceSource.forFile("data/files_gbk/missing.gbk", 1));
+    }
+
+    @Test
+    public void failedEncoderStopsReader() throws InterruptedException
+    {
+        IngestPipeline pipeline = new IngestPipeline(6, (kmers, count) -> { }) {
+            @Override
+            KmerEncoder createEncoder(KmerEncoder.KmerSink batches) {
+                return new KmerEncoder(6, batches) {
+                    @Override
+                    public void sequence(byte[] buffer, int from, int to) {
+                        throw new IllegalArgumentException("bad block");
+                    }
+                };
+            }
+        };
+        try {
+            pipeline.run(endlessSource());
+            fail("run() returned although the encoder failed");
+        } catch (IOException e) {
+            assertEquals("bad block", e.getCause().getMessage());
+        }
+        assertStagesEnded();
+    }
+
+    @Test
+    public void failedSinkStopsReader() throws InterruptedException, IOException
+    {
+        IngestPipeline pipeline = new IngestPipeline(6, (kmers, count) -> {
+            throw new IllegalStateException("sink full");
+        });
+        try {
+            pipeline.run(endlessSource());
+            fail("run() returned although the sink failed");
+        } catch (IllegalStateException e) {
+            assertEquals("sink full", e.getMessage());
+        }
+        assertStagesEnded();
+    }
+
+    /**
+     * @return SequenceSource repeating one record until the reader stage is stopped
+     */
+    private static SequenceSource endlessSource()
+    {
+        byte[] bases = "acgtacgtacgtacgtacgtacgtacgtacgt".getBytes();
+        return new SequenceSource() {
+            @Override
+            public void read(GeneBankParser.SequenceHandler handler) {
+                while (true) {
+                    handler.sequence(bases, 0, bases.length);
+                }
+            }
+
+            @Override
+            public String getFileName() {
+                return "endless.gbk";
+            }
+        };
+    }
+
+    private static void assertStagesEnded() throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (stagesAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse("pipeline threads are still running", stagesAlive());
+    }
+
+    private static boolean stagesAlive()
+    {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ((thread.getName().equals("ingest-reader") || thread.getName().equals("ingest-encoder"))
+                    && thread.getState() != Thread.State.TERMINATED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void collect(List<Long> into, long[] kmers, int count)
+    {
+        for (int i = 0; i < count; i++) {
+            into.add(kmers[i]);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package cs321.create;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class KmerEncoderTest
+{
+    private final List<Long> kmers = new ArrayList<>();
+    private final KmerEncoder.KmerSink sink = (batch, count) -> {
+        for (int i = 0; i < count; i++) {
+            kmers.add(batch[i]);
+        }
+    };
+
+    @Test
+    public void rollsAcrossSpacesAndLines()
+    {
+        KmerEncoder encoder = new KmerEncoder(3, sink, 2);
+        byte[] first = "acg t".getBytes();
+        byte[] second = "\n60 GA".getBytes();
+        encoder.sequence(first, 0, first.length);
+        encoder.sequence(second, 0, second.length);
+        encoder.flush();
+
+        assertEquals(Arrays.asList(SequenceUtils.DNAStringToLong("acg"), SequenceUtils.DNAStringToLong("cgt"),
+                SequenceUtils.DNAStringToLong("gtg"), SequenceUtils.DNAStringToLong("tga")), kmers);
+    }
+
+    @Test
+    public void resetsAtBreaksAndRecords()
+    {
+        KmerEncoder encoder = new KmerEncoder(2, sink);
+        encoder.sequence(ByteBuffer.wrap("acnga".getBytes()));
+        encoder.endOfRecord();
+        encoder.sequence(ByteBuffer.wrap("tt".getBytes()));
+        encoder.flush();
+
+        assertEquals(Arrays.asList(SequenceUtils.DNAStringToLong("ac"), SequenceUtils.DNAStringToLong("ga"),
+                SequenceUtils.DNAStringToLong("tt")), kmers);
+    }
+}
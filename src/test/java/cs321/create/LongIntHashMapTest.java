@@ -0,0 +1,49 @@
+package cs321.create;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LongIntHashMapTest
+{
+    @Test
+    public void addCountsDuplicates()
+    {
+        LongIntHashMap counts = new LongIntHashMap(1024);
+        counts.add(7, 1);
+        counts.add(3, 1);
+        counts.add(7, 1);
+        counts.add(0, 5);
+
+        assertEquals(3, counts.size());
+        assertEquals(3, counts.drainSorted());
+        assertEquals(0, counts.keyAt(0));
+        assertEquals(5, counts.valueAt(0));
+        assertEquals(3, counts.keyAt(1));
+        assertEquals(1, counts.valueAt(1));
+        assertEquals(7, counts.keyAt(2));
+        assertEquals(2, counts.valueAt(2));
+    }
+
+    @Test
+    public void fillsWithinBudgetAndClears()
+    {
+        LongIntHashMap counts = new LongIntHashMap(16 * 12);
+        long key = 0;
+        while (!counts.isFull()) {
+            counts.add(key * 31, 1);
+            key++;
+        }
+        int size = counts.size();
+        assertTrue(size > 0 && size < 16);
+
+        int drained = counts.drainSorted();
+        assertEquals(size, drained);
+        for (int i = 1; i < drained; i++) {
+            assertTrue(counts.keyAt(i - 1) < counts.keyAt(i));
+        }
+        counts.clear();
+        assertEquals(0, counts.size());
+        assertFalse(counts.isFull());
+    }
+}
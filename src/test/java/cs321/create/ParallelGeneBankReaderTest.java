@@ -0,0 +1,72 @@
+package cs321.create;
+
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class ParallelGeneBankReaderTest
+{
+    private static final String GBK_FILE = "data/files_gbk/test3.gbk";
+
+    @Test
+    public void matchesSequentialParser() throws IOException
+    {
+        for (int k : new int[] {1, 7, 31}) {
+            Map<Long, Integer> sequential = new HashMap<>();
+            KmerEncoder encoder = new KmerEncoder(k, (kmers, count) -> count(sequential, kmers, count));
+            try (InputStream in = new FileInputStream(GBK_FILE)) {
+                GeneBankParser.parse(in, encoder);
+            }
+            encoder.flush();
+
+            Map<Long, Integer> parallel = new HashMap<>();
+            new ParallelGeneBankReader(GBK_FILE, k, 4).read((kmers, count) -> count(parallel, kmers, count));
+            assertEquals(sequential, parallel);
+        }
+    }
+
+    @Test
+    public void failingSinkStopsTheWorkers() throws IOException, InterruptedException
+    {
+        // test5.gbk has far more batches than the queue holds, so the workers block once the sink stops taking them
+        try {
+            new ParallelGeneBankReader("data/files_gbk/test5.gbk", 7, 4).read((kmers, count) -> {
+                throw new UncheckedIOException(new IOException("disk full"));
+            });
+            fail("the failure of the sink was not passed on");
+        } catch (UncheckedIOException e) {
+            assertEquals("disk full", e.getCause().getMessage());
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (workersAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse("worker threads are still running", workersAlive());
+    }
+
+    private static boolean workersAlive()
+    {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("gbk-reader") && thread.getState() != Thread.State.TERMINATED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void count(Map<Long, Integer> counts, long[] kmers, int count)
+    {
+        for (int i = 0; i < count; i++) {
+            counts.merge(kmers[i], 1, Integer::sum);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package cs321.create;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SequenceSourceTest
+{
+    private static final String FASTA =
+            ">first record, acgt in a header\n" +
+            "ACGTN\n" +
+            "acg\n" +
+            "; a comment\n" +
+            "tt\n" +
+            ">second\n" +
+            "GGCC";
+
+    @Test
+    public void fastaSkipsHeadersAndComments() throws IOException
+    {
+        StringBuilder seen = new StringBuilder();
+        FastaSource.parse(new ByteArrayInputStream(FASTA.getBytes()), new GeneBankParser.SequenceHandler() {
+            @Override
+            public void sequence(byte[] buffer, int from, int to) {
+                seen.append(new String(buffer, from, to - from).replace("\n", ""));
+            }
+
+            @Override
+            public void endOfRecord() {
+                seen.append('|');
+            }
+        });
+        assertEquals("ACGTNacgtt|GGCC|", seen.toString());
+    }
+
+    @Test
+    public void picksSourceFromExtension()
+    {
+        assertTrue(SequenceSource.forFile("a.gbk", 1) instanceof GeneBankSource);
+        assertTrue(SequenceSource.forFile("a.gbk.gz", 1) instanceof GeneBankSource);
+        assertTrue(SequenceSource.forFile("a.fasta", 1) instanceof FastaSource);
+        assertTrue(SequenceSource.forFile("a.FNA.gz", 1) instanceof FastaSource);
+        assertFalse(SequenceSource.isSequenceFile("notes.txt"));
+    }
+
+    @Test
+    public void listsFilesAndDirectories() throws IOException
+    {
+        File directory = Files.createTempDirectory("assembly").toFile();
+        directory.deleteOnExit();
+        for (String name : new String[] {"b.fa.gz", "a.gbk", "notes.txt"}) {
+            File file = new File(directory, name);
+            file.createNewFile();
+            file.deleteOnExit();
+        }
+
+        assertEquals(Arrays.asList("x.gbk", new File(directory, "a.gbk").getPath(), new File(directory, "b.fa.gz").getPath()),
+                SequenceSource.listFiles("x.gbk," + directory.getPath()));
+    }
+}
@@ -3,7 +3,9 @@ package cs321.create;
 import cs321.Utils;
 import org.junit.Test;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -12,15 +14,69 @@ public class SequenceUtilsTest
     @Test
     public void longToDNAStringTest() throws Exception
     {
+		assertEquals("caggt", SequenceUtils.longToDNAString(299, 5));
+		assertEquals("aaaac", SequenceUtils.longToDNAString(1, 5));
+		assertEquals("ttttttttttttttttttttttttttttttt", SequenceUtils.longToDNAString((1L << 62) - 1, 31));
 	}
 
     @Test
     public void DNAStringToLongTest() throws Exception
     {
+		assertEquals(299, SequenceUtils.DNAStringToLong("caggt"));
+		assertEquals(299, SequenceUtils.DNAStringToLong("CaGgT"));
+		assertEquals(1, SequenceUtils.DNAStringToLong("aaaac"));
+		assertEquals((1L << 62) - 1, SequenceUtils.DNAStringToLong("ttttttttttttttttttttttttttttttt"));
 	}
 
 	@Test
 	public void getComplementTest() throws Exception
 	{
+		assertEquals(724, SequenceUtils.getComplement(299, 5));
+		assertEquals(0, SequenceUtils.getComplement((1L << 62) - 1, 31));
+	}
+
+	@Test
+	public void getReverseComplementTest() throws Exception
+	{
+		assertEquals(SequenceUtils.DNAStringToLong("acctg"),
+				SequenceUtils.getReverseComplement(SequenceUtils.DNAStringToLong("caggt"), 5));
+		assertEquals(SequenceUtils.DNAStringToLong("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaag"),
+				SequenceUtils.getReverseComplement(SequenceUtils.DNAStringToLong("ctttttttttttttttttttttttttttttt"), 31));
+	}
+
+	@Test
+	public void canonicalTest() throws Exception
+	{
+		long caggt = SequenceUtils.DNAStringToLong("caggt");
+		assertEquals(caggt, SequenceUtils.canonical(caggt, 5, SequenceUtils.CANONICAL_COMPLEMENT));
+		assertEquals(caggt, SequenceUtils.canonical(724, 5, SequenceUtils.CANONICAL_COMPLEMENT));
+		assertEquals(SequenceUtils.DNAStringToLong("acctg"),
+				SequenceUtils.canonical(caggt, 5, SequenceUtils.CANONICAL_REVERSE_COMPLEMENT));
+		assertEquals(724, SequenceUtils.canonical(724, 5, SequenceUtils.CANONICAL_NONE));
+	}
+
+	@Test
+	public void neighboursTest() throws Exception
+	{
+		String query = "caggt";
+		for (int distance = 0; distance <= 2; distance++) {
+			long[] neighbours = new long[SequenceUtils.countNeighbours(5, distance) + 1];
+			assertEquals(neighbours.length - 1,
+					SequenceUtils.neighbours(SequenceUtils.DNAStringToLong(query), 5, distance, neighbours, 1));
+			Set<String> seen = new HashSet<>();
+			for (int i = 1; i < neighbours.length; i++) {
+				String neighbour = SequenceUtils.longToDNAString(neighbours[i], 5);
+				int differences = 0;
+				for (int j = 0; j < query.length(); j++) {
+					if (neighbour.charAt(j) != query.charAt(j)) {
+						differences++;
+					}
+				}
+				assertTrue(differences >= 1 && differences <= distance);
+				assertTrue(seen.add(neighbour));
+			}
+		}
+		assertEquals(15 + 90, SequenceUtils.countNeighbours(5, 2));
+		assertEquals(3 * 31 + 9 * 465, SequenceUtils.countNeighbours(31, 2));
 	}
 }
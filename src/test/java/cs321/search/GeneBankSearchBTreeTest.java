@@ -7,5 +7,77 @@ import static org.junit.Assert.*;
 
 public class GeneBankSearchBTreeTest
 {
+    @Test
+    public void parseArgsWithThreads() throws ParseArgumentException
+    {
+        String[] args = new String[] {"--cache=0", "--btreefile=test0.gbk.btree.data.5.102", "--queryfile=query5", "--threads=4"};
 
+        GeneBankSearchBTreeArguments actualConfiguration = GeneBankSearchBTree.parseArguments(args);
+        assertEquals(4, actualConfiguration.getThreads());
+        assertEquals(0, actualConfiguration.getDegree());
+    }
+
+    @Test
+    public void parseArgsWithBatch() throws ParseArgumentException
+    {
+        String[] args = new String[] {"--cache=1", "--cachesize=100", "--btreefile=test0.gbk.btree.data.5.102", "--queryfile=query5", "--batch=1"};
+
+        GeneBankSearchBTreeArguments actualConfiguration = GeneBankSearchBTree.parseArguments(args);
+        assertTrue(actualConfiguration.isBatch());
+        assertEquals(1, actualConfiguration.getThreads());
+    }
+
+    @Test(expected = ParseArgumentException.class)
+    public void parseArgsRejectsZeroThreads() throws ParseArgumentException
+    {
+        GeneBankSearchBTree.parseArguments(new String[] {"--cache=0", "--btreefile=t", "--queryfile=q", "--threads=0"});
+    }
+
+    @Test
+    public void parseArgsWithServer() throws ParseArgumentException
+    {
+        GeneBankSearchBTreeArguments actualConfiguration = GeneBankSearchBTree.parseArguments(
+                new String[] {"--cache=0", "--btreefile=a.btree,b.btree", "--serve=7777"});
+        assertTrue(actualConfiguration.isServer());
+        assertEquals(7777, actualConfiguration.getServerPort());
+        assertEquals(2, actualConfiguration.getBTreeFileNames().length);
+
+        actualConfiguration = GeneBankSearchBTree.parseArguments(new String[] {"--cache=0", "--btreefile=a", "--serve=stdin"});
+        assertEquals(GeneBankSearchBTreeArguments.STDIN_SERVER, actualConfiguration.getServerPort());
+    }
+
+    @Test
+    public void parseArgsWithTop() throws ParseArgumentException
+    {
+        GeneBankSearchBTreeArguments actualConfiguration = GeneBankSearchBTree.parseArguments(
+                new String[] {"--cache=0", "--btreefile=test0.gbk.btree.data.5.102", "--top=25"});
+        assertEquals(25, actualConfiguration.getTop());
+        assertFalse(actualConfiguration.isServer());
+    }
+
+    @Test(expected = ParseArgumentException.class)
+    public void parseArgsRejectsTopWithServer() throws ParseArgumentException
+    {
+        GeneBankSearchBTree.parseArguments(new String[] {"--cache=0", "--btreefile=a", "--serve=stdin", "--top=5"});
+    }
+
+    @Test
+    public void parseArgsWithHamming() throws ParseArgumentException
+    {
+        GeneBankSearchBTreeArguments actualConfiguration = GeneBankSearchBTree.parseArguments(
+                new String[] {"--cache=0", "--btreefile=test0.gbk.btree.data.5.102", "--queryfile=query5", "--hamming=2"});
+        assertEquals(2, actualConfiguration.getHamming());
+    }
+
+    @Test(expected = ParseArgumentException.class)
+    public void parseArgsRejectsHammingAboveTwo() throws ParseArgumentException
+    {
+        GeneBankSearchBTree.parseArguments(new String[] {"--cache=0", "--btreefile=a", "--queryfile=b", "--hamming=3"});
+    }
+
+    @Test(expected = ParseArgumentException.class)
+    public void parseArgsRejectsSeveralTreesWithoutServer() throws ParseArgumentException
+    {
+        GeneBankSearchBTree.parseArguments(new String[] {"--cache=0", "--btreefile=a,b", "--queryfile=q"});
+    }
 }
@@ -1,11 +1,116 @@
 package cs321.search;
 
+import cs321.Utils;
+import cs321.btree.BTree;
+import cs321.btree.TreeObject;
 import cs321.common.ParseArgumentException;
+import cs321.create.DatabaseExporter;
+import cs321.create.GeneBankCreateBTreeArguments;
+import cs321.create.SequenceUtils;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 public class GeneBankSearchDatabaseTest
 {
+    private String[] args;
+    private GeneBankSearchDatabaseArguments expectedConfiguration;
+    private GeneBankSearchDatabaseArguments actualConfiguration;
+
+    @Test
+    public void parse2CorrectArguments() throws ParseArgumentException
+    {
+        args = new String[] {"test0.gbk.20.db", "test0.gbk.20.query"};
+
+        expectedConfiguration = new GeneBankSearchDatabaseArguments("test0.gbk.20.db", "test0.gbk.20.query", 0);
+        actualConfiguration = GeneBankSearchDatabase.parseArguments(args);
+        assertEquals(expectedConfiguration, actualConfiguration);
+    }
+
+    @Test
+    public void parse3CorrectArguments() throws ParseArgumentException
+    {
+        args = new String[] {"test0.gbk.20.db", "test0.gbk.20.query", "1"};
+
+        expectedConfiguration = new GeneBankSearchDatabaseArguments("test0.gbk.20.db", "test0.gbk.20.query", 1);
+        actualConfiguration = GeneBankSearchDatabase.parseArguments(args);
+        assertEquals(expectedConfiguration, actualConfiguration);
+    }
+
+    @Test(expected = ParseArgumentException.class)
+    public void parseRejectsMissingQueryFile() throws ParseArgumentException
+    {
+        args = new String[] {"test0.gbk.20.db"};
+
+        GeneBankSearchDatabase.parseArguments(args);
+    }
+
+    @Test(expected = ParseArgumentException.class)
+    public void parseRejectsBadDebugLevel() throws ParseArgumentException
+    {
+        args = new String[] {"test0.gbk.20.db", "test0.gbk.20.query", "2"};
+
+        GeneBankSearchDatabase.parseArguments(args);
+    }
+
+    @Test
+    public void databaseAnswersLikeTheTree() throws IOException, SQLException
+    {
+        for (int canonicalMode : new int[] {SequenceUtils.CANONICAL_NONE, SequenceUtils.CANONICAL_REVERSE_COMPLEMENT}) {
+            int seqLength = 5;
+            GeneBankCreateBTreeArguments args = Utils.treeArguments(2, seqLength).canonicalMode(canonicalMode).build();
+            String treeFile = Utils.tempTreeFile("database");
+            BTree tree = new BTree(args, treeFile);
+            Random random = new Random(24);
+            for (int i = 0; i < 2000; i++) {
+                // a quarter of the 1024 subsequences of length 5, so most queries below are missing
+                tree.insert(SequenceUtils.canonical(random.nextInt(256) * 4, seqLength, canonicalMode));
+            }
+            String databaseFile = treeFile + ".db";
+            new File(databaseFile).deleteOnExit();
+            assertEquals(tree.getNumKeys(), DatabaseExporter.export(tree, databaseFile));
+            tree.closeTree();
+
+            BTree searched = Utils.openForSearch(treeFile);
+            try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("CREATE TEMP TABLE queries (key INTEGER PRIMARY KEY)");
+                }
+                connection.setAutoCommit(false);
+                // two blocks on the same connection, each with duplicate queries
+                for (int b = 0; b < 2; b++) {
+                    List<String> block = new ArrayList<>();
+                    for (int i = 0; i < 3000; i++) {
+                        String query = SequenceUtils.longToDNAString(random.nextInt(1024), seqLength);
+                        block.add(i % 2 == 0 ? query : query.toUpperCase());
+                    }
+                    int[] frequencies = new int[block.size()];
+                    GeneBankSearchDatabase.search(connection, block, seqLength, canonicalMode, frequencies);
+                    for (int i = 0; i < block.size(); i++) {
+                        long key = SequenceUtils.DNAStringToLong(block.get(i));
+                        int expected = canonicalMode == SequenceUtils.CANONICAL_NONE
+                                ? frequency(searched, key) + frequency(searched, SequenceUtils.getComplement(key, seqLength))
+                                : frequency(searched, SequenceUtils.canonical(key, seqLength, canonicalMode));
+                        assertEquals(block.get(i), expected, frequencies[i]);
+                    }
+                }
+            }
+        }
+    }
 
+    private static int frequency(BTree tree, long key)
+    {
+        TreeObject found = tree.search(key);
+        return found == null ? 0 : found.getFrequency();
+    }
 }
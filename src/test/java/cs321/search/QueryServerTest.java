@@ -0,0 +1,106 @@
+package cs321.search;
+
+import cs321.Utils;
+import cs321.btree.BTree;
+import cs321.create.SequenceUtils;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueryServerTest
+{
+    @Test
+    public void answersPipelinedQueriesOverTcp() throws Exception
+    {
+        QueryServer server = new QueryServer(openTrees(), null, 1);
+        try (ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread listener = new Thread(() -> {
+                try {
+                    server.listen(socket);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            listener.setDaemon(true);
+            listener.start();
+
+            for (int client = 0; client < 2; client++) {
+                try (Socket connection = new Socket(InetAddress.getLoopbackAddress(), socket.getLocalPort())) {
+                    Writer out = new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.US_ASCII);
+                    BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.US_ASCII));
+                    List<String> queries = Arrays.asList("AC", "gta", "tt", "acgtn", "acgt", "ggg");
+                    for (String query : queries) {
+                        out.write(query + "\n");
+                    }
+                    out.flush();
+                    for (String query : queries) {
+                        assertEquals(expected(query), in.readLine());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void answersLineProtocol() throws IOException
+    {
+        QueryServer server = new QueryServer(openTrees(), null, 1);
+        StringWriter out = new StringWriter();
+        server.serve(new BufferedReader(new StringReader("aa\n\ncat\nttt\n")), out);
+        assertEquals(expected("aa") + "\n" + expected("cat") + "\n" + expected("ttt") + "\n", out.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTwoTreesOfOneLength() throws IOException
+    {
+        List<BTree> trees = openTrees();
+        trees.add(trees.get(0));
+        new QueryServer(trees, null, 1);
+    }
+
+    /**
+     * Trees of length 2 and 3 in which every subsequence s occurs s+1 times.
+     */
+    private static List<BTree> openTrees() throws IOException
+    {
+        List<BTree> trees = new ArrayList<>();
+        for (int length = 2; length <= 3; length++) {
+            String treeFile = Utils.tempTreeFile("server");
+            BTree tree = new BTree(Utils.treeArguments(2, length).build(), treeFile);
+            for (long key = 0; key < 1 << (2 * length); key++) {
+                tree.insert(key, (int) key + 1);
+            }
+            tree.closeTree();
+            trees.add(Utils.openForSearch(treeFile));
+        }
+        return trees;
+    }
+
+    private static String expected(String query)
+    {
+        if (!query.matches("[acgtACGT]+")) {
+            return "error: " + query + " is not a DNA sequence";
+        }
+        if (query.length() < 2 || query.length() > 3) {
+            return "error: no B-Tree for length " + query.length();
+        }
+        long sequence = SequenceUtils.DNAStringToLong(query);
+        long complement = SequenceUtils.getComplement(sequence, query.length());
+        return query.toLowerCase() + " " + (sequence + 1 + complement + 1);
+    }
+}